@@ -0,0 +1,107 @@
+package com.jennyyn.recommender;
+
+import java.awt.GraphicsEnvironment;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Cold start of the packaged app, with and without the AppCDS archive. Every run is a
+ * fresh JVM started with -Dstartup.exitWhenReady=true, which makes the app print when
+ * its window was shown and when the services were ready, and exit.
+ * Without a display (CI) the headless training run (--cds-training) is timed instead.
+ *
+ *   mvn -Pappcds package && mvn -Pjmh package
+ *   java -cp target/benchmarks.jar com.jennyyn.recommender.StartupBenchmark --runs 10
+ */
+public class StartupBenchmark {
+
+    private static final Pattern STARTUP_LINE = Pattern.compile("startup: window shown (\\d+) ms, ready (\\d+) ms");
+
+    public static void main(String[] args) throws Exception {
+        int runs = 10;
+        Path jar = Path.of("target", "chat-assistant.jar");
+        Path archive = Path.of("target", "app.jsa");
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--runs": runs = Integer.parseInt(value); break;
+                case "--jar": jar = Path.of(value); break;
+                case "--archive": archive = Path.of(value); break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+        if (!Files.exists(jar)) {
+            System.err.println(jar + " not found, build it with: mvn -Pappcds package");
+            System.exit(2);
+        }
+
+        boolean gui = !GraphicsEnvironment.isHeadless();
+        if (!gui) System.out.println("No display: timing the headless training run instead of the window");
+
+        measure("default", runs, jar, gui, List.of());
+        if (Files.exists(archive)) {
+            measure("AppCDS", runs, jar, gui, List.of("-XX:SharedArchiveFile=" + archive, "-Xshare:auto"));
+        } else {
+            System.out.println(archive + " not found, skipping the AppCDS runs");
+        }
+    }
+
+    private static void measure(String name, int runs, Path jar, boolean gui, List<String> jvmOptions)
+            throws Exception {
+        long[] total = new long[runs];
+        long[] shown = new long[runs];
+        long[] ready = new long[runs];
+
+        run(jar, gui, jvmOptions); // warms the OS file cache
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            String output = run(jar, gui, jvmOptions);
+            total[i] = (System.nanoTime() - start) / 1_000_000;
+
+            Matcher m = STARTUP_LINE.matcher(output);
+            if (m.find()) {
+                shown[i] = Long.parseLong(m.group(1));
+                ready[i] = Long.parseLong(m.group(2));
+            }
+        }
+
+        System.out.printf("%-8s process %s", name, summary(total));
+        if (gui) System.out.printf(" | window shown %s | ready %s", summary(shown), summary(ready));
+        System.out.println();
+    }
+
+    private static String run(Path jar, boolean gui, List<String> jvmOptions) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmOptions);
+        command.add(gui ? "-Dstartup.exitWhenReady=true" : "-Djava.awt.headless=true");
+        command.add("-jar");
+        command.add(jar.toString());
+        if (!gui) command.add("--cds-training");
+
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = in.readLine()) != null) output.append(line).append('\n');
+        }
+        if (process.waitFor() != 0) throw new IllegalStateException("Run failed:\n" + output);
+        return output.toString();
+    }
+
+    private static String summary(long[] millis) {
+        long[] sorted = millis.clone();
+        Arrays.sort(sorted);
+        return String.format("median %d ms (min %d, max %d)", sorted[sorted.length / 2], sorted[0], sorted[sorted.length - 1]);
+    }
+}
@@ -0,0 +1,58 @@
+package com.jennyyn.recommender.service;
+
+import com.jennyyn.recommender.model.APIClient;
+import com.jennyyn.recommender.model.CreativeStrategy;
+import com.jennyyn.recommender.model.RewriteResult;
+import com.jennyyn.recommender.model.WritingStrategy;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Full rewriteText round trip (request building, HTTP over loopback, parsing)
+ * against StubLLMServer without simulated latency. The stub echoes the text,
+ * so inputChars is also the size of the response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class APIServiceBenchmark {
+
+    @Param({"200", "8000"})
+    int inputChars;
+
+    private StubLLMServer server;
+    private APIService service;
+    private final WritingStrategy strategy = new CreativeStrategy();
+    private String input;
+
+    @Setup
+    public void setup() throws IOException {
+        server = new StubLLMServer(0);
+        server.start();
+
+        Properties props = new Properties();
+        props.setProperty("OPENAI_API_KEY", "benchmark");
+        props.setProperty("STREAM", "false");
+        props.setProperty("ENDPOINT", server.getEndpoint());
+        APIClient client = new APIClient(props);
+
+        service = new APIService(client, client.getHttpClient());
+        input = "The quick brown fox jumps over the lazy dog. ".repeat(Math.max(1, inputChars / 45));
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop();
+    }
+
+    @Benchmark
+    public RewriteResult rewriteText() throws Exception {
+        return service.rewriteText(input, strategy);
+    }
+}
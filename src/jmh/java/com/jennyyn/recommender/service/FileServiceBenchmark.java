@@ -0,0 +1,141 @@
+package com.jennyyn.recommender.service;
+
+import com.jennyyn.recommender.model.SessionSummary;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/*
+ * Session file I/O at different history sizes.
+ * Each trial starts from a freshly written history in a temp directory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileServiceBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    int sessions;
+
+    @Param({"false", "true"})
+    boolean compressed;
+
+    private static final String ORIGINAL = "How are you today? Is everything okay? ".repeat(5);
+    private static final String REWRITTEN = "Greetings! How's your spirit dancing today? ".repeat(5);
+
+    private static final String[] WORDS = ("the a we our team project report meeting results customer please "
+            + "review update schedule quarterly budget and to of for with on this next week data analysis "
+            + "draft final deadline improve growth sales market strategy plan share feedback").split(" ");
+
+    private Path dir;
+    private FileService fileService;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("session-bench");
+        fileService = new FileService(dir);
+        fileService.setCompression(compressed);
+        CompletableFuture<Long> last = null;
+        Random random = new Random(42);
+        for (int i = 0; i < sessions; i++) {
+            String[] session = session(random);
+            last = fileService.saveSessionAsync(i + ": " + session[0], session[1]);
+        }
+        last.join();
+        fileService.getSessionCount();
+    }
+
+    // Random sentences from a small vocabulary; the rewrite changes every fifth word
+    private static String[] session(Random random) {
+        StringBuilder original = new StringBuilder();
+        StringBuilder rewritten = new StringBuilder();
+        for (int w = 0; w < 60; w++) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            original.append(word).append(w % 12 == 11 ? ". " : " ");
+            rewritten.append(w % 5 == 4 ? WORDS[random.nextInt(WORDS.length)] : word).append(w % 12 == 11 ? ". " : " ");
+        }
+        return new String[]{original.toString(), rewritten.toString()};
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fileService.close();
+        System.out.printf("%nsessions.dat: %d KB%n", Files.size(dir.resolve("sessions.dat")) / 1024);
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void saveSession() {
+        fileService.saveSession(ORIGINAL, REWRITTEN);
+    }
+
+    // 64 saves in a row, e.g. a batch run: the writer commits them in a few groups
+    @Benchmark
+    @OperationsPerInvocation(64)
+    public long saveSessionBurst() {
+        CompletableFuture<Long> last = null;
+        for (int i = 0; i < 64; i++) last = fileService.saveSessionAsync(ORIGINAL, REWRITTEN);
+        return last.join();
+    }
+
+    @Benchmark
+    public String[] loadOneSession() {
+        return fileService.loadSession(ThreadLocalRandom.current().nextInt(sessions));
+    }
+
+    @Benchmark
+    public List<SessionSummary> loadHistoryPage() {
+        int offset = ThreadLocalRandom.current().nextInt(Math.max(1, sessions - 100));
+        return fileService.loadSessionPage(offset, 100);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Measurement(iterations = 5)
+    public List<String[]> loadAllSessions() {
+        return fileService.loadSession();
+    }
+
+    // Delete + save keeps the history size stable across iterations
+    @Benchmark
+    public void deleteSession() {
+        fileService.deleteSession(ThreadLocalRandom.current().nextInt(sessions));
+        fileService.saveSession(ORIGINAL, REWRITTEN);
+    }
+
+    // Matches every session: the worst case for building the result
+    @Benchmark
+    public int[] searchCommonWord() {
+        return fileService.searchSessions("spirit");
+    }
+
+    @Benchmark
+    public int[] searchRareWord() {
+        return fileService.searchSessions(String.valueOf(ThreadLocalRandom.current().nextInt(sessions)));
+    }
+
+    // Typing the start of a word expands to every term with that prefix
+    @Benchmark
+    public int[] searchPrefix() {
+        return fileService.searchSessions("ever");
+    }
+
+    @Benchmark
+    public int[] searchPhrase() {
+        return fileService.searchSessions("\"how's your spirit\"");
+    }
+}
@@ -0,0 +1,85 @@
+package com.jennyyn.recommender.service;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.jennyyn.recommender.model.APIClient;
+import com.jennyyn.recommender.model.CreativeStrategy;
+import com.jennyyn.recommender.model.JsonBuffer;
+import com.jennyyn.recommender.model.PromptTemplate;
+import com.jennyyn.recommender.model.RewriteResult;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * JSON work of one request without any I/O: building the request body and
+ * parsing the completion. parseResponseTree is the old JsonParser.parseString
+ * approach, kept as the baseline for the streaming CompletionParser.
+ * Run with -prof gc to compare allocations per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+    @Param({"200", "8000", "64000"})
+    int chars;
+
+    private APIService service;
+    private OpenAICompatibleBackend backend;
+    private String text;
+    private final PromptTemplate template = new CreativeStrategy();
+    private String responseBody;
+    private byte[] responseBytes;
+
+    @Setup
+    public void setup() {
+        Properties props = new Properties();
+        props.setProperty("OPENAI_API_KEY", "benchmark");
+        APIClient client = new APIClient(props);
+        service = new APIService(client, client.getHttpClient());
+        backend = new OpenAICompatibleBackend(client);
+
+        text = "Lorem ipsum \"dolor\" sit amet.\n".repeat(Math.max(1, chars / 30));
+        responseBody = StubLLMServer.completionJson("Lorem ipsum \"dolor\" sit amet.\n".repeat(Math.max(1, chars / 30)), 120);
+        responseBytes = responseBody.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Old path: prompt String, JsonObject, body String, then its UTF-8 bytes (BodyPublishers.ofString)
+    @Benchmark
+    public byte[] buildRequestBody() {
+        return backend.buildRequestBody(template.buildPrompt(text), false).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Prompt template: precompiled parts copied, the text escaped straight into the body bytes
+    @Benchmark
+    public JsonBuffer buildTemplateBody() {
+        return backend.buildRequestBody(template, text, false);
+    }
+
+    @Benchmark
+    public RewriteResult parseResponse() throws Exception {
+        return service.parseResponse(responseBody);
+    }
+
+    // What APIService does now: the body bytes go straight into the streaming parser
+    @Benchmark
+    public CompletionParser.Completion parseResponseStream() throws Exception {
+        return CompletionParser.parse(new ByteArrayInputStream(responseBytes));
+    }
+
+    // Old path: body decoded to a String, then a full JsonObject tree
+    @Benchmark
+    public String parseResponseTree() {
+        String body = new String(responseBytes, StandardCharsets.UTF_8);
+        JsonObject json = JsonParser.parseString(body).getAsJsonObject();
+        return json.getAsJsonArray("choices").get(0).getAsJsonObject()
+                .getAsJsonObject("message").get("content").getAsString();
+    }
+}
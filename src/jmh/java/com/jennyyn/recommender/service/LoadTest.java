@@ -0,0 +1,97 @@
+package com.jennyyn.recommender.service;
+
+import com.jennyyn.recommender.model.APIClient;
+import com.jennyyn.recommender.model.CreativeStrategy;
+import com.jennyyn.recommender.model.WritingStrategy;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Offline load test of the whole rewrite pipeline (permits, rate limiter, retries,
+ * HTTP, streaming parse) against StubLLMServer. Prints throughput, tail latency and
+ * the RewriteMetrics breakdown. No network needed, so it also runs on CI.
+ *
+ *   mvn -Pjmh package
+ *   java -cp target/benchmarks.jar com.jennyyn.recommender.service.LoadTest \
+ *        --requests 2000 --concurrency 64 --latency 200 --jitter 100 --token-delay 5 \
+ *        --rate-limit 0.05 --failures 0.01 --stream true
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        int requests = 1000;
+        int concurrency = 64;
+        long latency = 200;
+        long jitter = 100;
+        long tokenDelay = 5;
+        double rateLimit = 0.0;
+        double failures = 0.0;
+        boolean stream = true;
+        int words = 100;
+
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--requests": requests = Integer.parseInt(value); break;
+                case "--concurrency": concurrency = Integer.parseInt(value); break;
+                case "--latency": latency = Long.parseLong(value); break;
+                case "--jitter": jitter = Long.parseLong(value); break;
+                case "--token-delay": tokenDelay = Long.parseLong(value); break;
+                case "--rate-limit": rateLimit = Double.parseDouble(value); break;
+                case "--failures": failures = Double.parseDouble(value); break;
+                case "--stream": stream = Boolean.parseBoolean(value); break;
+                case "--words": words = Integer.parseInt(value); break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+
+        StubLLMServer server = new StubLLMServer(0);
+        server.setLatency(latency, jitter);
+        server.setTokenDelayMillis(tokenDelay);
+        server.setRateLimitRate(rateLimit, 100);
+        server.setFailureRate(failures);
+        server.start();
+
+        Properties props = new Properties();
+        props.setProperty("OPENAI_API_KEY", "load-test");
+        props.setProperty("STREAM", String.valueOf(stream));
+        props.setProperty("ENDPOINT", server.getEndpoint());
+        APIClient client = new APIClient(props);
+
+        APIService service = new APIService(client, client.getHttpClient());
+        service.setMaxConcurrentRequests(concurrency);
+        service.setRateLimiter(new RateLimiter(1_000_000), 6); // no pacing, but retry the simulated 429s
+
+        WritingStrategy strategy = new CreativeStrategy();
+        String text = "word ".repeat(words);
+        LatencyHistogram latencies = new LatencyHistogram();
+        LongAdder errors = new LongAdder();
+        CountDownLatch done = new CountDownLatch(requests);
+        RewriteMetrics.getInstance().reset();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            long submitted = System.nanoTime();
+            service.rewriteTextAsync(i + " " + text, strategy, // distinct texts: no coalescing
+                    result -> latencies.recordNanos(System.nanoTime() - submitted),
+                    error -> errors.increment(),
+                    done::countDown);
+        }
+        done.await();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d requests, concurrency %d, stream=%s: %.1f s, %.1f req/s%n",
+                requests, concurrency, stream, seconds, requests / seconds);
+        System.out.println("latency: " + latencies);
+        System.out.printf("errors: %d, server sent %d x 429 and %d x 500%n",
+                errors.sum(), server.getRateLimitedCount(), server.getFailedCount());
+        System.out.println(RewriteMetrics.getInstance());
+
+        server.stop();
+        System.exit(0);
+    }
+}
@@ -1,12 +1,224 @@
 package com.jennyyn.recommender;
 
+import com.jennyyn.recommender.model.APIClient;
+import com.jennyyn.recommender.model.CreativeStrategy;
+import com.jennyyn.recommender.model.StrategyRegistry;
+import com.jennyyn.recommender.service.APIService;
+import com.jennyyn.recommender.service.BatchRewriter;
+import com.jennyyn.recommender.service.FileService;
+import com.jennyyn.recommender.service.RewriteServer;
+import com.jennyyn.recommender.service.StubLLMServer;
 import com.jennyyn.recommender.view.MainFrame;
+import com.jennyyn.recommender.view.WritingPanel;
+
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 public class  Main {
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--batch")) {
+            System.exit(runBatch(args));
+        }
+        if (args.length > 0 && args[0].equals("--server")) {
+            runServer(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--stub-server")) {
+            runStubServer(args);
+            return;
+        }
+
+        if (args.length > 0 && args[0].equals("--cds-training")) {
+            System.exit(runCdsTraining());
+        }
+
         // Start the GUI
         javax.swing.SwingUtilities.invokeLater(() -> {
-            new MainFrame();
+            MainFrame frame = new MainFrame();
+            if (Boolean.getBoolean("startup.exitWhenReady")) {
+                reportStartupAndExit(frame);
+            }
+        });
+    }
+
+    // For StartupBenchmark: prints when the window was shown and when the services were ready, then exits
+    private static void reportStartupAndExit(MainFrame frame) {
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowOpened(WindowEvent e) {
+                long shown = ManagementFactory.getRuntimeMXBean().getUptime();
+                frame.getController().whenReady().whenComplete((ignored, error) -> {
+                    long ready = ManagementFactory.getRuntimeMXBean().getUptime();
+                    System.out.printf("startup: window shown %d ms, ready %d ms%n", shown, ready);
+                    System.exit(error == null ? 0 : 1);
+                });
+            }
         });
     }
+
+    // Training run for the AppCDS archive (mvn -Pappcds package): loads the classes a normal
+    // session uses without a display or network, i.e. a streamed and a plain rewrite against
+    // the stub server, the session store, and the Swing panels.
+    private static int runCdsTraining() {
+        try {
+            StubLLMServer server = new StubLLMServer(0);
+            server.start();
+
+            // STREAM is read when the client is built, so each mode gets its own client
+            for (String stream : new String[]{"true", "false"}) {
+                Properties props = new Properties();
+                props.setProperty("ENDPOINT", server.getEndpoint());
+                props.setProperty("STREAM", stream);
+                APIClient client = new APIClient(props);
+                APIService apiService = new APIService(client, client.getHttpClient());
+
+                CompletableFuture<Object> done = new CompletableFuture<>();
+                apiService.rewriteTextAsync("Training run.", new CreativeStrategy(),
+                        done::complete, done::completeExceptionally, () -> { });
+                done.get(30, TimeUnit.SECONDS);
+            }
+            server.stop();
+            if (server.getRequestCount() != 2 || server.getStreamedRequestCount() != 1) {
+                throw new IllegalStateException("expected one streamed and one plain request, got "
+                        + server.getStreamedRequestCount() + " of " + server.getRequestCount() + " streamed");
+            }
+
+            Path directory = Files.createTempDirectory("cds-training");
+            try (FileService files = new FileService(directory)) {
+                files.saveSession("original", "rewritten");
+                files.loadSessionPage(0, 10);
+            }
+            try (Stream<Path> paths = Files.walk(directory)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+
+            Class.forName(MainFrame.class.getName());
+            new WritingPanel(); // panels work headless; the frame itself needs a display
+            return 0;
+        } catch (Exception e) {
+            System.err.println("CDS training run failed: " + e);
+            return 1;
+        }
+    }
+
+    // Headless batch mode:
+    //   --batch <file|dir> [--output <file|dir>] [--mode Creative|Academic|Professional|<config strategy>] [--concurrency N]
+    private static final String BATCH_USAGE =
+            "Usage: --batch <file|dir> [--output <file|dir>] [--mode <mode>] [--concurrency <n>]";
+
+    record BatchOptions(Path input, Path output, String mode, int concurrency) { }
+
+    // Throws IllegalArgumentException for a missing input, an unknown option or an option without a value
+    static BatchOptions parseBatchOptions(String[] args) {
+        if (args.length < 2) throw new IllegalArgumentException("Missing input file or directory");
+
+        Path input = Path.of(args[1]);
+        Path output = null;
+        String mode = "Creative";
+        int concurrency = 4;
+
+        for (int i = 2; i < args.length; i += 2) {
+            String option = args[i];
+            if (!option.equals("--output") && !option.equals("--mode") && !option.equals("--concurrency")) {
+                throw new IllegalArgumentException("Unknown option: " + option);
+            }
+            if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + option);
+
+            String value = args[i + 1];
+            switch (option) {
+                case "--output": output = Path.of(value); break;
+                case "--mode": mode = value; break;
+                default:
+                    try {
+                        concurrency = Integer.parseInt(value);
+                    } catch (NumberFormatException e) {
+                        concurrency = 0;
+                    }
+                    if (concurrency < 1) throw new IllegalArgumentException("Invalid concurrency: " + value);
+            }
+        }
+        if (output == null) {
+            output = input.resolveSibling(input.getFileName() + ".rewritten");
+        }
+        return new BatchOptions(input, output, mode, concurrency);
+    }
+
+    private static int runBatch(String[] args) {
+        BatchOptions options;
+        try {
+            options = parseBatchOptions(args);
+            if (!StrategyRegistry.getInstance().all().containsKey(options.mode())) {
+                throw new IllegalArgumentException("Unknown mode: " + options.mode());
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(BATCH_USAGE);
+            return 2;
+        }
+        Path input = options.input();
+        Path output = options.output();
+        int concurrency = options.concurrency();
+
+        APIService apiService = new APIService();
+        apiService.setMaxConcurrentRequests(concurrency);
+        BatchRewriter batch = new BatchRewriter(apiService, StrategyRegistry.getInstance().get(options.mode()), concurrency);
+
+        try {
+            BatchRewriter.BatchStats stats = batch.rewritePath(input, output, (file, done, total) ->
+                    System.err.printf("%s: %d/%d chunks%n", file.getFileName(), done, total));
+
+            System.err.printf("Done: %d file(s), %d chunks in %.1f s (%.2f chunks/sec) -> %s%n",
+                    stats.files(), stats.chunks(), stats.elapsedMillis() / 1000.0, stats.chunksPerSecond(), output);
+            return 0;
+        } catch (Exception e) {
+            System.err.println("Batch failed: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    // Headless HTTP API (see RewriteServer): --server [port]
+    private static void runServer(String[] args) {
+        try {
+            Properties config = APIClient.getConfig();
+            int port = args.length > 1 ? Integer.parseInt(args[1])
+                    : Integer.parseInt(config.getProperty("SERVER_PORT", "8090"));
+            int maxInFlight = Integer.parseInt(config.getProperty("SERVER_MAX_IN_FLIGHT", "512"));
+
+            // Loopback only unless another address is configured: the API has no authentication
+            String bind = config.getProperty("SERVER_BIND_ADDRESS", "").trim();
+            InetAddress address = bind.isEmpty() ? InetAddress.getLoopbackAddress() : InetAddress.getByName(bind);
+
+            RewriteServer server = new RewriteServer(address, port, new APIService(), new FileService(),
+                    StrategyRegistry.getInstance(), maxInFlight);
+            server.start();
+            System.err.println("Rewrite API listening on http://" + address.getHostAddress() + ":" + server.getPort()
+                    + RewriteServer.REWRITE_PATH);
+        } catch (Exception e) {
+            System.err.println("Could not start the server: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Local fake API for trying the app offline: --stub-server [port] [latencyMillis] [tokenDelayMillis]
+    private static void runStubServer(String[] args) {
+        try {
+            StubLLMServer server = new StubLLMServer(args.length > 1 ? Integer.parseInt(args[1]) : 8089);
+            server.setLatency(args.length > 2 ? Long.parseLong(args[2]) : 300, 100);
+            server.setTokenDelayMillis(args.length > 3 ? Long.parseLong(args[3]) : 20);
+            server.start();
+            System.err.println("Stub API running, set ENDPOINT=" + server.getEndpoint());
+        } catch (Exception e) {
+            System.err.println("Could not start the stub server: " + e.getMessage());
+            System.exit(1);
+        }
+    }
 }
@@ -4,25 +4,64 @@ package com.jennyyn.recommender.controller;
 import com.jennyyn.recommender.model.*;
 import com.jennyyn.recommender.service.APIService;
 import com.jennyyn.recommender.service.FileService;
+import com.jennyyn.recommender.service.LivePreview;
+import com.jennyyn.recommender.service.MultiRewrite;
+import com.jennyyn.recommender.service.RewriteMetrics;
 import com.jennyyn.recommender.view.MainFrame;
+import com.jennyyn.recommender.view.SessionListModel;
 import com.jennyyn.recommender.view.WritingPanel;
 import javax.swing.*;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 
 public class MainController {
 
-    private final APIService apiService;
+    // Created off the EDT so the window shows first: loading the config, the HttpClient, the cache,
+    // the metrics MBean and the session index all take a while. Clicks before that are queued
+    // (see whenServicesReady) and run on the EDT once both exist; the EDT itself never waits.
+    private final CompletableFuture<APIService> apiService;
     private final MainFrame mainFrame;
     private final WritingPanel writingPanel;
-    private final FileService fileService;
+    private final CompletableFuture<FileService> fileService;
+    private volatile MultiRewrite multiRewrite; // last "All modes" rewrite, for per-strategy cancel
+    private LivePreview livePreview; // created when live mode is first used (EDT only)
+    private final List<Runnable> untilReady = new ArrayList<>(); // actions clicked during startup (EDT only)
+
+    // History reads and deletes wait for queued saves (and their fsync), so they run here, in order
+    private final ExecutorService sessionIo = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "session-io");
+        t.setDaemon(true);
+        return t;
+    });
 
 
     public MainController(MainFrame mainFrame, WritingPanel writingPanel) {
-        this.apiService = new APIService();
-        this.fileService = new FileService();
+        Executor background = task -> Thread.ofVirtual().name("startup").start(task);
+        this.apiService = CompletableFuture.supplyAsync(() -> {
+            StrategyRegistry.getInstance(); // reads config.properties and compiles the custom strategies
+            return new APIService();
+        }, background);
+        this.fileService = CompletableFuture.supplyAsync(() -> {
+            FileService files = new FileService();
+            files.getSessionCount(); // opens the store (and migrates session.txt) before the first Load
+            return files;
+        }, background);
         this.mainFrame = mainFrame;
         this.writingPanel = writingPanel;
+
+        whenReady().exceptionally(e -> {
+            e.printStackTrace();
+            return null;
+        });
+        // The panel starts with the built-in modes only
+        apiService.thenRunAsync(() -> writingPanel.setModes(StrategyRegistry.getInstance().names()),
+                SwingUtilities::invokeLater);
     }
 
     // TESTING CONSTRUCTOR (dependency injection)
@@ -31,6 +70,17 @@ public class MainController {
             FileService fileService,
             MainFrame mainFrame,
             WritingPanel writingPanel
+    ) {
+        this(CompletableFuture.completedFuture(apiService), CompletableFuture.completedFuture(fileService),
+                mainFrame, writingPanel);
+    }
+
+    // TESTING CONSTRUCTOR — services that are still starting
+    MainController(
+            CompletableFuture<APIService> apiService,
+            CompletableFuture<FileService> fileService,
+            MainFrame mainFrame,
+            WritingPanel writingPanel
     ) {
         this.apiService = apiService;
         this.fileService = fileService;
@@ -38,6 +88,41 @@ public class MainController {
         this.writingPanel = writingPanel;
     }
 
+    // Completes once the services are created (used to measure startup)
+    public CompletableFuture<Void> whenReady() {
+        return CompletableFuture.allOf(apiService, fileService);
+    }
+
+    // Runs the action now if the services exist, otherwise on the EDT once they do, in click order
+    private void whenServicesReady(Runnable action) {
+        CompletableFuture<Void> ready = whenReady();
+        if (ready.isDone() && untilReady.isEmpty()) {
+            if (!ready.isCompletedExceptionally()) action.run();
+            else showStartupError();
+            return;
+        }
+        untilReady.add(action);
+        if (untilReady.size() > 1) return; // already waiting
+
+        ready.whenCompleteAsync((ignored, error) -> {
+            List<Runnable> actions = new ArrayList<>(untilReady);
+            untilReady.clear();
+            if (error == null) actions.forEach(Runnable::run);
+            else showStartupError();
+        }, SwingUtilities::invokeLater);
+    }
+
+    private void showStartupError() {
+        writingPanel.showLoadingState(false);
+        writingPanel.setRewriteEnabled(true);
+        JOptionPane.showMessageDialog(
+                null,
+                "Error: The application could not start its services. Please check the configuration.",
+                "Startup Error",
+                JOptionPane.ERROR_MESSAGE
+        );
+    }
+
 
     public void handleRewriteRequest(String text, String mode) {
         // 1. Check for empty input first
@@ -51,32 +136,37 @@ public class MainController {
             return; // stop further execution
         }
 
-        //2. strategy selection
-        WritingStrategy strategy;
-        switch (mode) {
-            case "Creative": strategy = new CreativeStrategy();break;
-            case "Academic": strategy = new AcademicStrategy();break;
-            case "Professional": strategy = new ProfessionalStrategy();break;
-            default:
-                strategy = new CreativeStrategy(); // fallback
+        if (StrategyRegistry.ALL_MODES.equals(mode)) {
+            handleRewriteAllRequest(text);
+            return;
         }
 
-        // 3. Update UI and show processing state
+        // 2. Update UI and show processing state
         SwingUtilities.invokeLater(() -> {
             writingPanel.showLoadingState(true);
             writingPanel.setRewriteEnabled(false);
+            mainFrame.displayResult(""); // streamed text is appended from here
         });
 
-        // 4. Make async API call
-        apiService.rewriteTextAsync(
+        // 3. Make async API call, once the services (and the strategies of the config) are loaded
+        whenServicesReady(() -> apiService.resultNow().rewriteTextAsync(
                 text,
-                strategy,
+                StrategyRegistry.getInstance().get(mode),
 
-                // SUCCESS
-                result -> SwingUtilities.invokeLater(() -> {
-                    mainFrame.displayResult(result.getRewrittenText());
+                // DELTA (streaming): show text as soon as it arrives
+                delta -> SwingUtilities.invokeLater(() -> {
+                    mainFrame.appendResult(delta);
                 }),
 
+                // SUCCESS
+                result -> {
+                    long posted = System.nanoTime();
+                    SwingUtilities.invokeLater(() -> {
+                        RewriteMetrics.getInstance().recordEdtDispatch(System.nanoTime() - posted);
+                        mainFrame.displayResult(result.getRewrittenText());
+                    });
+                },
+
                 // ERROR
                 // ERROR callback
                 error -> SwingUtilities.invokeLater(() -> {
@@ -106,50 +196,188 @@ public class MainController {
                     writingPanel.showLoadingState(false);
                     writingPanel.setRewriteEnabled(true);
                 })
-        );
+        ));
+    }
+
+    // Rewrites the text in every mode at once; each one streams into its own tab
+    private void handleRewriteAllRequest(String text) {
+        SwingUtilities.invokeLater(() -> {
+            writingPanel.showLoadingState(true);
+            writingPanel.setRewriteEnabled(false);
+        });
+
+        whenServicesReady(() -> rewriteAll(text));
+    }
+
+    private void rewriteAll(String text) {
+        Map<String, WritingStrategy> strategies = StrategyRegistry.getInstance().all();
+        List<String> names = new ArrayList<>(strategies.keySet());
+        SwingUtilities.invokeLater(() -> writingPanel.showStrategyTabs(names));
+
+        multiRewrite = apiService.resultNow().rewriteAllAsync(text, strategies, new MultiRewrite.Listener() {
+            @Override
+            public void onDelta(String strategy, String delta) {
+                SwingUtilities.invokeLater(() -> writingPanel.appendStrategyOutput(strategy, delta));
+            }
+
+            @Override
+            public void onSuccess(String strategy, RewriteResult result) {
+                SwingUtilities.invokeLater(() -> {
+                    writingPanel.setStrategyOutput(strategy, result.getRewrittenText());
+                    writingPanel.setStrategyStatus(strategy, "done");
+                });
+            }
+
+            // No popup per strategy: the error goes into its tab, the others carry on
+            @Override
+            public void onError(String strategy, Exception error) {
+                SwingUtilities.invokeLater(() -> {
+                    if (error instanceof InterruptedException) {
+                        writingPanel.setStrategyStatus(strategy, "cancelled");
+                    } else if (error instanceof RateLimitException) {
+                        writingPanel.setStrategyOutput(strategy, "Too many requests. Please wait a few seconds and try again.");
+                        writingPanel.setStrategyStatus(strategy, "rate limited");
+                    } else {
+                        writingPanel.setStrategyOutput(strategy, "Error: " + error.getMessage());
+                        writingPanel.setStrategyStatus(strategy, "failed");
+                    }
+                });
+            }
+
+            @Override
+            public void onAllDone() {
+                SwingUtilities.invokeLater(() -> {
+                    writingPanel.showLoadingState(false);
+                    writingPanel.setRewriteEnabled(true);
+                });
+            }
+        });
     }
 
+    // Cancels one strategy of an "All modes" rewrite
+    public void handleCancelStrategyRequest(String strategy) {
+        MultiRewrite running = multiRewrite;
+        if (running != null) running.cancel(strategy);
+    }
+
+    // Live mode: called by the panel once typing pauses. Only new or changed paragraphs are sent,
+    // and whatever the previous text needed but this one doesn't is cancelled. No popups here.
+    public void handleLivePreviewRequest(String text, String mode) {
+        if (StrategyRegistry.ALL_MODES.equals(mode)) return; // the preview follows a single mode
+        whenServicesReady(() -> updateLivePreview(text, mode));
+    }
+
+    private void updateLivePreview(String text, String mode) {
+        if (livePreview == null) livePreview = new LivePreview(apiService.resultNow());
+
+        if (text == null || text.isBlank()) {
+            livePreview.cancel();
+            writingPanel.setLiveStatus("");
+            mainFrame.displayResult("");
+            return;
+        }
+
+        writingPanel.setLiveStatus("updating...");
+        livePreview.update(text, StrategyRegistry.getInstance().get(mode), new LivePreview.Listener() {
+            @Override
+            public void onPreview(String rewrittenText) {
+                SwingUtilities.invokeLater(() -> {
+                    mainFrame.displayResult(rewrittenText);
+                    writingPanel.setLiveStatus("");
+                });
+            }
+
+            @Override
+            public void onError(Exception error) {
+                SwingUtilities.invokeLater(() -> writingPanel.setLiveStatus(
+                        error instanceof RateLimitException ? "rate limited" : "preview failed"));
+            }
+        });
+    }
+
+    // Live mode switched off
+    public void handleLivePreviewStopped() {
+        whenServicesReady(() -> {
+            if (livePreview != null) livePreview.cancel();
+            writingPanel.setLiveStatus("");
+        });
+    }
+
+    // Returns right away; the session is written by the session-writer thread
     public void handleSaveRequest() {
-        fileService.saveSession(
-                writingPanel.getOriginalText(),
-                writingPanel.getRewrittenText()
-        );
+        String original = writingPanel.getOriginalText(); // as they are when Save is clicked
+        String rewritten = writingPanel.getRewrittenText();
+
+        whenServicesReady(() -> fileService.resultNow().saveSessionAsync(original, rewritten)
+                .exceptionally(error -> {
+                    error.printStackTrace();
+                    SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(
+                            null,
+                            "Error: Unable to save the session.",
+                            "Save Error",
+                            JOptionPane.ERROR_MESSAGE
+                    ));
+                    return null;
+                }));
     }
 
     public void handleLoadRequest() {
-        List<String[]> allSessions = fileService.loadSession();
-        if (allSessions.isEmpty()) return;
-
-        // Create snippet list
-        String[] options = new String[allSessions.size()];
-        for (int i = 0; i < allSessions.size(); i++) {
-            String snippet = allSessions.get(i)[0];
-            snippet = snippet.length() > 30 ? snippet.substring(0, 30) + "..." : snippet;
-            options[i] = "Session " + (i + 1) + ": " + snippet;
-        }
+        whenServicesReady(this::showSessionList);
+    }
+
+    // Counted on session-io; the window opens on the EDT once the count is known
+    private void showSessionList() {
+        FileService files = fileService.resultNow();
+        CompletableFuture.supplyAsync(files::getSessionCount, sessionIo).thenAcceptAsync(count -> {
+            if (count > 0) showSessionList(files, count);
+        }, SwingUtilities::invokeLater);
+    }
+
+    private void showSessionList(FileService files, int count) {
+        // Only snippets of the rows that are shown get loaded, one page at a time
+        SessionListModel.PageLoader allSessions = (offset, limit) -> rows(files.loadSessionPage(offset, limit));
+        SessionListModel listModel = new SessionListModel(count, allSessions);
 
         writingPanel.showSessionListWindow(
-                options,
+                listModel,
+
+                // --- search box: only the matching sessions ---
+                query -> CompletableFuture.supplyAsync(() -> query.isEmpty()
+                        ? new SessionListModel(files.getSessionCount(), allSessions)
+                        : new SessionListModel(files.searchSessions(query),
+                                positions -> rows(files.loadSessionSummaries(positions))), sessionIo),
 
                 // --- onLoad callback ---
                 () -> {
                     int selected = (int) writingPanel.getClientProperty("selectedIndex");
-                    String[] data = allSessions.get(selected);
-                    writingPanel.setOriginalText(data[0]);
-                    writingPanel.setRewrittenText(data[1]);
+                    CompletableFuture.supplyAsync(() -> files.loadSession(selected), sessionIo)
+                            .thenAcceptAsync(data -> {
+                                if (data == null) return;
+                                writingPanel.setOriginalText(data[0]);
+                                writingPanel.setRewrittenText(data[1]);
+                            }, SwingUtilities::invokeLater);
                 },
 
                 // --- onDelete callback ---
                 () -> {
                     int selected = (int) writingPanel.getClientProperty("selectedIndex");
-                    fileService.deleteSession(selected);
+                    return CompletableFuture.runAsync(() -> files.deleteSession(selected), sessionIo);
                 }
         );
 
     }
 
+    private static List<String> rows(List<SessionSummary> summaries) {
+        List<String> rows = new ArrayList<>();
+        for (SessionSummary summary : summaries) {
+            rows.add(summary.toString());
+        }
+        return rows;
+    }
+
     public void handleCancelRequest() {
-        apiService.cancel();
+        // Queued behind a rewrite clicked during startup, so that one is cancelled too
+        whenServicesReady(() -> apiService.resultNow().cancel());
         SwingUtilities.invokeLater(() -> {
             writingPanel.showLoadingState(false);
             writingPanel.setRewriteEnabled(true);
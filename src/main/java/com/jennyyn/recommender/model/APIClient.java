@@ -2,42 +2,85 @@ package com.jennyyn.recommender.model;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.http.HttpClient;
+import java.time.Duration;
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class APIClient {
-    private static APIClient instance;
+    public static final String DEFAULT_ENDPOINT = "https://api.openai.com/v1/chat/completions";
 
     private final String apiKey;
     private final String model;
+    private final String endpoint;
+    private final boolean streaming;
     private final HttpClient httpClient;
+    private final Properties props;
 
     // Private constructor (Singleton)
     private APIClient() {
-        Properties props = loadProperties();
+        this(getConfig());
+    }
+
+    // TESTING CONSTRUCTOR — settings given directly instead of config.properties (benchmarks, stub servers)
+    public APIClient(Properties props) {
+        this.props = props;
 
         this.apiKey = props.getProperty("OPENAI_API_KEY");
         this.model = props.getProperty("MODEL", "gpt-4o-mini");
+        this.endpoint = props.getProperty("ENDPOINT", DEFAULT_ENDPOINT);
+        this.streaming = Boolean.parseBoolean(props.getProperty("STREAM", "true"));
 
-        this.httpClient = HttpClient.newHttpClient();
+        this.httpClient = createHttpClient(Long.parseLong(props.getProperty("CONNECT_TIMEOUT_SECONDS", "10")));
 
-        if (apiKey == null || apiKey.isEmpty()) {
+        // Local OpenAI-compatible servers usually don't need a key
+        if ((apiKey == null || apiKey.isEmpty()) && endpoint.equals(DEFAULT_ENDPOINT)) {
             System.err.println("ERROR: Missing API Key in config.properties");
         }
     }
 
+    // Created on first use; the JVM's class initialization makes this thread-safe without locking
+    private static class Holder {
+        private static final APIClient INSTANCE = new APIClient();
+    }
+
     // access to the single instance
     public static APIClient getInstance() {
-        if (instance == null) {
-            instance = new APIClient();
-        }
-        return instance;
+        return Holder.INSTANCE;
+    }
+
+    private static class ConfigHolder {
+        private static final Properties CONFIG = loadProperties();
+    }
+
+    // config.properties, read once; cheap (no HttpClient), for settings needed before the client
+    public static Properties getConfig() {
+        return ConfigHolder.CONFIG;
+    }
+
+    // HTTP/2 where the server offers it (one multiplexed connection for all requests), HTTP/1.1 otherwise.
+    // Own daemon threads with recognizable names instead of the client's default pool.
+    private static HttpClient createHttpClient(long connectTimeoutSeconds) {
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "http-client-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofSeconds(connectTimeoutSeconds))
+                .executor(executor)
+                .build();
     }
 
     // Load the config.properties file from resources/
-    private Properties loadProperties() {
+    private static Properties loadProperties() {
         Properties props = new Properties();
 
-        try (InputStream input = getClass()
+        try (InputStream input = APIClient.class
                 .getClassLoader()
                 .getResourceAsStream("config.properties")) {
 
@@ -63,6 +106,21 @@ public class APIClient {
         return model;
     }
 
+    // Chat completions URL (any OpenAI-compatible server works)
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    // true = ask the API for server-sent events and show the text as it arrives
+    public boolean isStreamingEnabled() {
+        return streaming;
+    }
+
+    // Optional settings (cache, limits, ...) with a fallback when they are not configured
+    public String getProperty(String key, String defaultValue) {
+        return props.getProperty(key, defaultValue);
+    }
+
     public HttpClient getHttpClient() {
         return httpClient;
     }
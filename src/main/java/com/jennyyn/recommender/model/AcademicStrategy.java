@@ -1,10 +1,8 @@
 package com.jennyyn.recommender.model;
 
+public class AcademicStrategy extends PromptTemplate {
 
-public class AcademicStrategy implements WritingStrategy {
-
-    @Override
-    public String buildPrompt(String originalText) {
-        return "Rewrite the following text in a formal, academic style, using precise language and proper grammar:\n\n" + originalText;
+    public AcademicStrategy() {
+        super("Academic", "Rewrite the following text in a formal, academic style, using precise language and proper grammar:", TEXT);
     }
 }
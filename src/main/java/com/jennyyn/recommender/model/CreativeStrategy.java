@@ -1,9 +1,8 @@
 package com.jennyyn.recommender.model;
 
-public class CreativeStrategy implements WritingStrategy {
+public class CreativeStrategy extends PromptTemplate {
 
-    @Override
-    public String buildPrompt(String originalText) {
-        return "Rewrite the following text in a creative, expressive style:\n\n" + originalText;
+    public CreativeStrategy() {
+        super("Creative", "Rewrite the following text in a creative, expressive style:", TEXT);
     }
 }
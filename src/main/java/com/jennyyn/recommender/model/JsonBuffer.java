@@ -0,0 +1,113 @@
+package com.jennyyn.recommender.model;
+
+import java.util.Arrays;
+
+/*
+ * Growable byte buffer for writing a JSON body straight as UTF-8, strings escaped on the
+ * way in. Building a JsonObject and calling toString() copies a long input several times
+ * (the String, the escaped String, its UTF-8 bytes); this writes each char once.
+ */
+public final class JsonBuffer {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+
+    private byte[] bytes;
+    private int length = 0;
+
+    public JsonBuffer(int capacity) {
+        bytes = new byte[Math.max(16, capacity)];
+    }
+
+    // Bytes that are already valid JSON (precompiled parts)
+    public JsonBuffer raw(byte[] data) {
+        ensure(data.length);
+        System.arraycopy(data, 0, bytes, length, data.length);
+        length += data.length;
+        return this;
+    }
+
+    // JSON syntax and other ASCII-only text, unescaped
+    public JsonBuffer ascii(String text) {
+        ensure(text.length());
+        for (int i = 0; i < text.length(); i++) bytes[length++] = (byte) text.charAt(i);
+        return this;
+    }
+
+    // The contents of a JSON string (without the quotes): escaped and UTF-8 encoded in one pass
+    public JsonBuffer string(CharSequence text) {
+        int n = text.length();
+        ensure(n); // room for the rest as plain ASCII; anything longer makes room for itself
+        for (int i = 0; i < n; i++) {
+            char c = text.charAt(i);
+            int rest = n - i - 1;
+            if (c >= 0x20 && c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    ensure(2 + rest);
+                    bytes[length++] = '\\';
+                }
+                bytes[length++] = (byte) c;
+            } else if (c < 0x20) {
+                ensure(6 + rest);
+                switch (c) {
+                    case '\n': bytes[length++] = '\\'; bytes[length++] = 'n'; break;
+                    case '\r': bytes[length++] = '\\'; bytes[length++] = 'r'; break;
+                    case '\t': bytes[length++] = '\\'; bytes[length++] = 't'; break;
+                    default: unicodeEscape(c);
+                }
+            } else if (c < 0x800) {
+                ensure(2 + rest);
+                bytes[length++] = (byte) (0xC0 | (c >> 6));
+                bytes[length++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+                ensure(4 + rest);
+                int cp = Character.toCodePoint(c, text.charAt(++i));
+                bytes[length++] = (byte) (0xF0 | (cp >> 18));
+                bytes[length++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                bytes[length++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                bytes[length++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                ensure(6 + rest);
+                unicodeEscape(c); // lone surrogate: not encodable as UTF-8
+            } else {
+                ensure(3 + rest);
+                bytes[length++] = (byte) (0xE0 | (c >> 12));
+                bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return this;
+    }
+
+    // Escaped UTF-8 of a constant, to be written later with raw()
+    public static byte[] escape(String text) {
+        return new JsonBuffer(text.length() + 16).string(text).toByteArray();
+    }
+
+    // The internal array; only the first length() bytes are the body
+    public byte[] array() {
+        return bytes;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, length);
+    }
+
+    private void unicodeEscape(char c) {
+        bytes[length++] = '\\';
+        bytes[length++] = 'u';
+        bytes[length++] = HEX[c >> 12];
+        bytes[length++] = HEX[(c >> 8) & 0xF];
+        bytes[length++] = HEX[(c >> 4) & 0xF];
+        bytes[length++] = HEX[c & 0xF];
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+        }
+    }
+}
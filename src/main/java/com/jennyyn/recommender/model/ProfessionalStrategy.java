@@ -1,10 +1,8 @@
 package com.jennyyn.recommender.model;
 
-public class ProfessionalStrategy implements WritingStrategy {
+public class ProfessionalStrategy extends PromptTemplate {
 
-    @Override
-    public String buildPrompt(String originalText) {
-        return "Rewrite the following text in a clear, professional tone suitable for work or business:\n\n" + originalText;
+    public ProfessionalStrategy() {
+        super("Professional", "Rewrite the following text in a clear, professional tone suitable for work or business:", TEXT);
     }
 }
-
@@ -0,0 +1,123 @@
+package com.jennyyn.recommender.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/*
+ * A writing strategy made of text only: a system message with the instructions and a user
+ * message template with a {text} placeholder, e.g. "Make this shorter:\n\n{text}".
+ * Compiled once when the strategy is registered: the constant parts are kept as
+ * JSON-escaped UTF-8 bytes, so building a request is copying those bytes and escaping the
+ * input once, straight into the body (see OpenAICompatibleBackend).
+ */
+public class PromptTemplate implements WritingStrategy {
+
+    public static final String TEXT = "{text}";
+
+    private final String name;
+    private final String system;
+    private final String context; // extra text for one request (e.g. a chunk of a longer text), or ""
+    private final String prefix;
+    private final String suffix;
+    private final String id;
+
+    private final byte[] systemJson;
+    private final byte[] contextJson;
+    private final byte[] prefixJson;
+    private final byte[] suffixJson;
+
+    public PromptTemplate(String name, String system, String userTemplate) {
+        this(name, system, "", userTemplate.substring(0, textIndex(name, userTemplate)),
+                userTemplate.substring(textIndex(name, userTemplate) + TEXT.length()));
+    }
+
+    private PromptTemplate(String name, String system, String context, String prefix, String suffix) {
+        this.name = name;
+        this.system = system == null ? "" : system;
+        this.context = context;
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.systemJson = JsonBuffer.escape(this.system);
+        this.contextJson = JsonBuffer.escape(context);
+        this.prefixJson = JsonBuffer.escape(prefix);
+        this.suffixJson = JsonBuffer.escape(suffix);
+        this.id = fingerprint(this.system, context, prefix, suffix);
+    }
+
+    // SHA-256 of the parts, each preceded by its length so they can't run into each other
+    private static String fingerprint(String... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : parts) {
+                byte[] bytes = part.getBytes(StandardCharsets.UTF_8);
+                digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+                digest.update(bytes);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static int textIndex(String name, String userTemplate) {
+        int at = userTemplate.indexOf(TEXT);
+        if (at < 0) throw new IllegalArgumentException("Prompt of strategy '" + name + "' has no " + TEXT);
+        return at;
+    }
+
+    // Same template with a note for one request, sent as its own user message before the text.
+    // The system message (and the request prefix up to it) stays the same.
+    public PromptTemplate withContext(String note) {
+        return new PromptTemplate(name, system, context + note, prefix, suffix);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSystemMessage() {
+        return system;
+    }
+
+    // Stands for everything but the text: templates with the same id build the same prompt
+    // for the same text, so (id, text) is a cache key without building the prompt
+    public String getId() {
+        return id;
+    }
+
+    // Everything as one prompt, for cache keys and servers without a system role
+    @Override
+    public String buildPrompt(String originalText) {
+        StringBuilder prompt = new StringBuilder(system.length() + context.length() + prefix.length()
+                + originalText.length() + suffix.length() + 4);
+        if (!system.isEmpty()) prompt.append(system).append("\n\n");
+        if (!context.isEmpty()) prompt.append(context).append("\n\n");
+        return prompt.append(prefix).append(originalText).append(suffix).toString();
+    }
+
+    // ---- Precompiled parts (JSON string contents, without quotes); don't modify ----
+
+    public byte[] systemJson() {
+        return systemJson;
+    }
+
+    public byte[] contextJson() {
+        return contextJson;
+    }
+
+    public byte[] prefixJson() {
+        return prefixJson;
+    }
+
+    public byte[] suffixJson() {
+        return suffixJson;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,40 @@
+package com.jennyyn.recommender.model;
+
+// Lightweight description of a saved session for the history list (no full text)
+public class SessionSummary {
+
+    private final int index;
+    private final long id;
+    private final String snippet;
+    private final boolean truncated;
+
+    public SessionSummary(int index, long id, String snippet, boolean truncated) {
+        this.index = index;
+        this.id = id;
+        this.snippet = snippet;
+        this.truncated = truncated;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    // Start of the original text
+    public String getSnippet() {
+        return snippet;
+    }
+
+    // true if the original text is longer than the snippet
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    @Override
+    public String toString() {
+        return "Session " + (index + 1) + ": " + snippet + (truncated ? "..." : "");
+    }
+}
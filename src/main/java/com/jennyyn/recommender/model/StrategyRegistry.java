@@ -0,0 +1,84 @@
+package com.jennyyn.recommender.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/*
+ * All writing strategies by name, in dropdown order: the built-in ones, then the ones
+ * defined in config.properties. Built once; a request looks its strategy up instead of
+ * creating one, so the prompt templates are compiled once per run.
+ *
+ *   STRATEGY.Shorter=Make the following text shorter, keeping its meaning:
+ *   STRATEGY.Shorter.PROMPT=Text:\n\n{text}      (optional, default {text})
+ *
+ * The first line is the system message, the second the user message; a strategy with
+ * the name of a built-in one replaces it.
+ */
+public final class StrategyRegistry {
+
+    // Dropdown entry that rewrites the text in every mode side by side
+    public static final String ALL_MODES = "All modes";
+
+    private static final String PREFIX = "STRATEGY.";
+    private static final String PROMPT_SUFFIX = ".PROMPT";
+
+    private final Map<String, WritingStrategy> strategies = new LinkedHashMap<>();
+
+    public StrategyRegistry(Properties config) {
+        register(new CreativeStrategy());
+        register(new AcademicStrategy());
+        register(new ProfessionalStrategy());
+
+        TreeSet<String> names = new TreeSet<>();
+        for (String key : config.stringPropertyNames()) {
+            if (key.startsWith(PREFIX) && !key.endsWith(PROMPT_SUFFIX)) names.add(key.substring(PREFIX.length()));
+        }
+        for (String name : names) {
+            String system = config.getProperty(PREFIX + name);
+            String prompt = config.getProperty(PREFIX + name + PROMPT_SUFFIX, PromptTemplate.TEXT);
+            try {
+                register(new PromptTemplate(name, system, prompt));
+            } catch (IllegalArgumentException e) {
+                System.err.println("WARNING: Skipping strategy " + name + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static class Holder {
+        private static final StrategyRegistry INSTANCE = new StrategyRegistry(APIClient.getConfig());
+    }
+
+    // Names of the built-in strategies, without reading config.properties
+    public static List<String> builtInNames() {
+        return new StrategyRegistry(new Properties()).names();
+    }
+
+    // The strategies of config.properties (reads the config on first use)
+    public static StrategyRegistry getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    private void register(PromptTemplate strategy) {
+        strategies.put(strategy.getName(), strategy);
+    }
+
+    public List<String> names() {
+        return new ArrayList<>(strategies.keySet());
+    }
+
+    // Unknown names (and null) fall back to the first strategy
+    public WritingStrategy get(String name) {
+        WritingStrategy strategy = name == null ? null : strategies.get(name);
+        return strategy != null ? strategy : strategies.values().iterator().next();
+    }
+
+    // Name -> strategy for every strategy, in names() order
+    public Map<String, WritingStrategy> all() {
+        return Collections.unmodifiableMap(strategies);
+    }
+}
@@ -1,164 +1,670 @@
 package com.jennyyn.recommender.service;
 
 import com.jennyyn.recommender.model.APIClient;
+import com.jennyyn.recommender.model.PromptTemplate;
 import com.jennyyn.recommender.model.RateLimitException;
 import com.jennyyn.recommender.model.RewriteResult;
 import com.jennyyn.recommender.model.WritingStrategy;
 
-import java.net.URI;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.http.HttpClient;
 import java.nio.charset.StandardCharsets;
-
-import com.google.gson.JsonObject;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonParser;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 public class APIService {
 
-    private volatile Thread currentRequestThread = null;
-    volatile boolean cancelRequested = false;
+    private volatile long lastTimeToFirstTokenMillis = -1;
 
     private final APIClient apiClient;
     private final HttpClient httpClient;
+    private final LLMBackend backend;
+    private RewriteCache cache; // null = no caching
+
+    // Every request is a CompletableFuture pipeline on top of HttpClient.sendAsync, so no thread
+    // waits for the network. Blocking steps (cache disk tier, parsing a complete body) run on virtual threads.
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Set<RewriteHandle> activeRequests = ConcurrentHashMap.newKeySet();
+    private final Map<String, InFlightRewrite> inFlight = new ConcurrentHashMap<>(); // by RewriteCache.key
+    private AsyncPermits requestPermits; // caps how many talk to the API at once; null = no limit
+
+    // Paces requests and retries rate-limited ones; null = send immediately, never retry
+    private RateLimiter rateLimiter;
+    private int maxRetries = 0;
 
-    private static final int REQUEST_TIMEOUT_SECONDS = 10; // Timeout for network issues
+    // Longer inputs are split and rewritten in parallel (ChunkedRewrite); 0 = never split
+    private int chunkTokens = 0;
+
+    private ConnectionKeepAlive keepAlive; // null = connections are opened on demand
+
+    private final RewriteMetrics metrics = RewriteMetrics.getInstance();
 
     public APIService() {
         this.apiClient = APIClient.getInstance();
         this.httpClient = apiClient.getHttpClient();
+        this.backend = LLMBackend.create(apiClient);
+        this.cache = createCache(apiClient);
+        setMaxConcurrentRequests(Integer.parseInt(apiClient.getProperty("MAX_CONCURRENT_REQUESTS", "8")));
+
+        int requestsPerMinute = Integer.parseInt(apiClient.getProperty("RATE_LIMIT_RPM", "60"));
+        if (requestsPerMinute > 0) {
+            setRateLimiter(new RateLimiter(requestsPerMinute),
+                    Integer.parseInt(apiClient.getProperty("MAX_RETRIES", "6")));
+        }
+
+        setChunkTokens(Integer.parseInt(apiClient.getProperty("CHUNK_TOKENS", "1000")));
+
+        long keepAliveSeconds = Long.parseLong(apiClient.getProperty("KEEP_ALIVE_SECONDS", "20"));
+        if (keepAliveSeconds > 0) {
+            long maxIdleSeconds = TimeUnit.MINUTES.toSeconds(
+                    Long.parseLong(apiClient.getProperty("KEEP_ALIVE_MAX_IDLE_MINUTES", "15")));
+            setKeepAlive(new ConnectionKeepAlive(httpClient, java.net.URI.create(apiClient.getEndpoint()),
+                    keepAliveSeconds, maxIdleSeconds));
+            keepAlive.start(); // the first rewrite finds the connection already open
+        }
+
+        metrics.startLogging(Long.parseLong(apiClient.getProperty("METRICS_LOG_INTERVAL_SECONDS", "0")));
     }
 
     // TESTING CONSTRUCTOR — allows injecting mocks
     public APIService(APIClient apiClient, HttpClient httpClient) {
         this.apiClient = apiClient;
         this.httpClient = httpClient;
+        this.backend = LLMBackend.create(apiClient);
+    }
+
+    // Limit of requests sent to the API at the same time (0 = unlimited); extra ones wait their turn
+    public void setMaxConcurrentRequests(int max) {
+        this.requestPermits = max > 0 ? new AsyncPermits(max) : null;
+    }
+
+    public void setRateLimiter(RateLimiter rateLimiter, int maxRetries) {
+        this.rateLimiter = rateLimiter;
+        this.maxRetries = maxRetries;
+    }
+
+    public void setChunkTokens(int tokens) {
+        this.chunkTokens = Math.max(0, tokens);
+    }
+
+    void setKeepAlive(ConnectionKeepAlive keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public int getActiveRequestCount() {
+        return activeRequests.size();
     }
 
-    boolean isCancelRequested() {
-        return cancelRequested;
+    public RewriteCache getCache() {
+        return cache;
     }
 
-    public void rewriteTextAsync(
+    public void setCache(RewriteCache cache) {
+        this.cache = cache;
+    }
+
+    private static RewriteCache createCache(APIClient apiClient) {
+        int size = Integer.parseInt(apiClient.getProperty("CACHE_SIZE", "200"));
+        if (size <= 0) return null;
+
+        long ttlMillis = TimeUnit.MINUTES.toMillis(
+                Long.parseLong(apiClient.getProperty("CACHE_TTL_MINUTES", "60")));
+        String dir = apiClient.getProperty("CACHE_DIR", "");
+
+        int diskEntries = Integer.parseInt(apiClient.getProperty("CACHE_DISK_MAX_ENTRIES",
+                String.valueOf(RewriteCache.DEFAULT_MAX_DISK_ENTRIES)));
+
+        return new RewriteCache(size, ttlMillis, dir.isBlank() ? null : java.nio.file.Path.of(dir), diskEntries);
+    }
+
+    public RewriteHandle rewriteTextAsync(
             String originalText,
             WritingStrategy strategy,
             java.util.function.Consumer<RewriteResult> onSuccess,
             java.util.function.Consumer<Exception> onError,
             Runnable onFinally
     ) {
-        cancelRequested = false;
+        return rewriteTextAsync(originalText, strategy, delta -> { }, onSuccess, onError, onFinally);
+    }
 
-        Thread worker = new Thread(() -> {
-            try {
-                if (cancelRequested) return;
+    // Same as above, but onDelta receives each piece of text as it streams in.
+    // onSuccess still gets the complete text at the end.
+    public RewriteHandle rewriteTextAsync(
+            String originalText,
+            WritingStrategy strategy,
+            java.util.function.Consumer<String> onDelta,
+            java.util.function.Consumer<RewriteResult> onSuccess,
+            java.util.function.Consumer<Exception> onError,
+            Runnable onFinally
+    ) {
+        // Too long for one request: rewrite the pieces in parallel and stitch them together
+        if (chunkTokens > 0 && TextChunker.estimateTokens(originalText) > chunkTokens) {
+            List<TextChunker.Chunk> chunks = TextChunker.split(originalText, chunkTokens * TextChunker.CHARS_PER_TOKEN);
+            if (chunks.size() > 1) {
+                return new ChunkedRewrite(this, strategy, chunks).start(onDelta, onSuccess, onError, onFinally);
+            }
+        }
 
-                RewriteResult result = rewriteText(originalText, strategy);
+        RewriteHandle handle = new RewriteHandle();
+        activeRequests.add(handle);
+        metrics.requestStarted();
+        long submitted = System.nanoTime();
+        String strategyName = strategy instanceof PromptTemplate template
+                ? template.getName() : strategy.getClass().getSimpleName();
+
+        // Same model and prompt already on its way? Then wait for that call instead of sending another
+        String key = keyFor(originalText, strategy);
+        InFlightRewrite[] started = {null};
+        InFlightRewrite flight = inFlight.compute(key, (k, running) -> {
+            if (running != null && running.join(handle, onDelta)) return running;
+
+            InFlightRewrite fresh = new InFlightRewrite();
+            fresh.join(handle, onDelta);
+            started[0] = fresh;
+            return fresh;
+        });
 
-                if (!cancelRequested) onSuccess.accept(result);
+        if (started[0] != null) {
+            startCall(key, flight, originalText, strategy, submitted);
+        } else {
+            metrics.coalesced();
+        }
+
+        // Cancelling only detaches this caller; the call stops once nobody is waiting for it
+        handle.onCancel(() -> {
+            flight.leave(handle);
+            finish(handle, null, cancelled(), onSuccess, onError, onFinally);
+        });
 
-            } catch (Exception e) {
-                // Always notify the caller of the exception.
-                // The UI can treat InterruptedException as "cancelled".
-                onError.accept(e);
-            } finally {
-                onFinally.run();
+        flight.call.getFuture().whenComplete((result, error) -> {
+            if (error != null) {
+                finish(handle, null, unwrap(error), onSuccess, onError, onFinally);
+                return;
+            }
+            long elapsed = System.nanoTime() - submitted;
+            if (finish(handle, result, null, onSuccess, onError, onFinally)) {
+                metrics.requestSucceeded(strategyName, elapsed);
             }
         });
 
-        currentRequestThread = worker;
-        worker.start();
+        return handle;
+    }
+
+    // Rewrites one text with every given strategy at once (name -> strategy, in display order).
+    // Each strategy streams, succeeds, fails and can be cancelled on its own; see MultiRewrite.
+    public MultiRewrite rewriteAllAsync(
+            String originalText,
+            Map<String, WritingStrategy> strategies,
+            MultiRewrite.Listener listener
+    ) {
+        return new MultiRewrite().start(this, originalText, strategies, listener);
+    }
+
+    // Starts the shared API call behind one InFlightRewrite
+    private void startCall(String key, InFlightRewrite flight, String originalText, WritingStrategy strategy,
+                           long submitted) {
+        RewriteHandle call = flight.call;
+        AsyncPermits permits = requestPermits;
+
+        // Queued without holding a thread; cancelling leaves the queue
+        CompletableFuture<Void> slot = permits != null ? permits.acquire() : CompletableFuture.completedFuture(null);
+        call.onCancel(() -> slot.cancel(false));
+
+        slot.thenComposeAsync(ignored -> {
+                    metrics.queueWait.recordNanos(System.nanoTime() - submitted);
+                    return rewriteCachedAsync(key, originalText, strategy, flight::publish, call);
+                }, executor)
+                .whenComplete((result, error) -> {
+                    if (permits != null && slot.isDone() && !slot.isCompletedExceptionally()) permits.release();
+                    flight.close();
+                    inFlight.remove(key, flight);
+
+                    // The UI can treat InterruptedException as "cancelled".
+                    if (call.isCancelled()) call.fail(cancelled());
+                    else if (error != null) call.fail(unwrap(error));
+                    else call.complete(result);
+                });
+    }
+
+    // Completes one caller's handle and runs its callbacks; false if it was already done (e.g. cancelled)
+    private boolean finish(
+            RewriteHandle handle,
+            RewriteResult result,
+            Exception error,
+            java.util.function.Consumer<RewriteResult> onSuccess,
+            java.util.function.Consumer<Exception> onError,
+            Runnable onFinally
+    ) {
+        if (!(error == null ? handle.complete(result) : handle.fail(error))) return false;
+
+        activeRequests.remove(handle);
+        try {
+            // Always notify the caller of the exception.
+            if (error == null) {
+                onSuccess.accept(result);
+            } else {
+                metrics.requestFailed(error);
+                onError.accept(error);
+            }
+        } finally {
+            onFinally.run();
+        }
+        return true;
     }
 
+    // Cancels every request that is still running or waiting
     public void cancel() {
-        cancelRequested = true;
-        if (currentRequestThread != null) {
-            currentRequestThread.interrupt();
+        for (RewriteHandle handle : activeRequests) {
+            handle.cancel();
         }
     }
 
-    /*Sends text to OpenAI and returns the rewritten text*/
-    RewriteResult rewriteText(String originalText, WritingStrategy strategy) throws Exception {
-        String prompt = strategy.buildPrompt(originalText);
+    /*Answers from the cache when possible, otherwise calls the API and remembers the result*/
+    CompletableFuture<RewriteResult> rewriteCachedAsync(
+            String originalText,
+            WritingStrategy strategy,
+            java.util.function.Consumer<String> onDelta,
+            RewriteHandle call
+    ) {
+        String cacheKey = cache == null ? null : keyFor(originalText, strategy);
+        return rewriteCachedAsync(cacheKey, originalText, strategy, onDelta, call);
+    }
 
-        // Build JSON body
-        JsonObject json = new JsonObject();
-        json.addProperty("model", apiClient.getModel());
+    // Cache and coalescing key; a template's is built from its id, without rendering the prompt
+    private String keyFor(String originalText, WritingStrategy strategy) {
+        String backendName = backend.getClass().getName();
+        if (strategy instanceof PromptTemplate template) {
+            return RewriteCache.key(backendName, apiClient.getEndpoint(), apiClient.getModel(),
+                    template.getId(), originalText);
+        }
+        return RewriteCache.key(backendName, apiClient.getEndpoint(), apiClient.getModel(),
+                strategy.buildPrompt(originalText));
+    }
 
-        JsonArray messages = new JsonArray();
-        JsonObject userMessage = new JsonObject();
-        userMessage.addProperty("role", "user");
-        userMessage.addProperty("content", prompt);
-        messages.add(userMessage);
-        json.add("messages", messages);
+    // Same, with the cache key already worked out by the caller
+    private CompletableFuture<RewriteResult> rewriteCachedAsync(
+            String cacheKey,
+            String originalText,
+            WritingStrategy strategy,
+            java.util.function.Consumer<String> onDelta,
+            RewriteHandle call
+    ) {
+        if (cache == null) return requestAsync(originalText, strategy, onDelta, call);
 
-        // Build HTTP request
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create("https://api.openai.com/v1/chat/completions"))
-                .header("Content-Type", "application/json")
-                .header("Authorization", "Bearer " + apiClient.getApiKey())
-                .timeout(java.time.Duration.ofSeconds(REQUEST_TIMEOUT_SECONDS)) // <-- timeout added
-                .POST(HttpRequest.BodyPublishers.ofString(json.toString(), StandardCharsets.UTF_8))
-                .build();
+        RewriteResult cached = cache.get(cacheKey);
+        if (cached != null) return CompletableFuture.completedFuture(cached);
 
+        return requestAsync(originalText, strategy, onDelta, call).thenApply(result -> {
+            cache.put(cacheKey, result);
+            return result;
+        });
+    }
 
-        if (cancelRequested) throw new InterruptedException("Request cancelled.");
+    private CompletableFuture<RewriteResult> requestAsync(
+            String originalText,
+            WritingStrategy strategy,
+            java.util.function.Consumer<String> onDelta,
+            RewriteHandle call
+    ) {
+        return apiClient.isStreamingEnabled()
+                ? streamCompletion(originalText, strategy, onDelta, call)
+                : fetchCompletion(originalText, strategy, call);
+    }
+
+    // ---- Blocking versions, for tests, benchmarks and callers without a UI ----
+    RewriteResult rewriteCached(String originalText, WritingStrategy strategy,
+                                java.util.function.Consumer<String> onDelta) throws Exception {
+        return await(rewriteCachedAsync(originalText, strategy, onDelta, new RewriteHandle()));
+    }
+
+    /*Sends text to OpenAI and returns the rewritten text*/
+    RewriteResult rewriteText(String originalText, WritingStrategy strategy) throws Exception {
+        return await(fetchCompletion(originalText, strategy, new RewriteHandle()));
+    }
 
-        HttpResponse<String> response;
+    /*Same as rewriteText, but asks for server-sent events and passes every delta to onDelta*/
+    RewriteResult rewriteTextStreaming(
+            String originalText,
+            WritingStrategy strategy,
+            java.util.function.Consumer<String> onDelta
+    ) throws Exception {
+        return await(streamCompletion(originalText, strategy, onDelta, new RewriteHandle()));
+    }
 
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
         try {
-            // Use blocking send(), but now it will fail if timeout is reached
-            response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-        } catch (java.net.http.HttpTimeoutException e) {
-            throw new Exception("Request timed out. Check your internet connection.");
+            return future.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    // ---- One request: a complete JSON body, parsed on a virtual thread ----
+    private CompletableFuture<RewriteResult> fetchCompletion(String originalText, WritingStrategy strategy,
+                                                            RewriteHandle call) {
+        long buildStart = System.nanoTime();
+        HttpRequest request = backend.buildRequest(strategy, originalText, false);
+        metrics.promptBuild.recordNanos(System.nanoTime() - buildStart);
+
+        return withRetries(call, 0, () -> waitForRateLimiter(call)
+                .thenCompose(ignored -> {
+                    long startNanos = System.nanoTime();
+                    return send(request, info -> HttpResponse.BodySubscribers.ofInputStream(), call, startNanos)
+                            .thenApplyAsync(response -> readCompletion(response, call, startNanos), executor);
+                }));
+    }
+
+    private RewriteResult readCompletion(HttpResponse<InputStream> response, RewriteHandle call, long startNanos) {
+        long bodyStart = System.nanoTime();
+        try (InputStream body = response.body()) {
+            call.onCancel(() -> closeQuietly(body)); // aborts a read that is still waiting for bytes
+            RewriteHandle.checkCancelled(call);
+            if (response.statusCode() == 429) throw rateLimited(); // whatever the body of this server says
+
+            // Parsed straight from the connection, the body is never held as one String
+            CompletionParser.Completion completion = backend.parse(body);
+            long doneNanos = System.nanoTime();
+            metrics.bodyAndParse.recordNanos(doneNanos - bodyStart);
+            metrics.recordUsage(completion.promptTokens(), completion.completionTokens(), completion.cachedTokens());
+
+            // Without streaming the first token arrives together with the last one
+            lastTimeToFirstTokenMillis = (doneNanos - startNanos) / 1_000_000;
+            metrics.timeToFirstToken.recordNanos(doneNanos - startNanos);
+
+            return toResult(completion);
+        } catch (IOException e) {
+            throw new CompletionException(call.isCancelled() ? cancelled() : new Exception("Invalid API response."));
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new CompletionException(unexpectedFormat()); // Gson's message means nothing to the user
         } catch (Exception e) {
-            if (e instanceof InterruptedException) {
-                throw new InterruptedException("Request cancelled.");
-            }
-            throw new Exception("Unable to contact API. Check your internet connection.");
+            throw new CompletionException(e);
         }
+    }
+
+    // ---- One streamed request, handled line by line as the bytes arrive ----
+    private CompletableFuture<RewriteResult> streamCompletion(
+            String originalText,
+            WritingStrategy strategy,
+            java.util.function.Consumer<String> onDelta,
+            RewriteHandle call
+    ) {
+        long buildStart = System.nanoTime();
+        HttpRequest request = backend.buildRequest(strategy, originalText, true);
+        metrics.promptBuild.recordNanos(System.nanoTime() - buildStart);
 
-        if (cancelRequested) throw new InterruptedException("Request cancelled.");
+        return withRetries(call, 0, () -> waitForRateLimiter(call)
+                .thenCompose(ignored -> {
+                    long startNanos = System.nanoTime();
 
+                    // Errors are sent as a plain JSON body, not as events
+                    HttpResponse.BodyHandler<RewriteResult> handler = info -> new LineBodySubscriber(
+                            info.statusCode() == 200 ? new EventStream(onDelta, call, startNanos) : new ErrorBody(info.statusCode()));
 
-        JsonObject responseJson = JsonParser.parseString(response.body()).getAsJsonObject();
+                    return send(request, handler, call, startNanos).thenApply(HttpResponse::body);
+                }));
+    }
 
-        // SUCCESS CASE
-        if (responseJson.has("choices")) {
-            JsonObject firstChoice = responseJson
-                    .getAsJsonArray("choices")
-                    .get(0)
-                    .getAsJsonObject();
+    private class EventStream implements LineBodySubscriber.LineHandler {
 
-            if (firstChoice.has("message") &&
-                    firstChoice.getAsJsonObject("message").has("content")) {
+        private final java.util.function.Consumer<String> onDelta;
+        private final RewriteHandle call;
+        private final long startNanos;
+        private final long headersNanos = System.nanoTime();
+        private final StringBuilder rewritten = new StringBuilder();
+        private boolean firstToken = true;
 
-                String rewrittenText = firstChoice
-                        .getAsJsonObject("message")
-                        .get("content")
-                        .getAsString();
+        EventStream(java.util.function.Consumer<String> onDelta, RewriteHandle call, long startNanos) {
+            this.onDelta = onDelta;
+            this.call = call;
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public boolean onLine(String line) throws Exception {
+            RewriteHandle.checkCancelled(call);
 
-                return new RewriteResult(rewrittenText);
+            CompletionParser.Completion chunk;
+            try {
+                chunk = backend.parseStreamLine(line);
+            } catch (IllegalStateException | NumberFormatException e) {
+                throw unexpectedFormat();
             }
+            if (chunk == null) return false;
+            if (chunk == LLMBackend.END_OF_STREAM) return true;
 
-            throw new Exception("Invalid API response.");
+            if (chunk.errorMessage() != null) {
+                throw toApiException(chunk.errorMessage());
+            }
+            if (chunk.promptTokens() > 0 || chunk.completionTokens() > 0) {
+                metrics.recordUsage(chunk.promptTokens(), chunk.completionTokens(), chunk.cachedTokens()); // last chunk
+            }
+
+            String delta = chunk.content();
+            if (delta == null || delta.isEmpty()) return false;
+
+            if (firstToken) {
+                long ttft = System.nanoTime() - startNanos;
+                lastTimeToFirstTokenMillis = ttft / 1_000_000;
+                metrics.timeToFirstToken.recordNanos(ttft);
+                firstToken = false;
+                if (call != null) call.markStreamed(); // no retries from here on (see withRetries)
+            }
+            rewritten.append(delta);
+            onDelta.accept(delta);
+            return false;
         }
 
-        // API ERROR CASE
-        if (responseJson.has("error")) {
-            JsonObject errorObj = responseJson.getAsJsonObject("error");
-            String errorMsg = errorObj.has("message") ? errorObj.get("message").getAsString() : "Unknown API error";
+        @Override
+        public RewriteResult onEnd() throws Exception {
+            RewriteHandle.checkCancelled(call);
+            metrics.bodyAndParse.recordNanos(System.nanoTime() - headersNanos);
+            return new RewriteResult(rewritten.toString());
+        }
+    }
 
-            // Detect rate-limit from message
-            if (errorMsg.toLowerCase().contains("rate limit")) {
-                throw new RateLimitException("Rate limit exceeded. Please wait a few seconds.");
-            } else {
-                throw new Exception(errorMsg);
+    private class ErrorBody implements LineBodySubscriber.LineHandler {
+
+        private final int status;
+        private final StringBuilder body = new StringBuilder();
+
+        ErrorBody(int status) {
+            this.status = status;
+        }
+
+        @Override
+        public boolean onLine(String line) {
+            if (body.length() > 0) body.append('\n');
+            body.append(line);
+            return false;
+        }
+
+        @Override
+        public RewriteResult onEnd() throws Exception {
+            if (status == 429) throw rateLimited();
+            return parseResponse(body.toString());
+        }
+    }
+
+    // ---- Shared steps ----
+
+    // Runs one attempt; a rate-limited attempt is repeated after a jittered exponential backoff,
+    // unless it already streamed some text: the subscribers would get that text twice
+    private <T> CompletableFuture<T> withRetries(RewriteHandle call, int retry,
+                                                 Supplier<CompletableFuture<T>> attempt) {
+        return attempt.get()
+                .handle((result, error) -> {
+                    if (error == null) return CompletableFuture.completedFuture(result);
+
+                    Exception cause = unwrap(error);
+                    if (!(cause instanceof RateLimitException) || rateLimiter == null || retry >= maxRetries
+                            || call.isCancelled() || call.hasStreamed()) {
+                        return CompletableFuture.<T>failedFuture(cause);
+                    }
+                    metrics.retried();
+                    return delay(call, rateLimiter.backoffMillis(retry))
+                            .thenCompose(ignored -> withRetries(call, retry + 1, attempt));
+                })
+                .thenCompose(future -> future);
+    }
+
+    private CompletableFuture<Void> waitForRateLimiter(RewriteHandle call) {
+        if (rateLimiter == null) return CompletableFuture.completedFuture(null);
+
+        long wait = rateLimiter.reserve();
+        metrics.rateLimitWait.recordNanos(TimeUnit.MILLISECONDS.toNanos(wait));
+        return delay(call, wait);
+    }
+
+    // A timer instead of a sleeping thread; cancel ends the wait right away
+    private CompletableFuture<Void> delay(RewriteHandle call, long millis) {
+        if (millis <= 0) return CompletableFuture.completedFuture(null);
+
+        CompletableFuture<Void> timer = new CompletableFuture<>();
+        call.onCancel(() -> timer.cancel(false));
+        return timer.completeAsync(() -> null, CompletableFuture.delayedExecutor(millis, TimeUnit.MILLISECONDS, executor));
+    }
+
+    // sendAsync with rate limit bookkeeping, metrics and user-facing errors; cancel aborts the exchange
+    private <T> CompletableFuture<HttpResponse<T>> send(
+            HttpRequest request,
+            HttpResponse.BodyHandler<T> handler,
+            RewriteHandle call,
+            long startNanos
+    ) {
+        if (call.isCancelled()) return CompletableFuture.failedFuture(cancelled());
+
+        ConnectionKeepAlive connection = keepAlive;
+        if (connection != null) connection.requestSent();
+
+        AtomicBoolean headersReceived = new AtomicBoolean(false);
+        CompletableFuture<HttpResponse<T>> sent = httpClient.sendAsync(request, info -> {
+            headersReceived.set(true);
+            if (connection != null) connection.exchangeDone();
+            metrics.timeToFirstByte.recordNanos(System.nanoTime() - startNanos);
+            observeLimits(info);
+            return handler.apply(info);
+        });
+
+        // Cancelling the future returned by sendAsync also aborts the exchange, even mid-body
+        call.onCancel(() -> sent.cancel(true));
+
+        return sent.handle((response, error) -> {
+            if (error == null) return response;
+            throw new CompletionException(toSendException(error, call, headersReceived.get()));
+        });
+    }
+
+    private static Exception toSendException(Throwable error, RewriteHandle call, boolean headersReceived) {
+        Exception cause = unwrap(error);
+
+        if (call.isCancelled() || cause instanceof InterruptedException) return cancelled();
+        if (cause instanceof java.net.http.HttpTimeoutException) {
+            return new Exception("Request timed out. Check your internet connection.");
+        }
+        if (cause instanceof IOException) {
+            return new Exception(headersReceived
+                    ? "Connection lost while receiving the response."
+                    : "Unable to contact API. Check your internet connection.");
+        }
+        return cause; // API errors from the body handler, e.g. RateLimitException
+    }
+
+    // The real exception inside CompletionException / ExecutionException wrappers
+    private static Exception unwrap(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof CancellationException) return cancelled();
+        return cause instanceof Exception ? (Exception) cause : new Exception(cause);
+    }
+
+    private static InterruptedException cancelled() {
+        return new InterruptedException("Request cancelled.");
+    }
+
+    private static void closeQuietly(InputStream in) {
+        try {
+            in.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void observeLimits(HttpResponse.ResponseInfo info) {
+        if (rateLimiter == null) return;
+
+        if (info.statusCode() == 429) rateLimiter.onRateLimited(info.headers());
+        else rateLimiter.onResponse(info.headers());
+    }
+
+    // Latency of the most recent request until the first piece of text arrived
+    public long getLastTimeToFirstTokenMillis() {
+        return lastTimeToFirstTokenMillis;
+    }
+
+    RewriteResult parseResponse(String body) throws Exception {
+        try {
+            return toResult(backend.parse(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8))));
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            throw unexpectedFormat();
+        }
+    }
+
+    // JSON of another shape than expected (JsonReader throws IllegalStateException for a value
+    // of the wrong type, NumberFormatException for a number that isn't an int)
+    private static Exception unexpectedFormat() {
+        return new Exception("Unexpected API response format.");
+    }
+
+    private static RewriteResult toResult(CompletionParser.Completion completion) throws Exception {
+        // SUCCESS CASE
+        if (completion.hasChoices()) {
+            if (completion.content() != null) {
+                return new RewriteResult(completion.content());
             }
+            throw new Exception("Invalid API response.");
+        }
+
+        // API ERROR CASE
+        if (completion.errorMessage() != null) {
+            throw toApiException(completion.errorMessage());
         }
 
         // Unknown response shape
-        throw new Exception("Unexpected API response format.");
+        throw unexpectedFormat();
+    }
+
+    private static Exception toApiException(String errorMsg) {
+        // Detect rate-limit from message
+        if (errorMsg.toLowerCase().contains("rate limit")) {
+            return rateLimited();
+        } else {
+            return new Exception(errorMsg);
+        }
+    }
+
+    private static RateLimitException rateLimited() {
+        return new RateLimitException("Rate limit exceeded. Please wait a few seconds.");
     }
 
 
@@ -0,0 +1,50 @@
+package com.jennyyn.recommender.service;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+
+/*
+ * Semaphore whose acquire() returns a future instead of blocking, so queued
+ * requests don't hold a thread. Waiters are served in FIFO order; a waiter that
+ * is cancelled (its future completed) simply gives up its place in the queue.
+ */
+class AsyncPermits {
+
+    private final Queue<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+    private int available;
+
+    AsyncPermits(int permits) {
+        this.available = permits;
+    }
+
+    // Completes once a permit is ours; every successful acquire needs one release()
+    synchronized CompletableFuture<Void> acquire() {
+        if (available > 0 && waiters.isEmpty()) {
+            available--;
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        waiters.add(waiter);
+        return waiter;
+    }
+
+    // Hands the permit to the next waiter that is still waiting
+    void release() {
+        while (true) {
+            CompletableFuture<Void> next;
+            synchronized (this) {
+                next = waiters.poll();
+                if (next == null) {
+                    available++;
+                    return;
+                }
+            }
+            if (next.complete(null)) return; // otherwise it was cancelled meanwhile: try the next one
+        }
+    }
+
+    synchronized int availablePermits() {
+        return available;
+    }
+}
@@ -0,0 +1,154 @@
+package com.jennyyn.recommender.service;
+
+import com.jennyyn.recommender.model.RewriteResult;
+import com.jennyyn.recommender.model.WritingStrategy;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+/*
+ * Rewrites whole documents: splits them into paragraph-sized chunks, sends up to
+ * `concurrency` chunks at a time through APIService and writes the results back
+ * in the original order as soon as each next chunk is ready.
+ */
+public class BatchRewriter {
+
+    private static final int DEFAULT_CHUNK_CHARS = 2000; // small paragraphs are merged up to this size
+
+    private final APIService apiService;
+    private final WritingStrategy strategy;
+    private final int concurrency;
+    private final int maxChunkChars;
+
+    // Called after each finished chunk (from a worker thread)
+    public interface ProgressListener {
+        void onChunkDone(Path file, int done, int total);
+    }
+
+    // Chunks and elapsed time of one run, for throughput reporting
+    public record BatchStats(int files, int chunks, long elapsedMillis) {
+        public double chunksPerSecond() {
+            return elapsedMillis == 0 ? chunks : chunks * 1000.0 / elapsedMillis;
+        }
+    }
+
+    public BatchRewriter(APIService apiService, WritingStrategy strategy, int concurrency) {
+        this(apiService, strategy, concurrency, DEFAULT_CHUNK_CHARS);
+    }
+
+    public BatchRewriter(APIService apiService, WritingStrategy strategy, int concurrency, int maxChunkChars) {
+        this.apiService = apiService;
+        this.strategy = strategy;
+        this.concurrency = Math.max(1, concurrency);
+        this.maxChunkChars = maxChunkChars;
+    }
+
+    // Rewrites one file, or every .txt/.md file of a directory into the output directory
+    public BatchStats rewritePath(Path input, Path output, ProgressListener listener) throws Exception {
+        long start = System.currentTimeMillis();
+
+        if (!Files.isDirectory(input)) {
+            try (Writer out = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+                int chunks = rewrite(input, Files.readString(input, StandardCharsets.UTF_8), out, listener);
+                return new BatchStats(1, chunks, System.currentTimeMillis() - start);
+            }
+        }
+
+        List<Path> files;
+        try (Stream<Path> list = Files.list(input)) {
+            files = list.filter(Files::isRegularFile)
+                    .filter(p -> p.toString().endsWith(".txt") || p.toString().endsWith(".md"))
+                    .sorted()
+                    .toList();
+        }
+
+        Files.createDirectories(output);
+        int chunks = 0;
+        for (Path file : files) {
+            try (Writer out = Files.newBufferedWriter(output.resolve(file.getFileName()), StandardCharsets.UTF_8)) {
+                chunks += rewrite(file, Files.readString(file, StandardCharsets.UTF_8), out, listener);
+            }
+        }
+        return new BatchStats(files.size(), chunks, System.currentTimeMillis() - start);
+    }
+
+    // Rewrites one document and streams it to out; returns the number of chunks
+    public int rewrite(Path source, String text, Writer out, ProgressListener listener) throws Exception {
+        List<TextChunker.Chunk> chunks = TextChunker.split(text, maxChunkChars);
+        int total = chunks.size();
+        if (total == 0) return 0;
+
+        String[] results = new String[total];
+        Exception[] failure = {null};
+        int[] written = {0};
+        int[] done = {0};
+        Object lock = new Object();
+
+        Semaphore window = new Semaphore(concurrency);
+
+        for (int i = 0; i < total; i++) {
+            window.acquire();
+            synchronized (lock) {
+                if (failure[0] != null) {
+                    window.release(); // stop sending more chunks
+                    break;
+                }
+            }
+
+            final int chunkIndex = i;
+            apiService.rewriteTextAsync(
+                    chunks.get(i).text(),
+                    strategy,
+
+                    // SUCCESS: store it and write every chunk that is now in order
+                    (RewriteResult result) -> {
+                        synchronized (lock) {
+                            results[chunkIndex] = result.getRewrittenText();
+                            try {
+                                while (written[0] < total && results[written[0]] != null) {
+                                    if (written[0] > 0) out.write(chunks.get(written[0] - 1).separator());
+                                    out.write(results[written[0]].strip());
+                                    results[written[0]] = ""; // keep it non-null but free the text
+                                    written[0]++;
+                                }
+                                out.flush();
+                            } catch (IOException e) {
+                                if (failure[0] == null) failure[0] = e;
+                            }
+                            done[0]++;
+                            if (listener != null) listener.onChunkDone(source, done[0], total);
+                        }
+                    },
+
+                    // ERROR: remember the first one; no new chunks are sent after it
+                    error -> {
+                        synchronized (lock) {
+                            if (failure[0] == null) failure[0] = error;
+                        }
+                    },
+
+                    // FINALLY: free a slot for the next chunk
+                    window::release
+            );
+        }
+
+        // Wait for everything that was started
+        window.acquire(concurrency);
+        window.release(concurrency);
+
+        synchronized (lock) {
+            if (failure[0] != null) {
+                throw new Exception("Batch rewrite of " + source + " failed: " + failure[0].getMessage(), failure[0]);
+            }
+            out.write(System.lineSeparator());
+            out.flush();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,178 @@
+package com.jennyyn.recommender.service;
+
+import com.jennyyn.recommender.model.PromptTemplate;
+import com.jennyyn.recommender.model.RewriteResult;
+import com.jennyyn.recommender.model.WritingStrategy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/*
+ * Map-reduce rewrite of a text that is too long for one request. Every chunk is a
+ * normal APIService rewrite (so permits, rate limiting, cache and coalescing still
+ * apply) and they all run in parallel; each prompt carries the end of the previous
+ * chunk so the style stays continuous. Results are stitched back in order.
+ * Streamed text is passed on in order as well: a later chunk is held back until
+ * every chunk before it is complete.
+ */
+class ChunkedRewrite {
+
+    private static final int OVERLAP_CHARS = 200;
+
+    private final APIService apiService;
+    private final WritingStrategy strategy;
+    private final List<TextChunker.Chunk> chunks;
+
+    private final RewriteHandle handle = new RewriteHandle();
+    private final List<RewriteHandle> parts = new ArrayList<>();
+
+    private final StringBuilder[] received; // streamed (or final) text of every chunk
+    private final int[] shown;               // how much of it was passed on already
+    private final boolean[] done;
+    private int current = 0;                 // first chunk that isn't complete yet
+    private int remaining;
+
+    ChunkedRewrite(APIService apiService, WritingStrategy strategy, List<TextChunker.Chunk> chunks) {
+        this.apiService = apiService;
+        this.strategy = strategy;
+        this.chunks = chunks;
+        this.received = new StringBuilder[chunks.size()];
+        this.shown = new int[chunks.size()];
+        this.done = new boolean[chunks.size()];
+        this.remaining = chunks.size();
+        for (int i = 0; i < received.length; i++) received[i] = new StringBuilder();
+    }
+
+    RewriteHandle start(
+            Consumer<String> onDelta,
+            Consumer<RewriteResult> onSuccess,
+            Consumer<Exception> onError,
+            Runnable onFinally
+    ) {
+        handle.getFuture().whenComplete((result, error) -> {
+            try {
+                if (error == null) {
+                    onSuccess.accept(result);
+                } else {
+                    onError.accept(error instanceof Exception ? (Exception) error : new Exception(error));
+                }
+            } finally {
+                onFinally.run();
+            }
+        });
+        handle.onCancel(() -> {
+            handle.fail(new InterruptedException("Request cancelled."));
+            cancelParts();
+        });
+
+        for (int i = 0; i < chunks.size(); i++) {
+            final int index = i;
+            RewriteHandle part = apiService.rewriteTextAsync(
+                    chunks.get(i).text(),
+                    continuation(i),
+                    delta -> onPartDelta(index, delta, onDelta),
+                    result -> onPartDone(index, result.getRewrittenText(), onDelta),
+                    this::onPartFailed,
+                    () -> { }
+            );
+            synchronized (this) {
+                parts.add(part);
+            }
+            if (handle.isDone()) part.cancel(); // cancelled or failed while parts were still being started
+        }
+        return handle;
+    }
+
+    private synchronized void onPartDelta(int index, String delta, Consumer<String> onDelta) {
+        received[index].append(delta);
+        if (index == current) flush(onDelta);
+    }
+
+    private void onPartDone(int index, String text, Consumer<String> onDelta) {
+        String stitched = null;
+        synchronized (this) {
+            // A cached part arrives without deltas
+            if (shown[index] == 0 || text.startsWith(received[index].toString())) {
+                received[index].setLength(0);
+                received[index].append(text);
+            }
+            done[index] = true;
+            flush(onDelta);
+
+            if (--remaining == 0) stitched = stitch();
+        }
+        if (stitched != null) handle.complete(new RewriteResult(stitched));
+    }
+
+    private void onPartFailed(Exception error) {
+        // The first failure fails the whole rewrite; the other parts are no longer needed
+        if (handle.fail(error)) cancelParts();
+    }
+
+    // Passes on everything that can be shown in order
+    private void flush(Consumer<String> onDelta) {
+        while (current < chunks.size()) {
+            StringBuilder text = received[current];
+            if (text.length() > shown[current]) {
+                onDelta.accept(text.substring(shown[current]));
+                shown[current] = text.length();
+            }
+            if (!done[current]) return;
+
+            if (current < chunks.size() - 1) onDelta.accept(chunks.get(current).separator());
+            current++;
+        }
+    }
+
+    private String stitch() {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < chunks.size(); i++) {
+            out.append(received[i].toString().strip()).append(chunks.get(i).separator());
+        }
+        return out.toString();
+    }
+
+    private void cancelParts() {
+        List<RewriteHandle> copy;
+        synchronized (this) {
+            copy = new ArrayList<>(parts);
+        }
+        for (RewriteHandle part : copy) part.cancel();
+    }
+
+    // The strategy's prompt, told where this part sits and how the text before it ended
+    private WritingStrategy continuation(int index) {
+        if (index == 0) return strategy;
+
+        String previous = chunks.get(index - 1).text();
+        String tail = previous.substring(Math.max(0, previous.length() - OVERLAP_CHARS));
+        int wordStart = tail.indexOf(' ');
+        if (tail.length() < previous.length() && wordStart >= 0) tail = tail.substring(wordStart + 1);
+        String context = tail.replaceAll("\\s+", " ").strip(); // one line, the prompt keeps its layout
+
+        String note = "This is part " + (index + 1) + " of " + chunks.size() + " of a longer text. "
+                + "The previous part ended with: \"" + context + "\". "
+                + "Continue in the same voice and rewrite only the text below, without repeating that.\n";
+        // A template keeps its system message and gets the note as a message of its own
+        if (strategy instanceof PromptTemplate template) return template.withContext(note.trim());
+        return new ContinuationStrategy(note, strategy);
+    }
+
+    // Decorator: puts the note in front of the wrapped strategy's prompt
+    private static class ContinuationStrategy implements WritingStrategy {
+
+        private final String note;
+        private final WritingStrategy strategy;
+
+        ContinuationStrategy(String note, WritingStrategy strategy) {
+            this.note = note;
+            this.strategy = strategy;
+        }
+
+        @Override
+        public String buildPrompt(String originalText) {
+            return note + strategy.buildPrompt(originalText);
+        }
+    }
+}
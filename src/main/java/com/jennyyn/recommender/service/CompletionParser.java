@@ -0,0 +1,153 @@
+package com.jennyyn.recommender.service;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Pulls the few fields we need out of a chat completions response with a streaming
+ * JsonReader, skipping everything else, instead of building a full JsonObject tree:
+ *   choices[0].message.content (or .delta.content for streamed chunks)
+ *   error.message
+ *   usage.prompt_tokens / usage.completion_tokens
+ *   usage.prompt_tokens_details.cached_tokens (prompt tokens the server had cached)
+ */
+public final class CompletionParser {
+
+    // What we found in one response; content/errorMessage are null when absent
+    public record Completion(boolean hasChoices, String content, String errorMessage,
+                             int promptTokens, int completionTokens, int cachedTokens) {
+    }
+
+    private CompletionParser() {
+    }
+
+    // Complete (non-streamed) response body
+    public static Completion parse(InputStream body) throws IOException {
+        return parse(new InputStreamReader(body, StandardCharsets.UTF_8), "message");
+    }
+
+    public static Completion parse(String body) throws IOException {
+        return parse(new StringReader(body), "message");
+    }
+
+    // One "data:" payload of a streamed response
+    public static Completion parseChunk(String data) throws IOException {
+        return parse(new StringReader(data), "delta");
+    }
+
+    private static Completion parse(Reader in, String choiceField) throws IOException {
+        boolean hasChoices = false;
+        String content = null;
+        String errorMessage = null;
+        int promptTokens = 0;
+        int completionTokens = 0;
+        int cachedTokens = 0;
+
+        JsonReader reader = new JsonReader(in);
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            throw new IOException("Expected a JSON object");
+        }
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "choices":
+                    if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+                        reader.skipValue();
+                        break;
+                    }
+                    hasChoices = true;
+                    content = readFirstChoiceContent(reader, choiceField);
+                    break;
+                case "error":
+                    errorMessage = readField(reader, "message");
+                    if (errorMessage == null) errorMessage = "Unknown API error";
+                    break;
+                case "usage":
+                    if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                        reader.skipValue();
+                        break;
+                    }
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        String name = reader.nextName();
+                        if (name.equals("prompt_tokens") && reader.peek() == JsonToken.NUMBER) promptTokens = reader.nextInt();
+                        else if (name.equals("completion_tokens") && reader.peek() == JsonToken.NUMBER) completionTokens = reader.nextInt();
+                        else if (name.equals("prompt_tokens_details")) cachedTokens = readCachedTokens(reader);
+                        else reader.skipValue();
+                    }
+                    reader.endObject();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return new Completion(hasChoices, content, errorMessage, promptTokens, completionTokens, cachedTokens);
+    }
+
+    // choices: [ { <field>: { "content": "..." } }, ... ] -> content of the first choice
+    private static String readFirstChoiceContent(JsonReader reader, String field) throws IOException {
+        String content = null;
+
+        reader.beginArray();
+        if (reader.hasNext()) {
+            if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (reader.nextName().equals(field)) content = readField(reader, "content");
+                    else reader.skipValue();
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        while (reader.hasNext()) reader.skipValue(); // other choices
+        reader.endArray();
+
+        return content;
+    }
+
+    // prompt_tokens_details: { "cached_tokens": n, ... } -> n (0 if missing)
+    private static int readCachedTokens(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return 0;
+        }
+
+        int cached = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("cached_tokens") && reader.peek() == JsonToken.NUMBER) cached = reader.nextInt();
+            else reader.skipValue();
+        }
+        reader.endObject();
+        return cached;
+    }
+
+    // Reads an object and returns one string field of it (null if missing or not a string)
+    private static String readField(JsonReader reader, String wanted) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+
+        String value = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals(wanted) && reader.peek() == JsonToken.STRING) value = reader.nextString();
+            else reader.skipValue();
+        }
+        reader.endObject();
+        return value;
+    }
+}
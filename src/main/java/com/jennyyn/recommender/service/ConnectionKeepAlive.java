@@ -0,0 +1,113 @@
+package com.jennyyn.recommender.service;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Keeps a connection to the API open so a rewrite never pays for DNS, TCP and TLS.
+ * At startup a HEAD request opens the connection in the background; after that a
+ * HEAD is sent whenever the connection has been quiet for intervalSeconds, which is
+ * shorter than the idle timeouts of the client pool and of typical servers. The
+ * status of these requests doesn't matter (usually 404/405), only the connection.
+ * Pings stop after maxIdleSeconds without a rewrite and start again with the next one.
+ *
+ * HttpClient doesn't say which connection a request used, so reuse is counted from
+ * timing: a request is "warm" if something was exchanged with the server within the
+ * interval, "cold" otherwise. The warm-up time (connect + TLS + one round trip) next
+ * to the ping time (one round trip) shows what a cold request costs.
+ */
+class ConnectionKeepAlive {
+
+    private static final Duration PING_TIMEOUT = Duration.ofSeconds(10);
+
+    private final HttpClient httpClient;
+    private final HttpRequest ping;
+    private final long intervalNanos;
+    private final long maxIdleNanos;
+    private final RewriteMetrics metrics = RewriteMetrics.getInstance();
+
+    private volatile long lastExchange;          // any response from the server: warm-up, ping or rewrite
+    private volatile long lastRequest;           // last rewrite sent
+    private volatile boolean connected = false;  // at least one exchange has succeeded
+    private volatile boolean pinging = false;    // a warm-up or ping is on its way
+    private ScheduledExecutorService scheduler;
+
+    ConnectionKeepAlive(HttpClient httpClient, URI endpoint, long intervalSeconds, long maxIdleSeconds) {
+        this.httpClient = httpClient;
+        this.ping = HttpRequest.newBuilder(endpoint)
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .timeout(PING_TIMEOUT)
+                .build();
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(intervalSeconds);
+        this.maxIdleNanos = TimeUnit.SECONDS.toNanos(maxIdleSeconds);
+
+        long now = System.nanoTime();
+        this.lastExchange = now - intervalNanos; // nothing yet
+        this.lastRequest = now;                  // startup counts as activity, so pings start right away
+    }
+
+    // Warms up the connection now and checks it every interval from then on
+    synchronized void start() {
+        if (scheduler != null) return;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-keep-alive");
+            t.setDaemon(true);
+            return t;
+        });
+        long periodMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(intervalNanos) / 2);
+        scheduler.scheduleWithFixedDelay(this::check, 0, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void stop() {
+        if (scheduler != null) scheduler.shutdownNow();
+        scheduler = null;
+    }
+
+    // A rewrite is about to be sent
+    void requestSent() {
+        long now = System.nanoTime();
+        lastRequest = now;
+        if (connected && now - lastExchange < intervalNanos) metrics.warmConnectionRequest();
+        else metrics.coldConnectionRequest();
+    }
+
+    // A rewrite got its response headers
+    void exchangeDone() {
+        lastExchange = System.nanoTime();
+        connected = true;
+    }
+
+    // Sends a ping if the connection has been quiet for a while and the app is still in use
+    void check() {
+        long now = System.nanoTime();
+        if (pinging || now - lastExchange < intervalNanos || now - lastRequest > maxIdleNanos) return;
+        ping();
+    }
+
+    CompletableFuture<Void> ping() {
+        pinging = true;
+        boolean warmUp = !connected;
+        long start = System.nanoTime();
+
+        return httpClient.sendAsync(ping, HttpResponse.BodyHandlers.discarding())
+                .handle((response, error) -> {
+                    pinging = false;
+                    if (error != null) {
+                        connected = false; // next time is a warm-up again
+                        return null;
+                    }
+                    long elapsed = System.nanoTime() - start;
+                    (warmUp ? metrics.connectionWarmUp : metrics.keepAlivePing).recordNanos(elapsed);
+                    exchangeDone();
+                    return null;
+                });
+    }
+}
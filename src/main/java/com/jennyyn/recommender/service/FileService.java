@@ -1,118 +1,323 @@
 package com.jennyyn.recommender.service;
 
+import com.jennyyn.recommender.model.APIClient;
+import com.jennyyn.recommender.model.SessionSummary;
+
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 
-public class FileService {
+public class FileService implements AutoCloseable {
 
+    // Old text format (see LegacySessionFile), only read once to migrate it into the binary store
     private static final String SESSION_FILE = "session.txt";
-    private static final String SESSION_START = "---SESSION START---";
-    private static final String SESSION_END = "---SESSION END---";
-    private static final String SPLIT = "----";
+    private static final int MIGRATE_BATCH = 1000;
+
+    private static final String DATA_FILE = "sessions.dat";
+    private static final String MIGRATING_FILE = "sessions.dat.migrating";
+    private static final String SEARCH_FILE = "sessions.dat.search";
+    private static final int SNIPPET_LENGTH = 30;
+
+    // When saved sessions are fsynced: after every batch, never (left to the OS), or at most every N ms
+    public enum SyncPolicy { BATCH, NONE, INTERVAL }
+
+    private final Path directory;
+    private final RewriteMetrics metrics = RewriteMetrics.getInstance();
+    private SessionStore store;
+    private SessionSearchIndex search;
+
+    private SessionWriter writer;
+    private SyncPolicy syncPolicy = SyncPolicy.BATCH;
+    private long syncIntervalMillis = 0;
+    private long lastSyncNanos = 0;
+    private boolean compression = false;
+
+    public FileService() {
+        this(Path.of("."));
+        // SESSION_FSYNC=batch|none|<millis>
+        String sync = APIClient.getInstance().getProperty("SESSION_FSYNC", "batch").trim();
+        if (sync.equalsIgnoreCase("none")) setSyncPolicy(SyncPolicy.NONE, 0);
+        else if (!sync.equalsIgnoreCase("batch")) setSyncPolicy(SyncPolicy.INTERVAL, Long.parseLong(sync));
+        setCompression(Boolean.parseBoolean(APIClient.getInstance().getProperty("SESSION_COMPRESSION", "false")));
+    }
+
+    // TESTING CONSTRUCTOR — keeps the session files in another directory
+    public FileService(Path directory) {
+        this.directory = directory;
+    }
+
+    public synchronized void setSyncPolicy(SyncPolicy policy, long intervalMillis) {
+        this.syncPolicy = policy;
+        this.syncIntervalMillis = intervalMillis;
+    }
+
+    // Stores sessions deflated with a dictionary trained from the history (see SessionStore)
+    public synchronized void setCompression(boolean enabled) {
+        this.compression = enabled;
+        if (store != null) store.setCompression(enabled);
+    }
+
+    // Store for reading and deleting: saves still in the queue are written first
+    private SessionStore flushedStore() throws IOException {
+        SessionWriter w;
+        synchronized (this) {
+            w = writer;
+        }
+        if (w != null) w.awaitPending();
+        return store();
+    }
+
+    // The writer thread is only started by the first save
+    private synchronized SessionWriter writer() {
+        if (writer == null) writer = new SessionWriter(this::writeBatch);
+        return writer;
+    }
+
+    // Opens the store on first use; migrates session.txt if there is no binary store yet
+    private synchronized SessionStore store() throws IOException {
+        if (store != null) return store;
+
+        Path dataFile = directory.resolve(DATA_FILE);
+        File legacy = directory.resolve(SESSION_FILE).toFile();
+        if (!SessionStore.exists(dataFile) && legacy.exists()) migrateLegacySessions(legacy.toPath(), dataFile);
+
+        store = new SessionStore(dataFile);
+        store.setCompression(compression);
 
-    //Saves sessions (appends to file)
+        search = new SessionSearchIndex(directory.resolve(SEARCH_FILE), store.generation());
+        syncSearchIndex();
+        return store;
+    }
+
+    // The index is written after the store, so a crash (or an older version) can leave it behind
+    private void syncSearchIndex() throws IOException {
+        synchronized (store) {
+            for (int i = 0; i < store.size(); i++) {
+                long id = store.idAt(i);
+                if (!search.contains(id)) {
+                    String[] session = store.read(i);
+                    search.add(id, session[0], session[1]);
+                }
+            }
+            for (long id : search.ids()) {
+                if (store.positionOf(id) < 0) search.remove(id);
+            }
+        }
+    }
+
+    // Writes the queued saves, stops the writer thread and closes the files; using the
+    // service again opens them again
+    @Override
+    public void close() throws IOException {
+        SessionWriter w;
+        synchronized (this) {
+            w = writer;
+            writer = null;
+        }
+        if (w != null) w.close(); // outside the lock: the writer thread needs it for its last batch
+
+        synchronized (this) {
+            if (store == null) return;
+            search.close();
+            store.close();
+            search = null;
+            store = null;
+        }
+    }
+
+    //Saves a session in the background; completes with its id once it is on disk
+    public CompletableFuture<Long> saveSessionAsync(String original, String rewritten) {
+        long start = System.nanoTime();
+        CompletableFuture<Long> saved = writer().submit(original, rewritten);
+        saved.whenComplete((id, error) -> metrics.sessionSave.recordNanos(System.nanoTime() - start));
+        return saved;
+    }
+
+    //Saves sessions (appends to file) and waits for it
     public void saveSession(String original, String rewritten) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(SESSION_FILE, true))) {
-            writer.write(SESSION_START);
-            writer.newLine();
-            writer.write(original);
-            writer.newLine();
-            writer.write(SPLIT);
-            writer.newLine();
-            writer.write(rewritten);
-            writer.newLine();
-            writer.write(SESSION_END);
-            writer.newLine();
-            writer.newLine();
-        } catch (IOException e) {
+        try {
+            saveSessionAsync(original, rewritten).join();
+        } catch (CompletionException e) {
+            e.getCause().printStackTrace();
+        }
+    }
+
+    // Called by the writer thread with everything that was queued: one write per file, one sync
+    private long[] writeBatch(List<String[]> sessions) throws IOException {
+        SessionStore s = store();
+        long[] ids = s.appendAll(sessions);
+        if (shouldSync()) s.force();
+        try {
+            search.addAll(ids, sessions);
+        } catch (IOException | RuntimeException e) {
+            // The sessions are saved; syncSearchIndex adds what is missing on the next open
             e.printStackTrace();
         }
+        return ids;
+    }
+
+    private synchronized boolean shouldSync() {
+        switch (syncPolicy) {
+            case NONE:
+                return false;
+            case INTERVAL:
+                long now = System.nanoTime();
+                if (now - lastSyncNanos < syncIntervalMillis * 1_000_000) return false;
+                lastSyncNanos = now;
+                return true;
+            default:
+                return true;
+        }
     }
 
     //Load all sessions from history file
     public List<String[]> loadSession() {
-        File file = new File(SESSION_FILE);
-        List<String[]> sessions = new ArrayList<>();
-        if (!file.exists()) return sessions;
-
-        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-            String line;
-            StringBuilder original = new StringBuilder();
-            StringBuilder rewritten = new StringBuilder();
-            boolean inSession = false;
-            boolean split = false;
-
-            while ((line = reader.readLine()) != null) {
-                if (line.equals(SESSION_START)) {
-                    inSession = true;
-                    split = false;
-                    original.setLength(0);
-                    rewritten.setLength(0);
-                    continue;
-                }
-                if (line.equals(SPLIT)) {
-                    split = true;
-                    continue;
-                }
-                if (line.equals(SESSION_END)) {
-                    inSession = false;
-                    sessions.add(new String[]{original.toString(), rewritten.toString()});
-                    continue;
-                }
-                if (inSession) {
-                    if (!split) original.append(line).append("\n");
-                    else rewritten.append(line).append("\n");
-                }
-            }
-
+        try {
+            return flushedStore().readAll();
         } catch (IOException e) {
             e.printStackTrace();
+            return new ArrayList<>();
         }
-        return sessions;
     }
 
-    public void deleteSession(int index) {
-        List<String[]> sessions = loadSession();
-
-        // Safety
-        if (index < 0 || index >= sessions.size()) {
-            return;
+    //Load one session ({original, rewritten}), or null if the index is invalid
+    public String[] loadSession(int index) {
+        long start = System.nanoTime();
+        try {
+            SessionStore s = flushedStore();
+            if (index < 0 || index >= s.size()) return null;
+            return s.read(index);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        } finally {
+            metrics.sessionLoad.recordNanos(System.nanoTime() - start);
         }
+    }
 
-        // Remove the chosen session
-        sessions.remove(index);
+    //Snippets for one page of the history list; only reads the start of each session
+    public List<SessionSummary> loadSessionPage(int offset, int limit) {
+        List<SessionSummary> page = new ArrayList<>();
+        long start = System.nanoTime();
+        try {
+            SessionStore s = flushedStore();
+            synchronized (s) {
+                int end = Math.min(s.size(), offset + limit);
+                for (int i = Math.max(0, offset); i < end; i++) {
+                    page.add(summary(s, i));
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            metrics.sessionPage.recordNanos(System.nanoTime() - start);
+        }
+        return page;
+    }
 
-        // Rewrite the whole file with remaining sessions
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(SESSION_FILE))) {
-            for (String[] session : sessions) {
-                writer.write(SESSION_START);
-                writer.newLine();
+    // Positions of the sessions matching the query (words match as prefixes, "quoted" as a phrase)
+    public int[] searchSessions(String query) {
+        long start = System.nanoTime();
+        try {
+            SessionStore s = flushedStore();
+            return s.positionsOf(search.search(query));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new int[0];
+        } finally {
+            metrics.sessionSearch.recordNanos(System.nanoTime() - start);
+        }
+    }
 
-                // Original text (may be multi-line)
-                if (session[0] != null) {
-                    writer.write(session[0].trim());
+    //Snippets of the given sessions (e.g. a page of search results)
+    public List<SessionSummary> loadSessionSummaries(int[] positions) {
+        List<SessionSummary> page = new ArrayList<>();
+        long start = System.nanoTime();
+        try {
+            SessionStore s = flushedStore();
+            synchronized (s) {
+                for (int position : positions) {
+                    if (position >= 0 && position < s.size()) page.add(summary(s, position));
                 }
-                writer.newLine();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            metrics.sessionPage.recordNanos(System.nanoTime() - start);
+        }
+        return page;
+    }
 
-                writer.write(SPLIT);
-                writer.newLine();
+    private static SessionSummary summary(SessionStore s, int position) throws IOException {
+        String snippet = s.readSnippet(position, SNIPPET_LENGTH);
+        boolean truncated = snippet.length() > SNIPPET_LENGTH;
+        if (truncated) snippet = snippet.substring(0, SNIPPET_LENGTH);
+        return new SessionSummary(position, s.idAt(position), snippet, truncated);
+    }
 
-                // Rewritten text (may be multi-line)
-                if (session[1] != null) {
-                    writer.write(session[1].trim());
-                }
-                writer.newLine();
+    public int getSessionCount() {
+        try {
+            return flushedStore().size();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    public void deleteSession(int index) {
+        long start = System.nanoTime();
+        try {
+            SessionStore s = flushedStore();
 
-                writer.write(SESSION_END);
-                writer.newLine();
-                writer.newLine();
+            // Safety
+            if (index < 0 || index >= s.size()) {
+                return;
             }
 
+            long id = s.idAt(index);
+            s.delete(index);
+            search.remove(id);
         } catch (IOException e) {
             e.printStackTrace();
+        } finally {
+            metrics.sessionDelete.recordNanos(System.nanoTime() - start);
         }
     }
 
-}
+    // Copies session.txt into the store a batch at a time, without loading the whole file
+    // Builds the store under a temporary name and renames it when complete, so a crash midway
+    // leaves no data file and the migration simply starts over on the next run
+    private void migrateLegacySessions(Path legacy, Path dataFile) throws IOException {
+        Path tmpData = directory.resolve(MIGRATING_FILE);
+        Path tmpIndex = directory.resolve(MIGRATING_FILE + ".idx");
+        Path tmpGeneration = directory.resolve(MIGRATING_FILE + ".gen");
+        Files.deleteIfExists(tmpData); // left by an interrupted migration
+        Files.deleteIfExists(tmpIndex);
+
+        try (LegacySessionFile file = new LegacySessionFile(legacy);
+             SessionStore migrated = new SessionStore(tmpData)) {
+            List<String[]> batch = new ArrayList<>(MIGRATE_BATCH);
+            for (int i = 0; i < file.size(); i++) {
+                batch.add(file.read(i));
+                if (batch.size() == MIGRATE_BATCH) {
+                    migrated.appendAll(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) migrated.appendAll(batch);
+            migrated.force();
+        }
+        // The data file goes last: it is what marks the migration as done (and the new store
+        // picks its own generation)
+        Files.deleteIfExists(tmpGeneration);
+        Files.move(tmpIndex, dataFile.resolveSibling(dataFile.getFileName() + ".idx"),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(tmpData, dataFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
 
+}
@@ -0,0 +1,52 @@
+package com.jennyyn.recommender.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/*
+ * One API call shared by every caller that asked for the same prompt while it was
+ * still running (single flight). Each caller keeps its own RewriteHandle; the call
+ * itself is only cancelled once every subscriber has cancelled.
+ */
+class InFlightRewrite {
+
+    // The real request; its future completes every subscriber
+    final RewriteHandle call = new RewriteHandle();
+
+    private final Map<RewriteHandle, Consumer<String>> subscribers = new LinkedHashMap<>();
+    private final StringBuilder streamed = new StringBuilder(); // replayed to late subscribers
+    private boolean closed = false; // finished, or everybody cancelled: no new subscribers
+
+    // Adds a subscriber and replays what was streamed so far; false if the call can't be joined anymore
+    synchronized boolean join(RewriteHandle handle, Consumer<String> onDelta) {
+        if (closed) return false;
+
+        subscribers.put(handle, onDelta);
+        if (streamed.length() > 0) onDelta.accept(streamed.toString());
+        return true;
+    }
+
+    // Removes a cancelled subscriber; the last one to leave cancels the call
+    void leave(RewriteHandle handle) {
+        boolean last;
+        synchronized (this) {
+            if (subscribers.remove(handle) == null) return;
+            last = subscribers.isEmpty() && !closed;
+            if (last) closed = true;
+        }
+        if (last) call.cancel();
+    }
+
+    // Streamed text from the call, passed on to every subscriber
+    synchronized void publish(String delta) {
+        streamed.append(delta);
+        for (Consumer<String> onDelta : subscribers.values()) {
+            onDelta.accept(delta);
+        }
+    }
+
+    synchronized void close() {
+        closed = true;
+    }
+}
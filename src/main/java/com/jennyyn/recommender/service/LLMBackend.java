@@ -0,0 +1,46 @@
+package com.jennyyn.recommender.service;
+
+import com.jennyyn.recommender.model.APIClient;
+import com.jennyyn.recommender.model.WritingStrategy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+
+/*
+ * Wire format of one LLM API: how a prompt becomes an HTTP request and how complete
+ * and streamed responses are read back. APIService only talks to this interface
+ * (Strategy), so another kind of server only needs a new implementation.
+ */
+public interface LLMBackend {
+
+    // Returned by parseStreamLine when the server says the stream is over
+    CompletionParser.Completion END_OF_STREAM = new CompletionParser.Completion(false, null, null, 0, 0, 0);
+
+    HttpRequest buildRequest(String prompt, boolean stream);
+
+    // The request for one text; backends that understand prompt templates build it from their parts
+    default HttpRequest buildRequest(WritingStrategy strategy, String text, boolean stream) {
+        return buildRequest(strategy.buildPrompt(text), stream);
+    }
+
+    // A complete (non-streamed) response body, or the error body of a failed request
+    CompletionParser.Completion parse(InputStream body) throws IOException;
+
+    // One line of a streamed response: null if it carries nothing, END_OF_STREAM at the end
+    CompletionParser.Completion parseStreamLine(String line) throws IOException;
+
+    // Picks the backend named by BACKEND in config.properties
+    static LLMBackend create(APIClient apiClient) {
+        String name = apiClient.getProperty("BACKEND", "openai");
+        if (name == null) name = "openai";
+
+        switch (name.trim().toLowerCase()) {
+            case "openai":
+                return new OpenAICompatibleBackend(apiClient);
+            default:
+                System.err.println("WARNING: unknown BACKEND '" + name + "', using openai");
+                return new OpenAICompatibleBackend(apiClient);
+        }
+    }
+}
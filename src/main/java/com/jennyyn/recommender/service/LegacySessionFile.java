@@ -0,0 +1,144 @@
+package com.jennyyn.recommender.service;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+ * Reader for the old session.txt format:
+ *   ---SESSION START---
+ *   original lines
+ *   ----
+ *   rewritten lines
+ *   ---SESSION END---
+ *
+ * The file is memory-mapped and the delimiter lines are found by scanning the mapped
+ * bytes; only the byte ranges of each session are kept, and a session's text is decoded
+ * when it is read. So memory stays flat however large the history is. The file is mapped
+ * in windows of up to 1 GB, which also lifts the 2 GB limit of a single mapping.
+ */
+final class LegacySessionFile implements AutoCloseable {
+
+    private static final long WINDOW_SIZE = 1L << 30;
+
+    private static final byte[] SESSION_START = "---SESSION START---".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SESSION_END = "---SESSION END---".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SPLIT = "----".getBytes(StandardCharsets.US_ASCII);
+
+    private final FileChannel channel;
+    private final long fileSize;
+
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long windowEnd;
+
+    // 4 longs per session: original start/end, rewritten start/end (without the last line break)
+    private long[] ranges = new long[64];
+    private int count = 0;
+
+    LegacySessionFile(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        fileSize = channel.size();
+        scan();
+    }
+
+    int size() {
+        return count;
+    }
+
+    // Returns {original, rewritten} of one session
+    String[] read(int index) throws IOException {
+        int i = index * 4;
+        return new String[]{decode(ranges[i], ranges[i + 1]), decode(ranges[i + 2], ranges[i + 3])};
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    // Same rules as the old line-by-line parser: lines between START and the split line are
+    // the original, lines after it the rewrite, and END closes the session
+    private void scan() throws IOException {
+        boolean inSession = false;
+        boolean split = false;
+        long originalStart = 0, originalEnd = 0, rewrittenStart = 0, rewrittenEnd = 0;
+
+        long position = 0;
+        while (position < fileSize) {
+            long lineEnd = position;
+            byte b = 0;
+            while (lineEnd < fileSize && (b = byteAt(lineEnd)) != '\n' && b != '\r') lineEnd++;
+            long next = lineEnd;
+            if (next < fileSize) {
+                next++;
+                if (b == '\r' && next < fileSize && byteAt(next) == '\n') next++;
+            }
+
+            if (lineEquals(position, lineEnd, SESSION_START)) {
+                inSession = true;
+                split = false;
+                originalStart = originalEnd = next;
+                rewrittenStart = rewrittenEnd = next;
+            } else if (lineEquals(position, lineEnd, SPLIT)) {
+                split = true;
+                rewrittenStart = rewrittenEnd = next;
+            } else if (lineEquals(position, lineEnd, SESSION_END)) {
+                if (inSession) {
+                    if (!split) rewrittenStart = rewrittenEnd = 0;
+                    add(originalStart, originalEnd, rewrittenStart, rewrittenEnd);
+                }
+                inSession = false;
+            } else if (inSession) {
+                if (!split) originalEnd = lineEnd;
+                else rewrittenEnd = lineEnd;
+            }
+            position = next;
+        }
+    }
+
+    private void add(long originalStart, long originalEnd, long rewrittenStart, long rewrittenEnd) {
+        if (count * 4 == ranges.length) ranges = Arrays.copyOf(ranges, ranges.length * 2);
+        int i = count * 4;
+        ranges[i] = originalStart;
+        ranges[i + 1] = originalEnd;
+        ranges[i + 2] = rewrittenStart;
+        ranges[i + 3] = rewrittenEnd;
+        count++;
+    }
+
+    private boolean lineEquals(long start, long end, byte[] expected) throws IOException {
+        if (end - start != expected.length) return false;
+        for (int i = 0; i < expected.length; i++) {
+            if (byteAt(start + i) != expected[i]) return false;
+        }
+        return true;
+    }
+
+    private String decode(long start, long end) throws IOException {
+        byte[] bytes = new byte[Math.toIntExact(end - start)];
+        if (bytes.length == 0) return "";
+        if (start < windowStart || end > windowEnd) map(start);
+        window.get((int) (start - windowStart), bytes);
+
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        // The old parser joined lines with \n whatever the file used
+        return text.indexOf('\r') < 0 ? text : text.replace("\r\n", "\n").replace('\r', '\n');
+    }
+
+    private byte byteAt(long position) throws IOException {
+        if (position < windowStart || position >= windowEnd) map(position);
+        return window.get((int) (position - windowStart));
+    }
+
+    private void map(long start) throws IOException {
+        windowStart = start;
+        windowEnd = Math.min(fileSize, start + WINDOW_SIZE);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowEnd - windowStart);
+    }
+}
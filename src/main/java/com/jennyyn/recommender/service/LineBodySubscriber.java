@@ -0,0 +1,103 @@
+package com.jennyyn.recommender.service;
+
+import com.jennyyn.recommender.model.RewriteResult;
+
+import java.io.ByteArrayOutputStream;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/*
+ * Non-blocking response body subscriber: splits the bytes into lines as they
+ * arrive from the HttpClient and hands each line to a LineHandler. No thread
+ * waits on the connection. Used for server-sent events and for error bodies.
+ */
+class LineBodySubscriber implements HttpResponse.BodySubscriber<RewriteResult> {
+
+    interface LineHandler {
+        // Returns true once the result is known and the rest of the body can be ignored
+        boolean onLine(String line) throws Exception;
+
+        // Body ended (or onLine returned true): build the result
+        RewriteResult onEnd() throws Exception;
+    }
+
+    private final LineHandler handler;
+    private final CompletableFuture<RewriteResult> body = new CompletableFuture<>();
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+    private Flow.Subscription subscription;
+
+    LineBodySubscriber(LineHandler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public CompletionStage<RewriteResult> getBody() {
+        return body;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> buffers) {
+        if (!body.isDone()) {
+            try {
+                for (ByteBuffer buffer : buffers) {
+                    if (split(buffer)) {
+                        body.complete(handler.onEnd());
+                        break;
+                    }
+                }
+            } catch (Exception e) {
+                body.completeExceptionally(e);
+                subscription.cancel();
+                return;
+            }
+        }
+        // After the result is known the rest is drained (usually nothing) so the connection can be reused
+        subscription.request(1);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        body.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        if (body.isDone()) return;
+        try {
+            if (line.size() > 0) handler.onLine(takeLine()); // last line without a newline
+            body.complete(handler.onEnd());
+        } catch (Exception e) {
+            body.completeExceptionally(e);
+        }
+    }
+
+    // '\n' never occurs inside a multi-byte UTF-8 character, so splitting on the byte is safe
+    private boolean split(ByteBuffer buffer) throws Exception {
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            if (b != '\n') {
+                line.write(b);
+            } else if (handler.onLine(takeLine())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String takeLine() {
+        String s = line.toString(StandardCharsets.UTF_8);
+        line.reset();
+        return s.endsWith("\r") ? s.substring(0, s.length() - 1) : s;
+    }
+}
@@ -0,0 +1,155 @@
+package com.jennyyn.recommender.service;
+
+import com.jennyyn.recommender.model.PromptTemplate;
+import com.jennyyn.recommender.model.WritingStrategy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Rewrite-as-you-type. Each update splits the text into paragraphs: paragraphs already
+ * rewritten (same strategy, same text) come from a small cache, and only new or changed ones
+ * are sent, in parallel, as ordinary APIService rewrites. A newer update cancels the requests
+ * for paragraphs it no longer contains; a paragraph still in flight that it does contain keeps
+ * its request. The preview is delivered once every paragraph of the latest text is rewritten,
+ * so a slow answer for older text never overwrites a newer one.
+ * Debouncing the keystrokes is up to the caller (WritingPanel's timer).
+ */
+public class LivePreview {
+
+    // Called on HTTP threads, at most once per update
+    public interface Listener {
+        void onPreview(String rewrittenText);
+        void onError(Exception error); // not for cancelled paragraphs
+    }
+
+    private static final int MAX_CACHED_PARAGRAPHS = 500;
+    private static final Pattern PARAGRAPH_BREAK = Pattern.compile("\n\\s*\n");
+
+    // One paragraph of the text; key is null for blank ones, which are kept as they are
+    private record Paragraph(String key, String text, String separator) {
+    }
+
+    private record Update(List<Paragraph> paragraphs, Listener listener) {
+    }
+
+    private final APIService apiService;
+
+    // strategy + paragraph -> its rewrite, least recently used dropped first
+    private final Map<String, String> rewritten = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_CACHED_PARAGRAPHS;
+        }
+    };
+    private final Map<String, RewriteHandle> pending = new HashMap<>();
+    private Update current; // null once delivered, failed or cancelled
+
+    public LivePreview(APIService apiService) {
+        this.apiService = apiService;
+    }
+
+    public synchronized void update(String text, WritingStrategy strategy, Listener listener) {
+        Update update = new Update(split(text, strategy), listener);
+        current = update;
+
+        Set<String> needed = new HashSet<>();
+        for (Paragraph paragraph : update.paragraphs()) {
+            if (paragraph.key() != null) needed.add(paragraph.key());
+        }
+        // Cancelled after the loop: cancelling calls failed() right away, which updates pending
+        List<RewriteHandle> stale = new ArrayList<>();
+        pending.entrySet().removeIf(entry -> !needed.contains(entry.getKey()) && stale.add(entry.getValue()));
+        stale.forEach(RewriteHandle::cancel);
+
+        for (Paragraph paragraph : update.paragraphs()) {
+            String key = paragraph.key();
+            if (key == null || rewritten.containsKey(key) || pending.containsKey(key)) continue;
+
+            RewriteHandle handle = apiService.rewriteTextAsync(paragraph.text(), strategy,
+                    result -> arrived(key, result.getRewrittenText()),
+                    error -> failed(key, error),
+                    () -> { });
+            if (!handle.isDone()) pending.put(key, handle);
+        }
+        deliverIfComplete();
+    }
+
+    // Stops the preview: cancels every paragraph still in flight, delivers nothing more
+    public synchronized void cancel() {
+        List<RewriteHandle> stale = new ArrayList<>(pending.values());
+        pending.clear();
+        current = null;
+        stale.forEach(RewriteHandle::cancel);
+    }
+
+    // Paragraph rewrites sent so far and not answered yet
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    private synchronized void arrived(String key, String text) {
+        pending.remove(key);
+        rewritten.put(key, text);
+        deliverIfComplete();
+    }
+
+    private synchronized void failed(String key, Exception error) {
+        pending.remove(key);
+        if (error instanceof InterruptedException || current == null) return;
+
+        for (Paragraph paragraph : current.paragraphs()) {
+            if (key.equals(paragraph.key())) {
+                Listener listener = current.listener();
+                current = null;
+                listener.onError(error);
+                return;
+            }
+        }
+    }
+
+    private void deliverIfComplete() {
+        if (current == null) return;
+
+        StringBuilder preview = new StringBuilder();
+        for (Paragraph paragraph : current.paragraphs()) {
+            if (paragraph.key() == null) {
+                preview.append(paragraph.text());
+            } else {
+                String text = rewritten.get(paragraph.key());
+                if (text == null) return; // still waiting for this one
+                preview.append(text);
+            }
+            preview.append(paragraph.separator());
+        }
+
+        Listener listener = current.listener();
+        current = null;
+        listener.onPreview(preview.toString());
+    }
+
+    // Paragraphs with the breaks between them as they were typed
+    private static List<Paragraph> split(String text, WritingStrategy strategy) {
+        String prefix = (strategy instanceof PromptTemplate template
+                ? template.getName() : strategy.getClass().getName()) + '\u0000';
+
+        List<Paragraph> paragraphs = new ArrayList<>();
+        Matcher breaks = PARAGRAPH_BREAK.matcher(text);
+        int start = 0;
+        while (true) {
+            boolean found = breaks.find();
+            String paragraph = text.substring(start, found ? breaks.start() : text.length()).strip();
+            String separator = found ? breaks.group() : "";
+            paragraphs.add(new Paragraph(paragraph.isEmpty() ? null : prefix + paragraph, paragraph, separator));
+            if (!found) return paragraphs;
+            start = breaks.end();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.jennyyn.recommender.service;
+
+import com.jennyyn.recommender.model.RewriteResult;
+import com.jennyyn.recommender.model.WritingStrategy;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * One input rewritten with several strategies at once. Every strategy is an ordinary
+ * rewriteTextAsync call with its own RewriteHandle, so they run in parallel (within the
+ * concurrency limit), stream separately, and fail or get cancelled on their own.
+ * The whole thing takes about as long as the slowest strategy.
+ */
+public class MultiRewrite {
+
+    // Callbacks are tagged with the strategy name; they run on HTTP threads like the single ones
+    public interface Listener {
+        void onDelta(String strategy, String delta);
+        void onSuccess(String strategy, RewriteResult result);
+        void onError(String strategy, Exception error);   // InterruptedException = cancelled
+        void onAllDone();
+    }
+
+    private final Map<String, RewriteHandle> handles = new LinkedHashMap<>();
+    private final Map<String, RewriteResult> results = new ConcurrentHashMap<>();
+    private final Map<String, Exception> errors = new ConcurrentHashMap<>();
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    MultiRewrite() {
+    }
+
+    // Starts every strategy (in the map's order); called by APIService.rewriteAllAsync
+    MultiRewrite start(APIService apiService, String originalText, Map<String, WritingStrategy> strategies,
+                       Listener listener) {
+        AtomicInteger remaining = new AtomicInteger(strategies.size());
+        Runnable finished = () -> {
+            if (remaining.decrementAndGet() == 0) {
+                try {
+                    listener.onAllDone();
+                } finally {
+                    done.complete(null);
+                }
+            }
+        };
+        if (strategies.isEmpty()) {
+            remaining.incrementAndGet();
+            finished.run();
+            return this;
+        }
+
+        synchronized (handles) {
+            strategies.forEach((name, strategy) -> handles.put(name, apiService.rewriteTextAsync(
+                    originalText,
+                    strategy,
+                    delta -> listener.onDelta(name, delta),
+                    result -> {
+                        results.put(name, result);
+                        listener.onSuccess(name, result);
+                    },
+                    error -> {
+                        errors.put(name, error);
+                        listener.onError(name, error);
+                    },
+                    finished
+            )));
+        }
+        return this;
+    }
+
+    public RewriteHandle getHandle(String strategy) {
+        synchronized (handles) {
+            return handles.get(strategy);
+        }
+    }
+
+    // Cancels one strategy; the others keep going
+    public void cancel(String strategy) {
+        RewriteHandle handle = getHandle(strategy);
+        if (handle != null) handle.cancel();
+    }
+
+    public void cancelAll() {
+        synchronized (handles) {
+            handles.values().forEach(RewriteHandle::cancel);
+        }
+    }
+
+    // Results of the strategies that succeeded so far
+    public Map<String, RewriteResult> getResults() {
+        return Collections.unmodifiableMap(results);
+    }
+
+    // Errors of the strategies that failed or were cancelled so far
+    public Map<String, Exception> getErrors() {
+        return Collections.unmodifiableMap(errors);
+    }
+
+    // Completes when every strategy has succeeded, failed or been cancelled
+    public CompletableFuture<Void> getFuture() {
+        return done;
+    }
+
+    public boolean isDone() {
+        return done.isDone();
+    }
+}
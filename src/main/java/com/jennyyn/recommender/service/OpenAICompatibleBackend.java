@@ -0,0 +1,125 @@
+package com.jennyyn.recommender.service;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.jennyyn.recommender.model.APIClient;
+import com.jennyyn.recommender.model.JsonBuffer;
+import com.jennyyn.recommender.model.PromptTemplate;
+import com.jennyyn.recommender.model.WritingStrategy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+/*
+ * OpenAI chat completions format. Also spoken by most local servers (Ollama, LM Studio,
+ * vLLM, llama.cpp) and by StubLLMServer: point ENDPOINT at them, the key is optional.
+ */
+public class OpenAICompatibleBackend implements LLMBackend {
+
+    private static final int REQUEST_TIMEOUT_SECONDS = 10; // Timeout for network issues
+
+    // JSON around the parts of a prompt template
+    private static final String SYSTEM_MESSAGE = "{\"role\":\"system\",\"content\":\"";
+    private static final String USER_MESSAGE = "{\"role\":\"user\",\"content\":\"";
+    private static final String STREAM_TAIL = ",\"stream\":true,\"stream_options\":{\"include_usage\":true}";
+
+    private final APIClient apiClient;
+
+    public OpenAICompatibleBackend(APIClient apiClient) {
+        this.apiClient = apiClient;
+    }
+
+    @Override
+    public HttpRequest buildRequest(String prompt, boolean stream) {
+        return buildRequest(HttpRequest.BodyPublishers.ofString(buildRequestBody(prompt, stream), StandardCharsets.UTF_8));
+    }
+
+    // Prompt templates are written straight into the body: their constant parts are copied
+    // as precompiled bytes and only the text is escaped, in a single pass
+    @Override
+    public HttpRequest buildRequest(WritingStrategy strategy, String text, boolean stream) {
+        if (!(strategy instanceof PromptTemplate template)) return buildRequest(strategy.buildPrompt(text), stream);
+
+        JsonBuffer body = buildRequestBody(template, text, stream);
+        return buildRequest(HttpRequest.BodyPublishers.ofByteArray(body.array(), 0, body.length()));
+    }
+
+    private HttpRequest buildRequest(HttpRequest.BodyPublisher body) {
+        String endpoint = apiClient.getEndpoint() != null ? apiClient.getEndpoint() : APIClient.DEFAULT_ENDPOINT;
+
+        // Build HTTP request
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(URI.create(endpoint))
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(REQUEST_TIMEOUT_SECONDS))
+                .POST(body);
+
+        String apiKey = apiClient.getApiKey();
+        if (apiKey != null && !apiKey.isEmpty()) {
+            builder.header("Authorization", "Bearer " + apiKey); // local servers usually need none
+        }
+        return builder.build();
+    }
+
+    // Chat completions JSON body for one prompt
+    String buildRequestBody(String prompt, boolean stream) {
+        JsonObject json = new JsonObject();
+        json.addProperty("model", apiClient.getModel());
+
+        JsonArray messages = new JsonArray();
+        JsonObject userMessage = new JsonObject();
+        userMessage.addProperty("role", "user");
+        userMessage.addProperty("content", prompt);
+        messages.add(userMessage);
+        json.add("messages", messages);
+
+        if (stream) {
+            json.addProperty("stream", true);
+
+            // ask for the token usage in the last chunk
+            JsonObject streamOptions = new JsonObject();
+            streamOptions.addProperty("include_usage", true);
+            json.add("stream_options", streamOptions);
+        }
+        return json.toString();
+    }
+
+    // Same body for a template: system message, the context note (if any) as its own user
+    // message, then the user message with the text
+    JsonBuffer buildRequestBody(PromptTemplate template, String text, boolean stream) {
+        JsonBuffer body = new JsonBuffer(text.length() + text.length() / 8 + template.systemJson().length
+                + template.contextJson().length + template.prefixJson().length + template.suffixJson().length + 160);
+
+        body.ascii("{\"model\":\"").string(apiClient.getModel()).ascii("\",\"messages\":[");
+        if (template.systemJson().length > 0) {
+            body.ascii(SYSTEM_MESSAGE).raw(template.systemJson()).ascii("\"},");
+        }
+        if (template.contextJson().length > 0) {
+            body.ascii(USER_MESSAGE).raw(template.contextJson()).ascii("\"},");
+        }
+        body.ascii(USER_MESSAGE).raw(template.prefixJson()).string(text).raw(template.suffixJson()).ascii("\"}]");
+
+        if (stream) body.ascii(STREAM_TAIL); // with the token usage in the last chunk
+        return body.ascii("}");
+    }
+
+    @Override
+    public CompletionParser.Completion parse(InputStream body) throws IOException {
+        return CompletionParser.parse(body);
+    }
+
+    // Server-sent events: "data: {chunk}" lines, "data: [DONE]" at the end
+    @Override
+    public CompletionParser.Completion parseStreamLine(String line) throws IOException {
+        if (!line.startsWith("data:")) return null; // blank separators, comments, keep-alives
+
+        String data = line.substring(5).trim();
+        if (data.equals("[DONE]")) return END_OF_STREAM;
+
+        return CompletionParser.parseChunk(data);
+    }
+}
@@ -0,0 +1,148 @@
+package com.jennyyn.recommender.service;
+
+import java.net.http.HttpHeaders;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Client-side token bucket in front of the API.
+ *
+ * Every request reserves one token. When the bucket is empty the reservation still
+ * succeeds but the caller is told how long to wait, so requests form a paced queue
+ * instead of failing. The rate adapts to the x-ratelimit-* headers of each response,
+ * and a 429 / retry-after pauses the whole bucket until the server allows requests again.
+ */
+public class RateLimiter {
+
+    private static final long BASE_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|s|m|h)");
+
+    private final LongSupplier clock;
+
+    private double capacity;         // burst size
+    private double tokensPerMilli;   // refill rate
+    private double tokens;
+    private long lastRefill;
+    private long pausedUntil = 0;
+
+    public RateLimiter(int requestsPerMinute) {
+        this(requestsPerMinute, System::currentTimeMillis);
+    }
+
+    // TESTING CONSTRUCTOR — allows a fake clock
+    RateLimiter(int requestsPerMinute, LongSupplier clock) {
+        this.clock = clock;
+        this.lastRefill = clock.getAsLong();
+        setRequestsPerMinute(requestsPerMinute);
+        this.tokens = capacity;
+    }
+
+    // Takes one token; returns how many milliseconds the caller has to wait before sending
+    public synchronized long reserve() {
+        long now = clock.getAsLong();
+        refill(now);
+
+        tokens -= 1;
+        long wait = tokens >= 0 ? 0 : (long) Math.ceil(-tokens / tokensPerMilli);
+        return Math.max(wait, pausedUntil - now);
+    }
+
+    // Blocking version of reserve()
+    public void acquire() throws InterruptedException {
+        long wait = reserve();
+        if (wait > 0) Thread.sleep(wait);
+    }
+
+    // Adapts to the limits the server reports on every response
+    public synchronized void onResponse(HttpHeaders headers) {
+        if (headers == null) return;
+        long now = clock.getAsLong();
+
+        headers.firstValue("x-ratelimit-limit-requests").ifPresent(limit -> {
+            try {
+                setRequestsPerMinute(Integer.parseInt(limit.trim()));
+            } catch (NumberFormatException ignored) {
+            }
+        });
+
+        headers.firstValue("x-ratelimit-remaining-requests").ifPresent(value -> {
+            try {
+                int remaining = Integer.parseInt(value.trim());
+                refill(now);
+                tokens = Math.min(tokens, remaining);
+                if (remaining == 0) {
+                    long reset = headers.firstValue("x-ratelimit-reset-requests").map(RateLimiter::parseDuration).orElse(0L);
+                    pausedUntil = Math.max(pausedUntil, now + reset);
+                }
+            } catch (NumberFormatException ignored) {
+            }
+        });
+    }
+
+    // Server said "too many requests": stop everybody until it is allowed again
+    public synchronized void onRateLimited(HttpHeaders headers) {
+        long now = clock.getAsLong();
+        long wait = BASE_BACKOFF_MILLIS;
+
+        if (headers != null) {
+            var retryAfterMs = headers.firstValue("retry-after-ms");
+            var retryAfter = headers.firstValue("retry-after");
+            var reset = headers.firstValue("x-ratelimit-reset-requests");
+            try {
+                if (retryAfterMs.isPresent()) wait = (long) Double.parseDouble(retryAfterMs.get().trim());
+                else if (retryAfter.isPresent()) wait = (long) (Double.parseDouble(retryAfter.get().trim()) * 1000);
+                else if (reset.isPresent()) wait = parseDuration(reset.get());
+            } catch (NumberFormatException ignored) {
+                // retry-after may also be an HTTP date; fall back to the default wait
+            }
+        }
+
+        refill(now);
+        tokens = Math.min(tokens, 0);
+        pausedUntil = Math.max(pausedUntil, now + wait);
+    }
+
+    // Exponential backoff with "equal jitter": half fixed, half random
+    public long backoffMillis(int attempt) {
+        long exp = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt, 16));
+        return exp / 2 + ThreadLocalRandom.current().nextLong(exp / 2 + 1);
+    }
+
+    public synchronized int getRequestsPerMinute() {
+        return (int) Math.round(tokensPerMilli * TimeUnit.MINUTES.toMillis(1));
+    }
+
+    private void setRequestsPerMinute(int requestsPerMinute) {
+        int rpm = Math.max(1, requestsPerMinute);
+        this.capacity = rpm;
+        this.tokensPerMilli = rpm / (double) TimeUnit.MINUTES.toMillis(1);
+        this.tokens = Math.min(tokens, capacity);
+    }
+
+    private void refill(long now) {
+        if (now > lastRefill) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerMilli);
+            lastRefill = now;
+        }
+    }
+
+    // "1s", "6m0s", "20ms", "1.5s" -> milliseconds
+    static long parseDuration(String value) {
+        Matcher m = DURATION_PART.matcher(value.trim());
+        double millis = 0;
+        while (m.find()) {
+            double n = Double.parseDouble(m.group(1));
+            switch (m.group(2)) {
+                case "ms": millis += n; break;
+                case "s": millis += n * 1000; break;
+                case "m": millis += n * 60_000; break;
+                case "h": millis += n * 3_600_000; break;
+            }
+        }
+        return (long) Math.ceil(millis);
+    }
+}
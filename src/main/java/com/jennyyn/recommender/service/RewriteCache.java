@@ -0,0 +1,307 @@
+package com.jennyyn.recommender.service;
+
+import com.jennyyn.recommender.model.RewriteResult;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/*
+ * Caches rewrites by a hash of (backend, endpoint, model, prompt), or with (template id, text)
+ * in place of the prompt for a PromptTemplate: the same model name on another server is
+ * another model.
+ * Tier 1: in-memory LRU with a size limit and a time-to-live.
+ * Tier 2 (optional): one small file per entry in a directory, so the cache survives restarts.
+ * The disk tier has its own entry limit: the least recently used files are deleted when it is
+ * exceeded, on startup (by file time; a disk hit touches the file) and on every write.
+ */
+public class RewriteCache {
+
+    public static final int DEFAULT_MAX_DISK_ENTRIES = 10_000;
+
+    private final int maxEntries;
+    private final int maxDiskEntries;
+    private final long ttlMillis;
+    private final Path diskDir;        // null = memory only
+    private final LongSupplier clock;
+
+    private final LinkedHashMap<String, Entry> memory;
+    private final LinkedHashMap<String, Boolean> diskIndex = new LinkedHashMap<>(16, 0.75f, true); // keys on disk, LRU order
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+
+    private record Entry(String text, long createdAt) { }
+
+    public RewriteCache(int maxEntries, long ttlMillis, Path diskDir) {
+        this(maxEntries, ttlMillis, diskDir, DEFAULT_MAX_DISK_ENTRIES);
+    }
+
+    public RewriteCache(int maxEntries, long ttlMillis, Path diskDir, int maxDiskEntries) {
+        this(maxEntries, ttlMillis, diskDir, maxDiskEntries, System::currentTimeMillis);
+    }
+
+    // TESTING CONSTRUCTOR — allows a fake clock for TTL checks
+    RewriteCache(int maxEntries, long ttlMillis, Path diskDir, LongSupplier clock) {
+        this(maxEntries, ttlMillis, diskDir, DEFAULT_MAX_DISK_ENTRIES, clock);
+    }
+
+    private RewriteCache(int maxEntries, long ttlMillis, Path diskDir, int maxDiskEntries, LongSupplier clock) {
+        this.maxEntries = maxEntries;
+        this.maxDiskEntries = Math.max(1, maxDiskEntries);
+        this.ttlMillis = ttlMillis;
+        this.diskDir = diskDir;
+        this.clock = clock;
+
+        // accessOrder = true turns the LinkedHashMap into an LRU list
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > RewriteCache.this.maxEntries;
+            }
+        };
+
+        if (diskDir != null) {
+            try {
+                Files.createDirectories(diskDir);
+                loadDiskIndex();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Content address of a request: same server + same model + same prompt = same key
+    public static String key(String backend, String endpoint, String model, String prompt) {
+        return hash(backend, endpoint, model, prompt);
+    }
+
+    // Key for a PromptTemplate rewrite, from its id and the text (see PromptTemplate.getId)
+    public static String key(String backend, String endpoint, String model, String templateId, String text) {
+        return hash(backend, endpoint, model, templateId, text);
+    }
+
+    private static String hash(String... parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (int i = 0; i < parts.length; i++) {
+                if (i > 0) digest.update((byte) 0); // separator so ("ab","c") != ("a","bc")
+                digest.update(String.valueOf(parts[i]).getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // Returns the cached rewrite, or null on a miss
+    public RewriteResult get(String key) {
+        long now = clock.getAsLong();
+
+        synchronized (memory) {
+            Entry entry = memory.get(key);
+            if (entry != null) {
+                if (!isExpired(entry, now)) {
+                    hits.incrementAndGet();
+                    return new RewriteResult(entry.text());
+                }
+                memory.remove(key);
+            }
+        }
+
+        Entry fromDisk = readFromDisk(key, now);
+        if (fromDisk != null) {
+            synchronized (memory) {
+                memory.put(key, fromDisk);
+            }
+            hits.incrementAndGet();
+            diskHits.incrementAndGet();
+            return new RewriteResult(fromDisk.text());
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(String key, RewriteResult result) {
+        if (result == null || result.getRewrittenText() == null) return;
+
+        Entry entry = new Entry(result.getRewrittenText(), clock.getAsLong());
+        synchronized (memory) {
+            memory.put(key, entry);
+        }
+        writeToDisk(key, entry);
+    }
+
+    public void clear() {
+        synchronized (memory) {
+            memory.clear();
+        }
+        if (diskDir == null) return;
+        synchronized (diskIndex) {
+            diskIndex.clear();
+        }
+        try (var files = Files.list(diskDir)) {
+            files.filter(f -> f.getFileName().toString().endsWith(".txt"))
+                    .forEach(f -> f.toFile().delete());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // ---- Statistics ----
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getDiskHitCount() {
+        return diskHits.get();
+    }
+
+    public double getHitRate() {
+        long total = hits.get() + misses.get();
+        return total == 0 ? 0.0 : (double) hits.get() / total;
+    }
+
+    public int size() {
+        synchronized (memory) {
+            return memory.size();
+        }
+    }
+
+    // Entries in the disk tier
+    public int diskSize() {
+        synchronized (diskIndex) {
+            return diskIndex.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RewriteCache[size=%d, hits=%d (disk %d), misses=%d, hitRate=%.1f%%]",
+                size(), getHitCount(), getDiskHitCount(), getMissCount(), getHitRate() * 100);
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return ttlMillis > 0 && now - entry.createdAt() > ttlMillis;
+    }
+
+    // ---- Disk tier: "<createdAt>\n<text>" in <key>.txt ----
+    private Entry readFromDisk(String key, long now) {
+        if (diskDir == null) return null;
+
+        Path file = diskDir.resolve(key + ".txt");
+        if (!Files.exists(file)) return null;
+
+        try {
+            String content = Files.readString(file, StandardCharsets.UTF_8);
+            int newline = content.indexOf('\n');
+            if (newline < 0) return null;
+
+            Entry entry = new Entry(content.substring(newline + 1), Long.parseLong(content.substring(0, newline)));
+            if (isExpired(entry, now)) {
+                Files.deleteIfExists(file);
+                synchronized (diskIndex) {
+                    diskIndex.remove(key);
+                }
+                return null;
+            }
+            synchronized (diskIndex) {
+                diskIndex.get(key); // most recently used
+            }
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis())); // ...after a restart too
+            return entry;
+        } catch (IOException | NumberFormatException e) {
+            return null; // a broken entry is just a miss
+        }
+    }
+
+    private void writeToDisk(String key, Entry entry) {
+        if (diskDir == null) return;
+
+        // A file of its own per write, so two writes of one key (or two processes) can't mix their
+        // bytes; the atomic rename replaces the entry without first deleting it (which two can't both do)
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(diskDir, key, ".tmp");
+            Files.writeString(tmp, entry.createdAt() + "\n" + entry.text(), StandardCharsets.UTF_8);
+            Files.move(tmp, diskDir.resolve(key + ".txt"),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+            deleteQuietly(tmp);
+            return;
+        }
+        synchronized (diskIndex) {
+            diskIndex.put(key, Boolean.TRUE);
+        }
+        pruneDisk();
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) return;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+        }
+    }
+
+    // Existing files, least recently used first; leftovers of interrupted writes are removed
+    private void loadDiskIndex() throws IOException {
+        record CachedFile(String key, long modified) { }
+        List<CachedFile> found = new ArrayList<>();
+        try (var files = Files.list(diskDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    Files.deleteIfExists(file);
+                } else if (name.endsWith(".txt")) {
+                    found.add(new CachedFile(name.substring(0, name.length() - 4),
+                            Files.getLastModifiedTime(file).toMillis()));
+                }
+            }
+        }
+        found.sort(Comparator.comparingLong(CachedFile::modified));
+        synchronized (diskIndex) {
+            for (CachedFile file : found) diskIndex.put(file.key(), Boolean.TRUE);
+        }
+        pruneDisk();
+    }
+
+    // Deletes the least recently used files beyond maxDiskEntries
+    private void pruneDisk() {
+        List<String> evicted = new ArrayList<>();
+        synchronized (diskIndex) {
+            var keys = diskIndex.keySet().iterator();
+            while (diskIndex.size() - evicted.size() > maxDiskEntries && keys.hasNext()) {
+                evicted.add(keys.next());
+            }
+            diskIndex.keySet().removeAll(evicted);
+        }
+        for (String key : evicted) {
+            try {
+                Files.deleteIfExists(diskDir.resolve(key + ".txt"));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
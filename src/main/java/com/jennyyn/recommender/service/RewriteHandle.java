@@ -0,0 +1,90 @@
+package com.jennyyn.recommender.service;
+
+import com.jennyyn.recommender.model.RewriteResult;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * One in-flight rewrite: its id, its result future and its own cancel flag.
+ * Cancelling one handle never affects any other request.
+ */
+public class RewriteHandle {
+
+    private static final AtomicLong NEXT_ID = new AtomicLong(1);
+
+    private final long id = NEXT_ID.getAndIncrement();
+    private final CompletableFuture<RewriteResult> future = new CompletableFuture<>();
+
+    private volatile boolean cancelled = false;
+    private volatile boolean streamed = false; // a delta went out: repeating the request would repeat text
+    private Runnable cancelAction; // stops whatever the request is waiting for right now
+
+    public long getId() {
+        return id;
+    }
+
+    // Completes with the result, or exceptionally with the error / InterruptedException on cancel
+    public CompletableFuture<RewriteResult> getFuture() {
+        return future;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isDone() {
+        return future.isDone();
+    }
+
+    public void cancel() {
+        Runnable action;
+        synchronized (this) {
+            if (cancelled) return;
+            cancelled = true;
+            action = cancelAction;
+        }
+        if (action != null) action.run();
+    }
+
+    // ---- Used by APIService ----
+
+    // Sets what cancel() does for the current step (aborting the exchange, leaving a queue, ...).
+    // Runs it right away if the handle is already cancelled.
+    void onCancel(Runnable action) {
+        synchronized (this) {
+            if (!cancelled) {
+                cancelAction = action;
+                return;
+            }
+        }
+        action.run();
+    }
+
+    void markStreamed() {
+        streamed = true;
+    }
+
+    boolean hasStreamed() {
+        return streamed;
+    }
+
+    // Both return false if the handle was already done
+    boolean complete(RewriteResult result) {
+        return future.complete(result);
+    }
+
+    boolean fail(Exception e) {
+        return future.completeExceptionally(e);
+    }
+
+    // Throws if this request was cancelled (handle may be null for direct, uncancellable calls)
+    static void checkCancelled(RewriteHandle handle) throws InterruptedException {
+        if (handle != null && handle.cancelled) throw new InterruptedException("Request cancelled.");
+    }
+
+    @Override
+    public String toString() {
+        return "RewriteHandle#" + id + (cancelled ? " (cancelled)" : isDone() ? " (done)" : "");
+    }
+}
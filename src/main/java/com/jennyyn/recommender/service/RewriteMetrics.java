@@ -0,0 +1,345 @@
+package com.jennyyn.recommender.service;
+
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Timers and counters for the rewrite pipeline and session I/O (Singleton).
+ * Everything is a LongAdder or a LatencyHistogram, so recording is cheap enough
+ * for the hot path. Visible through JMX and, optionally, a periodic log line.
+ */
+public class RewriteMetrics implements RewriteMetricsMBean {
+
+    private static final RewriteMetrics INSTANCE = new RewriteMetrics();
+    private static final String OBJECT_NAME = "com.jennyyn.recommender:type=RewriteMetrics";
+
+    // ---- Request counters ----
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    // ---- Connection reuse (see ConnectionKeepAlive) ----
+    private final LongAdder warmConnectionRequests = new LongAdder();
+    private final LongAdder coldConnectionRequests = new LongAdder();
+
+    // ---- Token usage (from the response "usage" field) ----
+    private final LongAdder promptTokens = new LongAdder();
+    private final LongAdder completionTokens = new LongAdder();
+    private final LongAdder cachedPromptTokens = new LongAdder(); // served from the provider's prompt cache
+
+    // ---- Session writes (see SessionWriter) ----
+    private final LongAdder sessionBatches = new LongAdder();
+    private final LongAdder sessionsWritten = new LongAdder();
+
+    // ---- Timers ----
+    private final Map<String, LatencyHistogram> requestLatency = new ConcurrentHashMap<>();
+    final LatencyHistogram promptBuild = new LatencyHistogram();
+    final LatencyHistogram queueWait = new LatencyHistogram();       // waiting for a concurrency slot
+    final LatencyHistogram rateLimitWait = new LatencyHistogram();   // waiting for a rate limiter token
+    final LatencyHistogram timeToFirstByte = new LatencyHistogram(); // connect, TLS, server time until headers
+    final LatencyHistogram timeToFirstToken = new LatencyHistogram();
+    final LatencyHistogram bodyAndParse = new LatencyHistogram();
+    final LatencyHistogram edtDispatch = new LatencyHistogram();
+    final LatencyHistogram connectionWarmUp = new LatencyHistogram(); // new connection: connect + TLS + round trip
+    final LatencyHistogram keepAlivePing = new LatencyHistogram();    // reused connection: one round trip
+
+    final LatencyHistogram sessionSave = new LatencyHistogram();
+    final LatencyHistogram sessionLoad = new LatencyHistogram();
+    final LatencyHistogram sessionPage = new LatencyHistogram();
+    final LatencyHistogram sessionDelete = new LatencyHistogram();
+    final LatencyHistogram sessionSearch = new LatencyHistogram();
+    final LatencyHistogram sessionBatch = new LatencyHistogram();    // one group commit: write + fsync + index
+
+    private ScheduledExecutorService logger;
+
+    private RewriteMetrics() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) server.registerMBean(this, name);
+        } catch (Exception e) {
+            System.err.println("WARNING: could not register metrics MBean: " + e.getMessage());
+        }
+    }
+
+    public static RewriteMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    // Prints toString() to stderr every intervalSeconds (first call wins)
+    public synchronized void startLogging(long intervalSeconds) {
+        if (logger != null || intervalSeconds <= 0) return;
+
+        logger = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-logger");
+            t.setDaemon(true);
+            return t;
+        });
+        logger.scheduleAtFixedRate(() -> System.err.println(this), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    // ---- Recording ----
+    public void requestStarted() {
+        requests.increment();
+    }
+
+    public void requestSucceeded(String strategy, long nanos) {
+        successes.increment();
+        requestLatency.computeIfAbsent(strategy, k -> new LatencyHistogram()).recordNanos(nanos);
+    }
+
+    public void requestFailed(Exception e) {
+        if (e instanceof InterruptedException) cancelled.increment();
+        else if (e instanceof com.jennyyn.recommender.model.RateLimitException) rateLimited.increment();
+        else errors.increment();
+    }
+
+    public void retried() {
+        retries.increment();
+    }
+
+    public void coalesced() {
+        coalesced.increment();
+    }
+
+    public void warmConnectionRequest() {
+        warmConnectionRequests.increment();
+    }
+
+    public void coldConnectionRequest() {
+        coldConnectionRequests.increment();
+    }
+
+    public void recordUsage(int prompt, int completion, int cached) {
+        promptTokens.add(prompt);
+        completionTokens.add(completion);
+        cachedPromptTokens.add(cached);
+    }
+
+    public void recordEdtDispatch(long nanos) {
+        edtDispatch.recordNanos(nanos);
+    }
+
+    public void recordSessionBatch(int sessions, long nanos) {
+        sessionBatches.increment();
+        sessionsWritten.add(sessions);
+        sessionBatch.recordNanos(nanos);
+    }
+
+    // ---- RewriteMetricsMBean ----
+    @Override
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    @Override
+    public long getSuccessCount() {
+        return successes.sum();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getRateLimitedCount() {
+        return rateLimited.sum();
+    }
+
+    @Override
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    @Override
+    public long getCancelledCount() {
+        return cancelled.sum();
+    }
+
+    @Override
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    @Override
+    public long getWarmConnectionRequests() {
+        return warmConnectionRequests.sum();
+    }
+
+    @Override
+    public long getColdConnectionRequests() {
+        return coldConnectionRequests.sum();
+    }
+
+    @Override
+    public long getPromptTokens() {
+        return promptTokens.sum();
+    }
+
+    @Override
+    public long getCompletionTokens() {
+        return completionTokens.sum();
+    }
+
+    @Override
+    public long getCachedPromptTokens() {
+        return cachedPromptTokens.sum();
+    }
+
+    @Override
+    public double getPromptCacheHitRatio() {
+        long prompt = promptTokens.sum();
+        return prompt == 0 ? 0 : (double) cachedPromptTokens.sum() / prompt;
+    }
+
+    @Override
+    public long getSessionWriteBatches() {
+        return sessionBatches.sum();
+    }
+
+    @Override
+    public long getSessionsWritten() {
+        return sessionsWritten.sum();
+    }
+
+    @Override
+    public String getRequestLatencyByStrategy() {
+        StringBuilder sb = new StringBuilder();
+        new TreeMap<>(requestLatency).forEach((strategy, histogram) ->
+                sb.append(strategy).append(": ").append(histogram).append('\n'));
+        return sb.toString().trim();
+    }
+
+    public LatencyHistogram getRequestLatency(String strategy) {
+        return requestLatency.get(strategy);
+    }
+
+    @Override
+    public String getPromptBuildLatency() {
+        return promptBuild.toString();
+    }
+
+    @Override
+    public String getQueueWaitLatency() {
+        return queueWait.toString();
+    }
+
+    @Override
+    public String getRateLimitWaitLatency() {
+        return rateLimitWait.toString();
+    }
+
+    @Override
+    public String getTimeToFirstByteLatency() {
+        return timeToFirstByte.toString();
+    }
+
+    @Override
+    public String getTimeToFirstTokenLatency() {
+        return timeToFirstToken.toString();
+    }
+
+    @Override
+    public String getBodyAndParseLatency() {
+        return bodyAndParse.toString();
+    }
+
+    @Override
+    public String getEdtDispatchLatency() {
+        return edtDispatch.toString();
+    }
+
+    @Override
+    public String getConnectionWarmUpLatency() {
+        return connectionWarmUp.toString();
+    }
+
+    @Override
+    public String getKeepAlivePingLatency() {
+        return keepAlivePing.toString();
+    }
+
+    @Override
+    public String getSessionSaveLatency() {
+        return sessionSave.toString();
+    }
+
+    @Override
+    public String getSessionLoadLatency() {
+        return sessionLoad.toString();
+    }
+
+    @Override
+    public String getSessionPageLatency() {
+        return sessionPage.toString();
+    }
+
+    @Override
+    public String getSessionDeleteLatency() {
+        return sessionDelete.toString();
+    }
+
+    @Override
+    public String getSessionSearchLatency() {
+        return sessionSearch.toString();
+    }
+
+    @Override
+    public String getSessionBatchLatency() {
+        return sessionBatch.toString();
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder adder : new LongAdder[]{requests, successes, errors, rateLimited, retries, cancelled, coalesced,
+                warmConnectionRequests, coldConnectionRequests, promptTokens, completionTokens, cachedPromptTokens,
+                sessionBatches, sessionsWritten}) {
+            adder.reset();
+        }
+        requestLatency.clear();
+        for (LatencyHistogram h : new LatencyHistogram[]{promptBuild, queueWait, rateLimitWait, timeToFirstByte, timeToFirstToken,
+                bodyAndParse, edtDispatch, connectionWarmUp, keepAlivePing,
+                sessionSave, sessionLoad, sessionPage, sessionDelete, sessionSearch, sessionBatch}) {
+            h.reset();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RewriteMetrics\n"
+                + String.format("  requests=%d ok=%d errors=%d rateLimited=%d retries=%d cancelled=%d coalesced=%d%n",
+                getRequestCount(), getSuccessCount(), getErrorCount(), getRateLimitedCount(), getRetryCount(),
+                getCancelledCount(), getCoalescedCount())
+                + String.format("  tokens: prompt=%d (cached %d, %.0f%%) completion=%d%n", getPromptTokens(),
+                getCachedPromptTokens(), getPromptCacheHitRatio() * 100, getCompletionTokens())
+                + "  latency by strategy:\n    " + getRequestLatencyByStrategy().replace("\n", "\n    ") + "\n"
+                + "  promptBuild:   " + promptBuild + "\n"
+                + "  queueWait:     " + queueWait + "\n"
+                + "  rateLimitWait: " + rateLimitWait + "\n"
+                + "  firstByte:     " + timeToFirstByte + "\n"
+                + "  firstToken:    " + timeToFirstToken + "\n"
+                + "  bodyAndParse:  " + bodyAndParse + "\n"
+                + "  edtDispatch:   " + edtDispatch + "\n"
+                + String.format("  connection: warm=%d cold=%d%n", getWarmConnectionRequests(), getColdConnectionRequests())
+                + "  warmUp:        " + connectionWarmUp + "\n"
+                + "  keepAlive:     " + keepAlivePing + "\n"
+                + "  session save/load/page/delete/search:\n"
+                + "    " + sessionSave + "\n    " + sessionLoad + "\n    " + sessionPage + "\n    " + sessionDelete
+                + "\n    " + sessionSearch + "\n"
+                + String.format("  session writes: batches=%d sessions=%d%n", getSessionWriteBatches(), getSessionsWritten())
+                + "  writeBatch:    " + sessionBatch;
+    }
+}
@@ -0,0 +1,50 @@
+package com.jennyyn.recommender.service;
+
+// JMX view of RewriteMetrics (com.jennyyn.recommender:type=RewriteMetrics)
+public interface RewriteMetricsMBean {
+
+    long getRequestCount();
+    long getSuccessCount();
+    long getErrorCount();
+    long getRateLimitedCount();
+    long getRetryCount();
+    long getCancelledCount();
+    long getCoalescedCount();
+
+    // Requests sent on a connection that was recently used vs. one that probably had to be opened
+    long getWarmConnectionRequests();
+    long getColdConnectionRequests();
+
+    long getPromptTokens();
+    long getCompletionTokens();
+
+    // Prompt tokens the provider answered from its prompt cache (the stable system message prefix)
+    long getCachedPromptTokens();
+    double getPromptCacheHitRatio();
+
+    // Group commits of saved sessions; sessions / batches is the average batch size
+    long getSessionWriteBatches();
+    long getSessionsWritten();
+
+    // "<strategy>: n=.. mean=.. p50=.. p95=.. p99=.. max=.." one line per strategy
+    String getRequestLatencyByStrategy();
+
+    String getPromptBuildLatency();
+    String getQueueWaitLatency();
+    String getRateLimitWaitLatency();
+    String getTimeToFirstByteLatency();
+    String getTimeToFirstTokenLatency();
+    String getBodyAndParseLatency();
+    String getEdtDispatchLatency();
+    String getConnectionWarmUpLatency();
+    String getKeepAlivePingLatency();
+
+    String getSessionSaveLatency();
+    String getSessionLoadLatency();
+    String getSessionPageLatency();
+    String getSessionDeleteLatency();
+    String getSessionSearchLatency();
+    String getSessionBatchLatency();
+
+    void reset();
+}
@@ -0,0 +1,450 @@
+package com.jennyyn.recommender.service;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.jennyyn.recommender.model.RateLimitException;
+import com.jennyyn.recommender.model.RewriteResult;
+import com.jennyyn.recommender.model.SessionSummary;
+import com.jennyyn.recommender.model.StrategyRegistry;
+import com.jennyyn.recommender.model.WritingStrategy;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * The rewrite engine as a local HTTP API, for tools that want to share it without the window.
+ * Same APIService and FileService as the app, so the cache, coalescing, rate limiting and the
+ * session history are shared by every client. One virtual thread per request.
+ *
+ *   POST   /v1/rewrite          {"text": "...", "mode": "Academic"}  -> {"mode": ..., "text": ...}
+ *   POST   /v1/rewrite/stream   same body -> server-sent events: delta*, then done or error
+ *   GET    /v1/modes            -> ["Creative", ...]
+ *   GET    /v1/sessions         ?offset=0&limit=50, or ?q=words -> {"count": n, "sessions": [...]}
+ *   GET    /v1/sessions/<index> -> {"index": ..., "original": ..., "rewritten": ...}
+ *   POST   /v1/sessions         {"original": "...", "rewritten": "..."} -> {"id": ...}
+ *   DELETE /v1/sessions/<index>
+ *
+ * Backpressure: at most MAX_CONCURRENT_REQUESTS rewrites talk to the API at once (APIService),
+ * the others wait for a turn holding nothing but their virtual thread. With maxInFlight
+ * rewrites running or waiting, new ones are turned away at once with 503 and Retry-After.
+ * Session requests are not limited; they are local and short.
+ *
+ * There is no authentication: anyone who can connect spends the API key and can read and delete
+ * the history. So the server listens on the loopback address only, unless another address is
+ * given on purpose (SERVER_BIND_ADDRESS).
+ */
+public class RewriteServer {
+
+    public static final String REWRITE_PATH = "/v1/rewrite";
+    public static final String STREAM_PATH = "/v1/rewrite/stream";
+    public static final String MODES_PATH = "/v1/modes";
+    public static final String SESSIONS_PATH = "/v1/sessions";
+
+    private static final int BACKLOG = 1024;
+    private static final int MAX_BODY_BYTES = 4 * 1024 * 1024;
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final String END_OF_STREAM = ""; // real events are never empty
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final APIService apiService;
+    private final FileService fileService;
+    private final StrategyRegistry strategies;
+    private final int maxInFlight;
+    private final Semaphore admission;
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    // port 0 = any free port; maxInFlight = rewrites running or waiting before new ones get a 503
+    public RewriteServer(int port, APIService apiService, FileService fileService, StrategyRegistry strategies,
+                         int maxInFlight) throws IOException {
+        this(InetAddress.getLoopbackAddress(), port, apiService, fileService, strategies, maxInFlight);
+    }
+
+    // Listens on bindAddress instead of loopback, i.e. for other machines too
+    public RewriteServer(InetAddress bindAddress, int port, APIService apiService, FileService fileService,
+                         StrategyRegistry strategies, int maxInFlight) throws IOException {
+        this.apiService = apiService;
+        this.fileService = fileService;
+        this.strategies = strategies;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.admission = new Semaphore(this.maxInFlight);
+
+        server = HttpServer.create(new InetSocketAddress(bindAddress, port), BACKLOG);
+        server.createContext(REWRITE_PATH, exchange -> handle(exchange, this::handleRewrite));
+        server.createContext(STREAM_PATH, exchange -> handle(exchange, this::handleStream));
+        server.createContext(MODES_PATH, exchange -> handle(exchange, this::handleModes));
+        server.createContext(SESSIONS_PATH, exchange -> handle(exchange, this::handleSessions));
+        server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    // Stops accepting; requests still running get up to delaySeconds to finish
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    public long getAcceptedCount() {
+        return accepted.sum();
+    }
+
+    // Rewrites turned away with 503 because too many were running or waiting
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    // Rewrites running or waiting right now
+    public int getInFlightCount() {
+        return maxInFlight - admission.availablePermits();
+    }
+
+    // ---- Routing ----
+
+    private interface Handler {
+        void handle(HttpExchange exchange) throws Exception;
+    }
+
+    private void handle(HttpExchange exchange, Handler handler) {
+        try {
+            handler.handle(exchange);
+        } catch (BadRequest e) {
+            sendError(exchange, e.status, e.getMessage());
+        } catch (IOException e) {
+            // client went away: nothing to do
+        } catch (Exception e) {
+            sendError(exchange, 500, e.getMessage() != null ? e.getMessage() : e.toString());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // A client error with its status code; the message goes back as the error body
+    private static class BadRequest extends Exception {
+        private final int status;
+
+        BadRequest(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    // ---- Rewrites ----
+
+    private void handleRewrite(HttpExchange exchange) throws Exception {
+        requireMethod(exchange, "POST");
+        JsonObject request = readJson(exchange);
+        String text = requireString(request, "text");
+        String mode = modeOf(request);
+        WritingStrategy strategy = strategies.all().get(mode);
+
+        if (!admit(exchange)) return;
+        try {
+            CompletableFuture<RewriteResult> done = new CompletableFuture<>();
+            RewriteHandle handle = apiService.rewriteTextAsync(text, strategy,
+                    done::complete, done::completeExceptionally, () -> { });
+
+            RewriteResult result;
+            try {
+                result = done.get();
+            } catch (InterruptedException e) {
+                handle.cancel();
+                throw e;
+            } catch (ExecutionException e) {
+                sendRewriteError(exchange, e.getCause());
+                return;
+            }
+
+            JsonObject response = new JsonObject();
+            response.addProperty("mode", mode);
+            response.addProperty("text", result.getRewrittenText());
+            sendJson(exchange, 200, response.toString());
+        } finally {
+            release();
+        }
+    }
+
+    // Server-sent events: "event: delta" per piece of text, then "event: done" with the whole
+    // text or "event: error". The events are written by this request's thread, not by the
+    // HTTP client threads that deliver them; a client that goes away cancels its rewrite.
+    private void handleStream(HttpExchange exchange) throws Exception {
+        requireMethod(exchange, "POST");
+        JsonObject request = readJson(exchange);
+        String text = requireString(request, "text");
+        String mode = modeOf(request);
+        WritingStrategy strategy = strategies.all().get(mode);
+
+        if (!admit(exchange)) return;
+        try {
+            BlockingQueue<String> events = new LinkedBlockingQueue<>();
+            RewriteHandle handle = apiService.rewriteTextAsync(text, strategy,
+                    delta -> events.add(event("delta", "text", delta)),
+                    result -> events.add(event("done", "text", result.getRewrittenText())),
+                    error -> events.add(event("error", "message", error.getMessage())),
+                    () -> events.add(END_OF_STREAM));
+
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, 0);
+
+            OutputStream out = exchange.getResponseBody();
+            try {
+                for (String event = events.take(); !event.isEmpty(); event = events.take()) {
+                    out.write(event.getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                handle.cancel();
+                throw e;
+            }
+        } finally {
+            release();
+        }
+    }
+
+    private static String event(String type, String field, String value) {
+        JsonObject data = new JsonObject();
+        data.addProperty(field, value);
+        return "event: " + type + "\ndata: " + data + "\n\n";
+    }
+
+    // Takes a place among the rewrites in flight, or answers 503 right away
+    private boolean admit(HttpExchange exchange) {
+        if (!admission.tryAcquire()) {
+            rejected.increment();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            sendError(exchange, 503, "Too many rewrites in progress, try again later.");
+            return false;
+        }
+        accepted.increment();
+        return true;
+    }
+
+    private void release() {
+        admission.release();
+    }
+
+    private static void sendRewriteError(HttpExchange exchange, Throwable error) {
+        if (error instanceof RateLimitException) {
+            sendError(exchange, 429, error.getMessage());
+        } else {
+            sendError(exchange, 502, error.getMessage() != null ? error.getMessage() : error.toString());
+        }
+    }
+
+    private String modeOf(JsonObject request) throws BadRequest {
+        JsonElement mode = request.get("mode");
+        if (mode == null || mode.isJsonNull()) return strategies.names().get(0);
+
+        String name = mode.getAsString();
+        if (!strategies.all().containsKey(name)) {
+            throw new BadRequest(400, "Unknown mode '" + name + "', expected one of " + strategies.names());
+        }
+        return name;
+    }
+
+    private void handleModes(HttpExchange exchange) throws Exception {
+        requireMethod(exchange, "GET");
+        JsonArray modes = new JsonArray();
+        strategies.names().forEach(modes::add);
+        sendJson(exchange, 200, modes.toString());
+    }
+
+    // ---- Sessions ----
+
+    private void handleSessions(HttpExchange exchange) throws Exception {
+        String rest = exchange.getRequestURI().getPath().substring(SESSIONS_PATH.length());
+        String method = exchange.getRequestMethod();
+
+        if (rest.isEmpty() || rest.equals("/")) {
+            if (method.equals("GET")) listSessions(exchange);
+            else if (method.equals("POST")) saveSession(exchange);
+            else throw new BadRequest(405, "Method not allowed");
+            return;
+        }
+
+        int index = parseIndex(rest.substring(1));
+        if (method.equals("GET")) {
+            String[] session = fileService.loadSession(index);
+            if (session == null) throw new BadRequest(404, "No session " + index);
+
+            JsonObject response = new JsonObject();
+            response.addProperty("index", index);
+            response.addProperty("original", session[0]);
+            response.addProperty("rewritten", session[1]);
+            sendJson(exchange, 200, response.toString());
+        } else if (method.equals("DELETE")) {
+            if (index >= fileService.getSessionCount()) throw new BadRequest(404, "No session " + index);
+            fileService.deleteSession(index);
+            exchange.sendResponseHeaders(204, -1);
+        } else {
+            throw new BadRequest(405, "Method not allowed");
+        }
+    }
+
+    private void listSessions(HttpExchange exchange) throws Exception {
+        Map<String, String> query = query(exchange);
+        int offset = parseInt(query.get("offset"), 0);
+        int limit = parseInt(query.get("limit"), DEFAULT_PAGE_SIZE);
+
+        int count;
+        List<SessionSummary> page;
+        String words = query.get("q");
+        if (words != null && !words.isBlank()) {
+            int[] positions = fileService.searchSessions(words);
+            count = positions.length;
+            int from = Math.min(offset, count);
+            page = fileService.loadSessionSummaries(Arrays.copyOfRange(positions, from, Math.min(count, from + limit)));
+        } else {
+            count = fileService.getSessionCount();
+            page = fileService.loadSessionPage(offset, limit);
+        }
+
+        JsonArray sessions = new JsonArray();
+        for (SessionSummary summary : page) {
+            JsonObject session = new JsonObject();
+            session.addProperty("index", summary.getIndex());
+            session.addProperty("id", summary.getId());
+            session.addProperty("snippet", summary.getSnippet());
+            session.addProperty("truncated", summary.isTruncated());
+            sessions.add(session);
+        }
+        JsonObject response = new JsonObject();
+        response.addProperty("count", count);
+        response.add("sessions", sessions);
+        sendJson(exchange, 200, response.toString());
+    }
+
+    private void saveSession(HttpExchange exchange) throws Exception {
+        JsonObject request = readJson(exchange);
+        String original = requireString(request, "original");
+        String rewritten = requireString(request, "rewritten");
+
+        long id;
+        try {
+            id = fileService.saveSessionAsync(original, rewritten).get();
+        } catch (ExecutionException e) {
+            throw new BadRequest(500, "Could not save the session: " + e.getCause().getMessage());
+        }
+
+        JsonObject response = new JsonObject();
+        response.addProperty("id", id);
+        sendJson(exchange, 201, response.toString());
+    }
+
+    // ---- Requests and responses ----
+
+    private static void requireMethod(HttpExchange exchange, String method) throws BadRequest {
+        if (!exchange.getRequestMethod().equals(method)) throw new BadRequest(405, "Use " + method);
+    }
+
+    private static JsonObject readJson(HttpExchange exchange) throws IOException, BadRequest {
+        InputStream body = exchange.getRequestBody();
+        byte[] bytes = body.readNBytes(MAX_BODY_BYTES + 1);
+        if (bytes.length > MAX_BODY_BYTES) throw new BadRequest(413, "Request body too large");
+
+        try {
+            JsonElement json = JsonParser.parseReader(new InputStreamReader(
+                    new ByteArrayInputStream(bytes), StandardCharsets.UTF_8));
+            if (!json.isJsonObject()) throw new BadRequest(400, "Expected a JSON object");
+            return json.getAsJsonObject();
+        } catch (RuntimeException e) {
+            throw new BadRequest(400, "Invalid JSON body");
+        }
+    }
+
+    private static String requireString(JsonObject request, String field) throws BadRequest {
+        JsonElement value = request.get(field);
+        if (value == null || !value.isJsonPrimitive() || value.getAsString().isBlank()) {
+            throw new BadRequest(400, "Missing \"" + field + "\"");
+        }
+        return value.getAsString();
+    }
+
+    private static int parseIndex(String text) throws BadRequest {
+        try {
+            int index = Integer.parseInt(text);
+            if (index >= 0) return index;
+        } catch (NumberFormatException ignored) {
+        }
+        throw new BadRequest(404, "No session " + text);
+    }
+
+    private static int parseInt(String text, int fallback) throws BadRequest {
+        if (text == null) return fallback;
+        try {
+            return Math.max(0, Integer.parseInt(text));
+        } catch (NumberFormatException e) {
+            throw new BadRequest(400, "Not a number: " + text);
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) return params;
+
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    // {"error": {"message": "..."}}, like the OpenAI API; ignored if the response has already started
+    private static void sendError(HttpExchange exchange, int status, String message) {
+        JsonObject error = new JsonObject();
+        error.addProperty("message", message);
+        JsonObject json = new JsonObject();
+        json.add("error", error);
+        try {
+            if (exchange.getResponseCode() == -1) sendJson(exchange, status, json.toString());
+        } catch (IOException ignored) {
+            // client went away
+        }
+    }
+}
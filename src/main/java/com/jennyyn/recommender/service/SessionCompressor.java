@@ -0,0 +1,199 @@
+package com.jennyyn.recommender.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/*
+ * Deflate for session records, with two dictionaries:
+ *  - the original text is compressed with a shared dictionary trained from the history
+ *    (frequent words and phrases), which is what makes short texts compress at all;
+ *  - the rewritten text is compressed with the shared dictionary plus the original as
+ *    its dictionary, so the parts of a rewrite that repeat the original cost a few bytes
+ *    each. That is the delta against the original, without a separate diff format.
+ * Raw deflate (no zlib header or checksum), since every record is a separate stream.
+ *
+ * Dictionaries file: [int length][bytes] per dictionary, append-only. Records refer to
+ * a dictionary by its number (1-based, 0 = none), so records compressed with an older
+ * dictionary stay readable after retraining.
+ */
+final class SessionCompressor implements AutoCloseable {
+
+    private static final int WINDOW_SIZE = 32 * 1024;
+    // Deflate hashes the whole dictionary for every stream; past 8 KB that costs more than it saves
+    private static final int MAX_DICTIONARY_SIZE = 8 * 1024;
+    private static final int MAX_GRAM_WORDS = 4;
+    private static final byte[] NONE = new byte[0];
+
+    private final Path file;
+    private final List<byte[]> dictionaries = new ArrayList<>();
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final Inflater inflater = new Inflater(true);
+
+    SessionCompressor(Path file) throws IOException {
+        this.file = file;
+        if (Files.exists(file)) load();
+    }
+
+    // Number of the dictionary new records are compressed with (0 = none trained yet)
+    int currentDictionary() {
+        return dictionaries.size();
+    }
+
+    // Stores a new dictionary and makes it the current one
+    void addDictionary(byte[] dictionary) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            ByteBuffer entry = ByteBuffer.allocate(4 + dictionary.length).putInt(dictionary.length).put(dictionary).flip();
+            while (entry.hasRemaining()) channel.write(entry);
+            channel.force(true);
+        }
+        dictionaries.add(dictionary);
+    }
+
+    byte[] compressOriginal(byte[] original) {
+        return deflate(original, shared(currentDictionary()));
+    }
+
+    byte[] compressRewritten(byte[] rewritten, byte[] original) {
+        return deflate(rewritten, rewriteDictionary(shared(currentDictionary()), original));
+    }
+
+    // The first `limit` bytes of an original (less if it is shorter)
+    byte[] decompressOriginal(ByteBuffer input, int rawLength, int limit, int dictionary) throws IOException {
+        return inflate(input, Math.min(rawLength, limit), shared(dictionary));
+    }
+
+    byte[] decompressRewritten(ByteBuffer input, int rawLength, byte[] original, int dictionary) throws IOException {
+        return inflate(input, rawLength, rewriteDictionary(shared(dictionary), original));
+    }
+
+    @Override
+    public void close() {
+        deflater.end();
+        inflater.end();
+    }
+
+    // ---- Training ----
+
+    // Frequent runs of 1-4 words, scored by the bytes they would save; the most valuable
+    // go at the end of the dictionary, where deflate reaches them with the shortest distances
+    static byte[] train(List<String> samples) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String sample : samples) {
+            String[] words = sample.split("(?<=\\s)(?=\\S)");
+            for (int start = 0; start < words.length; start++) {
+                StringBuilder gram = new StringBuilder();
+                for (int n = 0; n < MAX_GRAM_WORDS && start + n < words.length; n++) {
+                    gram.append(words[start + n]);
+                    counts.merge(gram.toString(), 1, Integer::sum);
+                }
+            }
+        }
+
+        List<Map.Entry<String, Integer>> candidates = new ArrayList<>();
+        for (Map.Entry<String, Integer> e : counts.entrySet()) {
+            if (e.getValue() > 1 && e.getKey().length() > 3) candidates.add(e);
+        }
+        candidates.sort((a, b) -> Long.compare(score(b), score(a)));
+
+        List<byte[]> chosen = new ArrayList<>();
+        int size = 0;
+        for (Map.Entry<String, Integer> candidate : candidates) {
+            byte[] bytes = candidate.getKey().getBytes(StandardCharsets.UTF_8);
+            if (size + bytes.length > MAX_DICTIONARY_SIZE) continue;
+            chosen.add(bytes);
+            size += bytes.length;
+        }
+
+        ByteBuffer dictionary = ByteBuffer.allocate(size);
+        for (int i = chosen.size() - 1; i >= 0; i--) dictionary.put(chosen.get(i));
+        return dictionary.array();
+    }
+
+    private static long score(Map.Entry<String, Integer> gram) {
+        return (long) (gram.getValue() - 1) * gram.getKey().length();
+    }
+
+    // ---- Deflate ----
+
+    private byte[] shared(int dictionary) {
+        return dictionary == 0 ? NONE : dictionaries.get(dictionary - 1);
+    }
+
+    private static byte[] rewriteDictionary(byte[] shared, byte[] original) {
+        int originalBytes = Math.min(original.length, WINDOW_SIZE);
+        int sharedBytes = Math.min(shared.length, WINDOW_SIZE - originalBytes);
+        byte[] dictionary = new byte[sharedBytes + originalBytes];
+        System.arraycopy(shared, shared.length - sharedBytes, dictionary, 0, sharedBytes);
+        System.arraycopy(original, original.length - originalBytes, dictionary, sharedBytes, originalBytes);
+        return dictionary;
+    }
+
+    private byte[] deflate(byte[] input, byte[] dictionary) {
+        deflater.reset();
+        if (dictionary.length > 0) deflater.setDictionary(dictionary);
+        deflater.setInput(input);
+        deflater.finish();
+
+        byte[] output = new byte[input.length / 2 + 64];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == output.length) output = Arrays.copyOf(output, output.length * 2);
+            length += deflater.deflate(output, length, output.length - length);
+        }
+        return Arrays.copyOf(output, length);
+    }
+
+    private byte[] inflate(ByteBuffer input, int length, byte[] dictionary) throws IOException {
+        inflater.reset();
+        if (dictionary.length > 0) inflater.setDictionary(dictionary);
+        inflater.setInput(input);
+
+        byte[] output = new byte[length];
+        int n = 0;
+        try {
+            while (n < length) {
+                int k = inflater.inflate(output, n, length - n);
+                if (k == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Corrupt compressed session");
+                }
+                n += k;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed session", e);
+        }
+        return output;
+    }
+
+    // A torn last entry (crash while adding a dictionary) is dropped
+    private void load() throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+        int end = 0;
+        while (bytes.remaining() >= 4) {
+            int length = bytes.getInt();
+            if (length < 0 || length > bytes.remaining()) break;
+            byte[] dictionary = new byte[length];
+            bytes.get(dictionary);
+            dictionaries.add(dictionary);
+            end = bytes.position();
+        }
+        if (end < bytes.capacity()) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(end);
+            }
+        }
+    }
+}
@@ -0,0 +1,526 @@
+package com.jennyyn.recommender.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * Full-text index over the original and rewritten text of the saved sessions.
+ *
+ * In memory: term -> postings, in a TreeMap so all terms with a prefix are one range.
+ * The postings of a term are one flat int array, [id, count, position...] per session,
+ * in id order. Positions in the rewritten text continue after the original with a gap,
+ * so a phrase never spans both texts. Deleted sessions are masked by the live bit set.
+ *
+ * On disk: an append-only log next to the data file, one entry per save or delete,
+ * so opening the history doesn't re-tokenize every session. It starts with the generation
+ * of the store it indexes; a log of another generation (the store was recreated, and its
+ * ids started over) is dropped on open, and the caller indexes the sessions again:
+ *   HEADER [byte 3][long generation]
+ *   ADD    [byte 1][long id][varint terms] then per term
+ *          [varint n][n bytes UTF-8 term][varint count][varint position deltas]
+ *   DELETE [byte 2][long id]
+ * A torn last entry is cut off on open. Once deleted entries outnumber the live ones,
+ * the log is rewritten in the background with the live ADD entries only.
+ *
+ * Queries: words are prefixes ("rew" finds "rewrite"), "quoted words" are a phrase, and
+ * every part must match. Single letters only match whole words, so typing the first
+ * character doesn't walk every term of the index.
+ */
+public class SessionSearchIndex implements AutoCloseable {
+
+    private static final byte ADD = 1;
+    private static final byte DELETE = 2;
+    private static final byte HEADER = 3;
+    private static final int HEADER_SIZE = 1 + 8;
+    private static final int FIELD_GAP = 2; // positions skipped between original and rewritten
+    private static final int MIN_PREFIX_LENGTH = 2;
+    private static final int COMPACT_MIN_DELETED = 64;
+
+    private final Path logFile;
+    private final long generation;
+    private FileChannel log;
+
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+    private final BitSet live = new BitSet();
+    private final Map<Long, Entry> entries = new HashMap<>(); // where each live session's ADD entry is
+    private int deletedCount = 0;
+
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "search-index-compactor");
+        t.setDaemon(true);
+        return t;
+    });
+    private boolean compactionScheduled = false;
+
+    private record Entry(long offset, int length) { }
+
+    // One part of a query: a word (prefix unless quoted) or a phrase
+    record Clause(List<String> terms, boolean quoted) { }
+
+    // generation: of the store whose ids this indexes (SessionStore.generation)
+    public SessionSearchIndex(Path logFile, long generation) throws IOException {
+        this.logFile = logFile;
+        this.generation = generation;
+        this.log = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        replay();
+    }
+
+    // ---- Updates ----
+
+    public synchronized void add(long id, String original, String rewritten) throws IOException {
+        addAll(new long[]{id}, List.<String[]>of(new String[]{original, rewritten}));
+    }
+
+    // Several sessions with one write to the log
+    public synchronized void addAll(long[] ids, List<String[]> sessions) throws IOException {
+        List<ByteBuffer> encoded = new ArrayList<>();
+        List<Map<String, List<Integer>>> allPositions = new ArrayList<>();
+        List<Long> added = new ArrayList<>();
+        int total = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (contains(ids[i]) || added.contains(ids[i])) continue;
+
+            Map<String, List<Integer>> positions = new LinkedHashMap<>();
+            int next = addPositions(sessions.get(i)[0], 0, positions);
+            addPositions(sessions.get(i)[1], next + FIELD_GAP, positions);
+
+            ByteBuffer entry = encodeAdd(ids[i], positions);
+            encoded.add(entry);
+            allPositions.add(positions);
+            added.add(ids[i]);
+            total += entry.remaining();
+        }
+        if (added.isEmpty()) return;
+
+        long offset = log.size();
+        ByteBuffer bytes = ByteBuffer.allocate(total);
+        for (ByteBuffer entry : encoded) bytes.put(entry);
+        writeFully(log, bytes.flip(), offset);
+
+        for (int i = 0; i < added.size(); i++) {
+            long id = added.get(i);
+            index(id, allPositions.get(i));
+            int length = encoded.get(i).capacity();
+            entries.put(id, new Entry(offset, length));
+            offset += length;
+        }
+    }
+
+    public synchronized void remove(long id) throws IOException {
+        if (!contains(id)) return;
+
+        ByteBuffer entry = ByteBuffer.allocate(1 + 8).put(DELETE).putLong(id).flip();
+        writeFully(log, entry, log.size());
+        live.clear(toDoc(id));
+        entries.remove(id);
+
+        deletedCount++;
+        if (deletedCount >= COMPACT_MIN_DELETED && deletedCount > entries.size() && !compactionScheduled) {
+            compactionScheduled = true;
+            compactor.submit(() -> {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+    }
+
+    public synchronized boolean contains(long id) {
+        return id >= 0 && id <= Integer.MAX_VALUE && live.get((int) id);
+    }
+
+    // Ids of every indexed session, ascending
+    public synchronized long[] ids() {
+        return toIds(live);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    // ---- Search ----
+
+    // Ids of the sessions matching every word / "phrase" of the query, ascending; empty query = none
+    public synchronized long[] search(String query) {
+        List<Clause> clauses = parse(query);
+        if (clauses.isEmpty()) return new long[0];
+
+        BitSet result = (BitSet) live.clone();
+        for (Clause clause : clauses) {
+            if (result.isEmpty()) break;
+            if (clause.terms().size() == 1) {
+                String term = clause.terms().get(0);
+                result.and(termDocs(term, !clause.quoted() && term.length() >= MIN_PREFIX_LENGTH));
+            } else {
+                result.and(phraseDocs(clause.terms(), result));
+            }
+        }
+        return toIds(result);
+    }
+
+    private static long[] toIds(BitSet docs) {
+        long[] ids = new long[docs.cardinality()];
+        int i = 0;
+        for (int doc = docs.nextSetBit(0); doc >= 0; doc = docs.nextSetBit(doc + 1)) ids[i++] = doc;
+        return ids;
+    }
+
+    // Words become one-term clauses; quoted text and words that tokenize into several
+    // terms (e.g. "don't") become phrases
+    static List<Clause> parse(String query) {
+        List<Clause> clauses = new ArrayList<>();
+        String[] parts = query.split("\"", -1);
+        for (int i = 0; i < parts.length; i++) {
+            if (i % 2 == 1) {
+                List<String> phrase = tokenize(parts[i]);
+                if (!phrase.isEmpty()) clauses.add(new Clause(phrase, true));
+                continue;
+            }
+            for (String word : parts[i].trim().split("\\s+")) {
+                List<String> tokens = tokenize(word);
+                if (!tokens.isEmpty()) clauses.add(new Clause(tokens, false));
+            }
+        }
+        return clauses;
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) return tokens;
+
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private BitSet termDocs(String term, boolean prefix) {
+        BitSet docs = new BitSet();
+        if (prefix) {
+            for (Postings postings : terms.subMap(term, true, term + Character.MAX_VALUE, true).values()) {
+                postings.addDocsTo(docs);
+            }
+        } else {
+            Postings postings = terms.get(term);
+            if (postings != null) postings.addDocsTo(docs);
+        }
+        return docs;
+    }
+
+    // Sessions (among candidates) where the terms appear next to each other, in order.
+    // One pass over the postings of all terms at once (they are all in id order).
+    private BitSet phraseDocs(List<String> phrase, BitSet candidates) {
+        Postings[] postings = new Postings[phrase.size()];
+        for (int i = 0; i < phrase.size(); i++) {
+            postings[i] = terms.get(phrase.get(i));
+            if (postings[i] == null) return new BitSet();
+        }
+
+        int[] cursors = new int[postings.length]; // current entry in each term's postings
+        int[] next = new int[postings.length];
+        int[] end = new int[postings.length];
+        BitSet matches = new BitSet();
+        int doc = 0;
+        while (true) {
+            // Move every term to the first session >= doc that has it; agree on the largest
+            boolean same = true;
+            for (int i = 0; i < postings.length; i++) {
+                int[] data = postings[i].data;
+                int at = cursors[i];
+                while (at < postings[i].size && data[at] < doc) at += 2 + data[at + 1];
+                if (at >= postings[i].size) return matches;
+                cursors[i] = at;
+                if (data[at] != doc) {
+                    same = false;
+                    doc = data[at];
+                }
+            }
+            if (!same) continue;
+
+            if (candidates.get(doc)) {
+                for (int i = 0; i < postings.length; i++) {
+                    next[i] = cursors[i] + 2;
+                    end[i] = next[i] + postings[i].data[cursors[i] + 1];
+                }
+                if (containsPhrase(postings, next, end)) matches.set(doc);
+            }
+            doc++;
+        }
+    }
+
+    // Merges the position lists of one session (next[i]..end[i] in term i's postings):
+    // is there a start p with term i at p + i for every i?
+    private static boolean containsPhrase(Postings[] postings, int[] next, int[] end) {
+        int[] first = postings[0].data;
+        for (; next[0] < end[0]; next[0]++) {
+            int start = first[next[0]];
+            boolean all = true;
+            for (int i = 1; i < postings.length && all; i++) {
+                int[] data = postings[i].data;
+                while (next[i] < end[i] && data[next[i]] < start + i) next[i]++;
+                if (next[i] == end[i]) return false; // this term has no later positions
+                all = data[next[i]] == start + i;
+            }
+            if (all) return true;
+        }
+        return false;
+    }
+
+    // ---- In-memory index ----
+
+    private static int addPositions(String text, int position, Map<String, List<Integer>> positions) {
+        for (String token : tokenize(text)) {
+            positions.computeIfAbsent(token, k -> new ArrayList<>()).add(position++);
+        }
+        return position;
+    }
+
+    private void index(long id, Map<String, List<Integer>> positions) {
+        int doc = toDoc(id);
+        for (Map.Entry<String, List<Integer>> term : positions.entrySet()) {
+            terms.computeIfAbsent(term.getKey(), k -> new Postings()).add(doc, term.getValue());
+        }
+        live.set(doc);
+    }
+
+    private static int toDoc(long id) {
+        return Math.toIntExact(id);
+    }
+
+    // [id, count, position...] per session, ascending ids
+    private static final class Postings {
+        int[] data = new int[8];
+        int size = 0;
+        int lastDoc = -1;
+
+        void add(int doc, List<Integer> positions) {
+            int needed = size + 2 + positions.size();
+            if (needed > data.length) data = Arrays.copyOf(data, Math.max(needed, data.length * 2));
+
+            int at = size;
+            if (doc < lastDoc) {
+                // Out of order (only when a missing session is indexed late): make room in place
+                at = 0;
+                while (at < size && data[at] < doc) at += 2 + data[at + 1];
+                System.arraycopy(data, at, data, at + 2 + positions.size(), size - at);
+            } else {
+                lastDoc = doc;
+            }
+
+            data[at] = doc;
+            data[at + 1] = positions.size();
+            for (int i = 0; i < positions.size(); i++) data[at + 2 + i] = positions.get(i);
+            size = needed;
+        }
+
+        void addDocsTo(BitSet docs) {
+            for (int at = 0; at < size; at += 2 + data[at + 1]) docs.set(data[at]);
+        }
+
+        // Drops the sessions that are no longer live
+        void retain(BitSet live) {
+            int out = 0;
+            for (int at = 0; at < size; at += 2 + data[at + 1]) {
+                int length = 2 + data[at + 1];
+                if (live.get(data[at])) {
+                    System.arraycopy(data, at, data, out, length);
+                    out += length;
+                }
+            }
+            size = out;
+        }
+    }
+
+    // ---- Log ----
+
+    private void replay() throws IOException {
+        long fileSize = log.size();
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(fileSize));
+        readFully(log, buffer, 0);
+        buffer.flip();
+
+        // Empty, from an older version (no header) or for another generation: start over
+        if (fileSize < HEADER_SIZE || buffer.get() != HEADER || buffer.getLong() != generation) {
+            log.truncate(0);
+            writeFully(log, header(), 0);
+            return;
+        }
+
+        int good = HEADER_SIZE;
+        try {
+            while (buffer.hasRemaining()) {
+                int start = buffer.position();
+                byte type = buffer.get();
+                long id = buffer.getLong();
+
+                if (type == ADD) {
+                    Map<String, List<Integer>> positions = decodeAdd(buffer);
+                    if (!contains(id)) {
+                        index(id, positions);
+                        entries.put(id, new Entry(start, buffer.position() - start));
+                    }
+                } else if (type == DELETE) {
+                    if (contains(id)) {
+                        live.clear(toDoc(id));
+                        entries.remove(id);
+                        deletedCount++;
+                    }
+                } else {
+                    throw new IOException("Corrupt search index entry at " + start);
+                }
+                good = buffer.position();
+            }
+        } catch (BufferUnderflowException | IOException e) {
+            // Torn write at the end (or garbage): keep what was complete
+        }
+        if (good < fileSize) log.truncate(good);
+
+        if (deletedCount > 0) {
+            for (Postings postings : terms.values()) postings.retain(live);
+            terms.values().removeIf(postings -> postings.size == 0);
+        }
+    }
+
+    // Copies the live ADD entries into a new log
+    public synchronized void compact() throws IOException {
+        compactionScheduled = false;
+        if (deletedCount == 0) return;
+
+        Path tmp = logFile.resolveSibling(logFile.getFileName() + ".compact");
+        Map<Long, Entry> compacted = new HashMap<>();
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(out, header(), 0);
+            long offset = HEADER_SIZE;
+            for (int doc = live.nextSetBit(0); doc >= 0; doc = live.nextSetBit(doc + 1)) {
+                Entry entry = entries.get((long) doc);
+                ByteBuffer bytes = ByteBuffer.allocate(entry.length());
+                readFully(log, bytes, entry.offset());
+                bytes.flip();
+                writeFully(out, bytes, offset);
+                compacted.put((long) doc, new Entry(offset, entry.length()));
+                offset += entry.length();
+            }
+            out.force(true);
+        }
+
+        log.close();
+        Files.move(tmp, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        entries.clear();
+        entries.putAll(compacted);
+        for (Postings postings : terms.values()) postings.retain(live);
+        terms.values().removeIf(postings -> postings.size == 0);
+        deletedCount = 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        compactor.shutdown();
+        log.close();
+    }
+
+    private ByteBuffer header() {
+        return ByteBuffer.allocate(HEADER_SIZE).put(HEADER).putLong(generation).flip();
+    }
+
+    private static ByteBuffer encodeAdd(long id, Map<String, List<Integer>> positions) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(ADD);
+        out.writeLong(id);
+        writeVarint(out, positions.size());
+        for (Map.Entry<String, List<Integer>> term : positions.entrySet()) {
+            byte[] utf8 = term.getKey().getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, utf8.length);
+            out.write(utf8);
+            writeVarint(out, term.getValue().size());
+            int previous = 0;
+            for (int position : term.getValue()) {
+                writeVarint(out, position - previous);
+                previous = position;
+            }
+        }
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    private static Map<String, List<Integer>> decodeAdd(ByteBuffer buffer) throws IOException {
+        int termCount = readVarint(buffer);
+        Map<String, List<Integer>> positions = new LinkedHashMap<>();
+        for (int t = 0; t < termCount; t++) {
+            byte[] utf8 = new byte[readVarint(buffer)];
+            buffer.get(utf8);
+            int count = readVarint(buffer);
+            List<Integer> list = new ArrayList<>(count);
+            int position = 0;
+            for (int i = 0; i < count; i++) {
+                position += readVarint(buffer);
+                list.add(position);
+            }
+            positions.put(new String(utf8, StandardCharsets.UTF_8), list);
+        }
+        return positions;
+    }
+
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarint(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IOException("Malformed varint in search index");
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) throw new IOException("Unexpected end of search index");
+            position += n;
+        }
+    }
+}
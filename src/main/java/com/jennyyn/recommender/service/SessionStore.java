@@ -0,0 +1,635 @@
+package com.jennyyn.recommender.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ * Append-only binary session storage.
+ *
+ * Data file: one record per saved session
+ *   [int length][byte flags][long id][int n][n bytes original][int m][m bytes rewritten]
+ *   (length counts everything after the length field)
+ * or, with the COMPRESSED flag (see SessionCompressor),
+ *   [int length][byte flags][long id][int dictionary]
+ *   [int n][int cn][cn bytes deflated original][int m][int cm][cm bytes deflated rewritten]
+ *   (n and m are the uncompressed lengths)
+ *
+ * Index file: one fixed-size entry per record, in the same order
+ *   [long id][long offset][int length][byte flags]
+ *
+ * Generation file: [long] a random number picked whenever the data file is created. Ids
+ * start over with a new data file, so files that refer to sessions by id (the search
+ * index) store it too and can tell they belong to an older store.
+ *
+ * Delete only flips the DELETED flag in both files (tombstone), so load, delete and
+ * lookup by position are a single positioned read/write. The index flag is written first:
+ * open() goes by the index, and a rebuilt index keeps the deletes the old one had. Dead records are removed
+ * by a background compaction once they outnumber the live ones.
+ *
+ * Reads go through a read-only mapping of the data file (1 GB segments, remapped as the
+ * file grows), so a session is decoded straight from the page cache and nothing but the
+ * requested strings ends up on the heap, however large the history is.
+ *
+ * With compression on, a record is stored compressed when that is smaller. Once there
+ * are enough sessions a shared dictionary is trained from them in the background and
+ * the whole file is rewritten with it (existing histories included); after that, new
+ * records use it right away. Compressed and plain records can be mixed in one file.
+ */
+public class SessionStore implements AutoCloseable {
+
+    static final byte FLAG_DELETED = 1;
+    static final byte FLAG_COMPRESSED = 2;
+
+    private static final int INDEX_ENTRY_SIZE = 8 + 8 + 4 + 1;
+    private static final int RECORD_HEADER_SIZE = 4 + 1 + 8; // length, flags, id
+    private static final int COMPACT_MIN_DELETED = 64;
+    private static final long MAP_SEGMENT_SIZE = 1L << 30;
+    private static final int TRAIN_MIN_SESSIONS = 100;
+    private static final int TRAIN_SAMPLE_SESSIONS = 1000;
+
+    private final Path dataFile;
+    private final Path indexFile;
+    private final Path generationFile;
+    private long generation;
+
+    private FileChannel data;
+    private FileChannel index;
+
+    // Read-only view of data[0, mappedSize); every segment but the last is MAP_SEGMENT_SIZE long
+    private final List<MappedByteBuffer> mapped = new ArrayList<>();
+    private long mappedSize = 0;
+
+    // Live records in display order; the index file itself is read only once, on open
+    private final List<IndexEntry> live = new ArrayList<>();
+    private int deletedCount = 0;
+    private long nextId = 1;
+
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "session-compactor");
+        t.setDaemon(true);
+        return t;
+    });
+    private boolean compactionScheduled = false;
+
+    private final SessionCompressor compressor;
+    private boolean compression = false;
+    private boolean trainingScheduled = false;
+    private boolean recompressPending = false;
+
+    private record IndexEntry(long id, long offset, int length, long slot) { }
+
+    public SessionStore(Path dataFile) throws IOException {
+        this.dataFile = dataFile;
+        this.indexFile = dataFile.resolveSibling(dataFile.getFileName() + ".idx");
+        this.generationFile = dataFile.resolveSibling(dataFile.getFileName() + ".gen");
+        this.compressor = new SessionCompressor(dataFile.resolveSibling(dataFile.getFileName() + ".dict"));
+        open();
+    }
+
+    public static boolean exists(Path dataFile) {
+        return Files.exists(dataFile);
+    }
+
+    // Changes whenever the data file is created anew (see the class comment)
+    public synchronized long generation() {
+        return generation;
+    }
+
+    // Compresses new records (and, once a dictionary is trained, the existing ones)
+    public synchronized void setCompression(boolean enabled) {
+        compression = enabled;
+        scheduleTraining();
+    }
+
+    // ---- Public API (positions are 0-based among live sessions) ----
+
+    public synchronized long append(String original, String rewritten) throws IOException {
+        long id = nextId++;
+        ByteBuffer record = encode(id, original, rewritten);
+        int length = record.remaining() - 4;
+
+        long offset = data.size();
+        writeFully(data, record, offset);
+
+        long slot = index.size() / INDEX_ENTRY_SIZE;
+        writeFully(index, encodeIndexEntry(id, offset, length, (byte) 0), slot * INDEX_ENTRY_SIZE);
+
+        live.add(new IndexEntry(id, offset, length, slot));
+        scheduleTraining();
+        return id;
+    }
+
+    // Group commit: all records in one write to each file; returns the ids in order
+    public synchronized long[] appendAll(List<String[]> sessions) throws IOException {
+        List<ByteBuffer> records = new ArrayList<>(sessions.size());
+        int total = 0;
+        for (String[] session : sessions) {
+            ByteBuffer record = encode(nextId++, session[0], session[1]);
+            records.add(record);
+            total += record.remaining();
+        }
+
+        long offset = data.size();
+        long slot = index.size() / INDEX_ENTRY_SIZE;
+        ByteBuffer dataBytes = ByteBuffer.allocate(total);
+        ByteBuffer indexBytes = ByteBuffer.allocate(sessions.size() * INDEX_ENTRY_SIZE);
+        long[] ids = new long[sessions.size()];
+        List<IndexEntry> added = new ArrayList<>(sessions.size());
+
+        for (int i = 0; i < records.size(); i++) {
+            ByteBuffer record = records.get(i);
+            long id = record.getLong(4 + 1);
+            int length = record.remaining() - 4;
+            dataBytes.put(record);
+            indexBytes.put(encodeIndexEntry(id, offset, length, (byte) 0));
+            added.add(new IndexEntry(id, offset, length, slot + i));
+            ids[i] = id;
+            offset += length + 4;
+        }
+
+        writeFully(data, dataBytes.flip(), data.size());
+        writeFully(index, indexBytes.flip(), slot * INDEX_ENTRY_SIZE);
+        live.addAll(added);
+        scheduleTraining();
+        return ids;
+    }
+
+    // Flushes both files to the disk (fsync)
+    public synchronized void force() throws IOException {
+        data.force(false);
+        index.force(false);
+    }
+
+    public synchronized int size() {
+        return live.size();
+    }
+
+    public synchronized long idAt(int position) {
+        return live.get(position).id();
+    }
+
+    // Position of a session, or -1 if it was deleted (live records are always in id order)
+    public synchronized int positionOf(long id) {
+        int low = 0;
+        int high = live.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midId = live.get(mid).id();
+            if (midId < id) low = mid + 1;
+            else if (midId > id) high = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    // positionOf for many ids (ascending); deleted ones are left out. Each search gallops
+    // forward from the previous hit, so dense and sparse id lists are both cheap.
+    public synchronized int[] positionsOf(long[] ids) {
+        int[] positions = new int[ids.length];
+        int found = 0;
+        int low = 0;
+        for (long id : ids) {
+            int step = 1;
+            int high = low;
+            while (high < live.size() && live.get(high).id() < id) {
+                low = high + 1;
+                high += step;
+                step *= 2;
+            }
+            high = Math.min(high, live.size() - 1);
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long midId = live.get(mid).id();
+                if (midId < id) low = mid + 1;
+                else if (midId > id) high = mid - 1;
+                else {
+                    positions[found++] = mid;
+                    low = mid + 1;
+                    break;
+                }
+            }
+            if (low >= live.size()) break;
+        }
+        return Arrays.copyOf(positions, found);
+    }
+
+    // Returns {original, rewritten} of one session
+    public synchronized String[] read(int position) throws IOException {
+        IndexEntry entry = live.get(position);
+        return decodeRecord(mappedRecord(entry.offset(), entry.length() + 4));
+    }
+
+    // Start of the original text without reading the whole record
+    // (returns maxChars + 1 chars when the text is longer, so callers can tell it was cut)
+    public synchronized String readSnippet(int position, int maxChars) throws IOException {
+        IndexEntry entry = live.get(position);
+
+        ByteBuffer record = mappedRecord(entry.offset(), entry.length() + 4);
+        record.position(RECORD_HEADER_SIZE);
+
+        // A UTF-16 char never needs more than 3 UTF-8 bytes (surrogate pairs: 4 bytes for 2 chars)
+        int wanted = (maxChars + 1) * 3;
+        int originalLength;
+        int available;
+        String text;
+        if ((record.get(4) & FLAG_COMPRESSED) != 0) {
+            int dictionary = record.getInt();
+            originalLength = record.getInt();
+            int compressedLength = record.getInt();
+            byte[] prefix = compressor.decompressOriginal(record.slice(record.position(), compressedLength),
+                    originalLength, wanted, dictionary);
+            available = prefix.length;
+            text = new String(prefix, StandardCharsets.UTF_8);
+        } else {
+            originalLength = record.getInt();
+            available = Math.min(originalLength, wanted);
+            text = decodeString(record, available);
+        }
+
+        if (available < originalLength) {
+            // The cut may have split a character in half; drop the replacement char it produced
+            int end = text.length();
+            while (end > 0 && text.charAt(end - 1) == '\uFFFD') end--;
+            text = text.substring(0, end);
+        }
+        return text.length() > maxChars ? text.substring(0, maxChars + 1) : text;
+    }
+
+    public synchronized List<String[]> readAll() throws IOException {
+        List<String[]> sessions = new ArrayList<>(live.size());
+        for (int i = 0; i < live.size(); i++) {
+            sessions.add(read(i));
+        }
+        return sessions;
+    }
+
+    public synchronized void delete(int position) throws IOException {
+        IndexEntry entry = live.remove(position);
+
+        // Index first: a crash before the data write still leaves the session deleted
+        ByteBuffer flag = ByteBuffer.wrap(new byte[]{FLAG_DELETED});
+        writeFully(index, flag, entry.slot() * INDEX_ENTRY_SIZE + INDEX_ENTRY_SIZE - 1);
+        flag.rewind();
+        writeFully(data, flag, entry.offset() + 4);
+
+        deletedCount++;
+        if (deletedCount >= COMPACT_MIN_DELETED && deletedCount > live.size() && !compactionScheduled) {
+            compactionScheduled = true;
+            compactor.submit(() -> {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+    }
+
+    // Rewrites both files with live records only (ids stay the same); with compression on,
+    // every record is encoded again with the current dictionary
+    public synchronized void compact() throws IOException {
+        compactionScheduled = false;
+        if (deletedCount == 0 && !recompressPending) return;
+        recompressPending = false;
+
+        Path tmpData = dataFile.resolveSibling(dataFile.getFileName() + ".compact");
+        Path tmpIndex = indexFile.resolveSibling(indexFile.getFileName() + ".compact");
+        List<IndexEntry> compacted = new ArrayList<>(live.size());
+
+        try (FileChannel newData = FileChannel.open(tmpData, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             FileChannel newIndex = FileChannel.open(tmpIndex, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+            long offset = 0;
+            for (int slot = 0; slot < live.size(); slot++) {
+                IndexEntry entry = live.get(slot);
+                ByteBuffer record = mappedRecord(entry.offset(), entry.length() + 4);
+                if (compression) {
+                    String[] session = decodeRecord(record);
+                    record = encode(entry.id(), session[0], session[1]);
+                }
+                int length = record.remaining() - 4;
+                writeFully(newData, record, offset);
+                writeFully(newIndex, encodeIndexEntry(entry.id(), offset, length, (byte) 0),
+                        (long) slot * INDEX_ENTRY_SIZE);
+
+                compacted.add(new IndexEntry(entry.id(), offset, length, slot));
+                offset += length + 4;
+            }
+            newData.force(true);
+            newIndex.force(true);
+        }
+
+        // Reads only ever go through the mapping, so after this nothing refers to the old file;
+        // it is mapped again, from the new file, on the next read
+        unmap();
+        data.close();
+        index.close();
+        try {
+            Files.move(tmpData, dataFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Windows refuses to replace a file whose old mapping the GC hasn't released yet:
+            // keep using the old files, the next delete schedules another compaction
+            Files.deleteIfExists(tmpData);
+            Files.deleteIfExists(tmpIndex);
+            openChannels();
+            throw e;
+        }
+        try {
+            Files.move(tmpIndex, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The data file is already the compacted one: index it from scratch
+            e.printStackTrace();
+            Files.deleteIfExists(tmpIndex);
+            openChannels();
+            rebuildIndex(Set.of());
+            return;
+        }
+        openChannels();
+
+        live.clear();
+        live.addAll(compacted);
+        deletedCount = 0;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        compactor.shutdown();
+        unmap();
+        data.close();
+        index.close();
+        compressor.close();
+    }
+
+    // ---- Compression ----
+
+    private void scheduleTraining() {
+        if (!compression || trainingScheduled || compressor.currentDictionary() > 0 || live.size() < TRAIN_MIN_SESSIONS) {
+            return;
+        }
+        trainingScheduled = true;
+        compactor.submit(() -> {
+            try {
+                trainDictionary();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    // Trains a shared dictionary on sessions spread over the history, then recompresses the file.
+    // Only the sampling holds the lock; saves and reads go on while the dictionary is built.
+    void trainDictionary() throws IOException {
+        List<String> samples = new ArrayList<>();
+        synchronized (this) {
+            int step = Math.max(1, live.size() / TRAIN_SAMPLE_SESSIONS);
+            for (int i = 0; i < live.size(); i += step) {
+                String[] session = read(i);
+                samples.add(session[0]);
+                samples.add(session[1]);
+            }
+        }
+        byte[] dictionary = SessionCompressor.train(samples);
+        if (dictionary.length == 0) return;
+
+        synchronized (this) {
+            compressor.addDictionary(dictionary);
+            recompressPending = true;
+        }
+        compact();
+    }
+
+    // ---- Mapped reads ----
+
+    // The bytes [offset, offset + length) of the data file, read-only and positioned at 0
+    private ByteBuffer mappedRecord(long offset, int length) throws IOException {
+        long end = offset + length;
+        if (end > mappedSize) remap();
+
+        int segment = (int) (offset / MAP_SEGMENT_SIZE);
+        long segmentStart = segment * MAP_SEGMENT_SIZE;
+        if (end > segmentStart + MAP_SEGMENT_SIZE) {
+            // Straddles two segments (only in files over 1 GB): plain read
+            ByteBuffer record = ByteBuffer.allocate(length);
+            readFully(data, record, offset);
+            return record.flip();
+        }
+        return mapped.get(segment).slice((int) (offset - segmentStart), length);
+    }
+
+    // Maps what was appended since the last call; full segments stay as they are
+    private void remap() throws IOException {
+        long size = data.size();
+        if (!mapped.isEmpty() && mapped.get(mapped.size() - 1).capacity() < MAP_SEGMENT_SIZE) {
+            mapped.remove(mapped.size() - 1);
+        }
+        for (long start = mapped.size() * MAP_SEGMENT_SIZE; start < size; start += MAP_SEGMENT_SIZE) {
+            mapped.add(data.map(FileChannel.MapMode.READ_ONLY, start, Math.min(MAP_SEGMENT_SIZE, size - start)));
+        }
+        mappedSize = size;
+    }
+
+    // Mappings are released by the GC; dropping them lets the file be replaced (compaction),
+    // though on Windows only once they have actually been collected
+    private void unmap() {
+        mapped.clear();
+        mappedSize = 0;
+    }
+
+    // ---- Opening / recovery ----
+
+    private void openChannels() throws IOException {
+        data = FileChannel.open(dataFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private void open() throws IOException {
+        boolean created = !Files.exists(dataFile) || Files.size(dataFile) == 0;
+        openChannels();
+        openGeneration(created);
+
+        long entries = index.size() / INDEX_ENTRY_SIZE;
+        ByteBuffer buffer = ByteBuffer.allocate((int) (entries * INDEX_ENTRY_SIZE));
+        readFully(index, buffer, 0);
+        buffer.flip();
+
+        long expectedDataSize = 0;
+        Set<Long> deleted = new HashSet<>();
+        for (long slot = 0; slot < entries; slot++) {
+            long id = buffer.getLong();
+            long offset = buffer.getLong();
+            int length = buffer.getInt();
+            byte flags = buffer.get();
+
+            nextId = Math.max(nextId, id + 1);
+            expectedDataSize = offset + length + 4;
+            if ((flags & FLAG_DELETED) != 0) {
+                deletedCount++;
+                deleted.add(id);
+            } else {
+                live.add(new IndexEntry(id, offset, length, slot));
+            }
+        }
+
+        // Index is behind the data file (crash between the two writes): rebuild it
+        if (expectedDataSize != data.size()) {
+            rebuildIndex(deleted);
+        }
+    }
+
+    // A new generation for a new data file, or for a store written before there were generations
+    private void openGeneration(boolean created) throws IOException {
+        if (!created && Files.exists(generationFile) && Files.size(generationFile) == 8) {
+            generation = ByteBuffer.wrap(Files.readAllBytes(generationFile)).getLong();
+            return;
+        }
+        do {
+            generation = ThreadLocalRandom.current().nextLong();
+        } while (generation == 0);
+        Files.write(generationFile, ByteBuffer.allocate(8).putLong(generation).array());
+    }
+
+    // Index from the data file; ids deleted in the old index (whose data flag may not have
+    // been written yet) stay deleted
+    private void rebuildIndex(Set<Long> deleted) throws IOException {
+        live.clear();
+        deletedCount = 0;
+        index.truncate(0);
+
+        long offset = 0;
+        long slot = 0;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        while (offset + RECORD_HEADER_SIZE <= data.size()) {
+            header.clear();
+            readFully(data, header, offset);
+            header.flip();
+            int length = header.getInt();
+            byte flags = header.get();
+            long id = header.getLong();
+
+            if (length < RECORD_HEADER_SIZE - 4 || offset + 4 + length > data.size()) break; // torn write
+            if ((flags & FLAG_DELETED) == 0 && deleted.contains(id)) {
+                flags |= FLAG_DELETED;
+                writeFully(data, ByteBuffer.wrap(new byte[]{flags}), offset + 4);
+            }
+
+            writeFully(index, encodeIndexEntry(id, offset, length, flags), slot * INDEX_ENTRY_SIZE);
+            nextId = Math.max(nextId, id + 1);
+            if ((flags & FLAG_DELETED) != 0) deletedCount++;
+            else live.add(new IndexEntry(id, offset, length, slot));
+
+            offset += 4 + length;
+            slot++;
+        }
+        data.truncate(offset); // drop a partially written last record
+    }
+
+    // ---- Encoding ----
+
+    // Compressed if compression is on and it saves space, plain otherwise
+    private ByteBuffer encode(long id, String original, String rewritten) {
+        byte[] o = (original == null ? "" : original).getBytes(StandardCharsets.UTF_8);
+        byte[] r = (rewritten == null ? "" : rewritten).getBytes(StandardCharsets.UTF_8);
+        if (!compression) return encodeRecord(id, o, r);
+
+        byte[] co = compressor.compressOriginal(o);
+        byte[] cr = compressor.compressRewritten(r, o);
+        int size = RECORD_HEADER_SIZE + 4 + 8 + co.length + 8 + cr.length;
+        if (size >= RECORD_HEADER_SIZE + 8 + o.length + r.length) return encodeRecord(id, o, r);
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(size - 4);
+        buffer.put(FLAG_COMPRESSED);
+        buffer.putLong(id);
+        buffer.putInt(compressor.currentDictionary());
+        buffer.putInt(o.length).putInt(co.length).put(co);
+        buffer.putInt(r.length).putInt(cr.length).put(cr);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static ByteBuffer encodeRecord(long id, byte[] o, byte[] r) {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + 4 + o.length + 4 + r.length);
+        buffer.putInt(buffer.capacity() - 4);
+        buffer.put((byte) 0);
+        buffer.putLong(id);
+        buffer.putInt(o.length).put(o);
+        buffer.putInt(r.length).put(r);
+        buffer.flip();
+        return buffer;
+    }
+
+    private String[] decodeRecord(ByteBuffer record) throws IOException {
+        record.position(RECORD_HEADER_SIZE);
+        if ((record.get(4) & FLAG_COMPRESSED) == 0) {
+            return new String[]{readString(record), readString(record)};
+        }
+
+        int dictionary = record.getInt();
+        int originalLength = record.getInt();
+        int compressedLength = record.getInt();
+        byte[] original = compressor.decompressOriginal(record.slice(record.position(), compressedLength),
+                originalLength, originalLength, dictionary);
+        record.position(record.position() + compressedLength);
+
+        int rewrittenLength = record.getInt();
+        compressedLength = record.getInt();
+        byte[] rewritten = compressor.decompressRewritten(record.slice(record.position(), compressedLength),
+                rewrittenLength, original, dictionary);
+        return new String[]{new String(original, StandardCharsets.UTF_8), new String(rewritten, StandardCharsets.UTF_8)};
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        String s = decodeString(buffer, length);
+        buffer.position(buffer.position() + length);
+        return s;
+    }
+
+    // UTF-8 bytes at the buffer's position; heap buffers are decoded in place, mapped ones copied once
+    private static String decodeString(ByteBuffer buffer, int length) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(buffer.position(), bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer encodeIndexEntry(long id, long offset, int length, byte flags) {
+        ByteBuffer buffer = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+        buffer.putLong(id).putLong(offset).putInt(length).put(flags);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) throw new IOException("Unexpected end of session file");
+            position += n;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.jennyyn.recommender.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Write-behind queue for saved sessions with group commit. Callers only enqueue and get
+ * a future; one background thread takes everything that queued up while the previous
+ * batch was being written and hands it to the BatchWriter in one go (one write, one
+ * fsync). Under rapid saves the batches simply get bigger; a lone save is written
+ * right away, there is no timer. close() writes what is queued and stops the thread.
+ */
+class SessionWriter {
+
+    private static final int MAX_BATCH = 256;
+    private static final long SHUTDOWN_WAIT_SECONDS = 5;
+
+    // Writes a batch of {original, rewritten} sessions and returns their ids, in order
+    interface BatchWriter {
+        long[] write(List<String[]> sessions) throws Exception;
+    }
+
+    private record PendingSave(String[] session, CompletableFuture<Long> done) { }
+
+    private static final PendingSave STOP = new PendingSave(null, null); // queued by close()
+
+    private final BatchWriter writer;
+    private final BlockingQueue<PendingSave> queue = new LinkedBlockingQueue<>();
+    private final RewriteMetrics metrics = RewriteMetrics.getInstance();
+    private volatile CompletableFuture<Long> last = CompletableFuture.completedFuture(null);
+    private final Thread thread;
+    private final Thread shutdownHook;
+    private boolean closed = false;
+
+    SessionWriter(BatchWriter writer) {
+        this.writer = writer;
+
+        thread = new Thread(this::run, "session-writer");
+        thread.setDaemon(true);
+        thread.start();
+
+        // Saves still queued when the window is closed are written before the JVM exits
+        shutdownHook = new Thread(() -> {
+            try {
+                last.get(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS);
+            } catch (Exception ignored) {
+            }
+        }, "session-writer-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    // Completes with the session's id once it is written (and synced, depending on the policy)
+    synchronized CompletableFuture<Long> submit(String original, String rewritten) {
+        CompletableFuture<Long> done = new CompletableFuture<>();
+        if (closed) {
+            done.completeExceptionally(new IllegalStateException("Session writer is closed"));
+            return done;
+        }
+        last = done;
+        queue.add(new PendingSave(new String[]{original, rewritten}, done));
+        return done;
+    }
+
+    // Waits until everything submitted so far is written, so reads see it
+    void awaitPending() {
+        try {
+            last.join();
+        } catch (Exception ignored) {
+            // the failed save was reported to its own caller
+        }
+    }
+
+    // Writes everything submitted so far, then stops the thread and removes the shutdown hook
+    void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+        }
+        awaitPending();
+        queue.add(STOP);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(SHUTDOWN_WAIT_SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException ignored) {
+            // the JVM is already shutting down
+        }
+    }
+
+    private void run() {
+        List<PendingSave> batch = new ArrayList<>();
+        while (true) {
+            try {
+                PendingSave save = queue.take();
+                if (save == STOP) return; // nothing can be queued behind it
+                batch.add(save);
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+
+            List<String[]> sessions = new ArrayList<>(batch.size());
+            for (PendingSave save : batch) sessions.add(save.session());
+
+            long start = System.nanoTime();
+            try {
+                long[] ids = writer.write(sessions);
+                metrics.recordSessionBatch(batch.size(), System.nanoTime() - start);
+                for (int i = 0; i < batch.size(); i++) batch.get(i).done().complete(ids[i]);
+            } catch (Exception e) {
+                for (PendingSave save : batch) save.done().completeExceptionally(e);
+            }
+            batch.clear();
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.jennyyn.recommender.service;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Small OpenAI-compatible chat completions server for offline tests and load tests.
+ * It answers with the text of the prompt (the last message, without the instruction line)
+ * and can simulate latency, slow streaming, rate limiting (429 + retry-after-ms)
+ * and server errors. Like a real provider's prompt cache, a system message it has seen
+ * before is reported as cached prompt tokens. One virtual thread per request, so it copes with thousands
+ * of concurrent connections.
+ *
+ *   java com.jennyyn.recommender.Main --stub-server [port]
+ *   ENDPOINT=http://localhost:<port>/v1/chat/completions
+ */
+public class StubLLMServer {
+
+    public static final String PATH = "/v1/chat/completions";
+    private static final int BACKLOG = 1024; // the default (50) drops connections in load tests
+
+    static {
+        // Headers and body are separate writes; with Nagle on every response waits ~40 ms for a delayed ACK
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final HttpServer server;
+
+    private volatile long latencyMillis = 0;       // before the response headers
+    private volatile long latencyJitterMillis = 0; // plus a random 0..jitter
+    private volatile long tokenDelayMillis = 0;    // between streamed words
+    private volatile double rateLimitRate = 0;     // share of requests answered with 429
+    private volatile double failureRate = 0;       // share of requests answered with 500
+    private volatile long retryAfterMillis = 200;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder streamedRequests = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final Set<String> seenSystemMessages = ConcurrentHashMap.newKeySet();
+
+    // port 0 = any free port
+    public StubLLMServer(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        server.createContext(PATH, this::handle);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public String getEndpoint() {
+        return "http://localhost:" + getPort() + PATH;
+    }
+
+    // ---- Simulation settings (may be changed while running) ----
+    public void setLatency(long millis, long jitterMillis) {
+        this.latencyMillis = millis;
+        this.latencyJitterMillis = jitterMillis;
+    }
+
+    public void setTokenDelayMillis(long millis) {
+        this.tokenDelayMillis = millis;
+    }
+
+    public void setRateLimitRate(double rate, long retryAfterMillis) {
+        this.rateLimitRate = rate;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public void setFailureRate(double rate) {
+        this.failureRate = rate;
+    }
+
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    // Requests that asked for "stream": true
+    public long getStreamedRequestCount() {
+        return streamedRequests.sum();
+    }
+
+    public long getRateLimitedCount() {
+        return rateLimited.sum();
+    }
+
+    public long getFailedCount() {
+        return failed.sum();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (exchange.getRequestMethod().equals("HEAD")) { // connection warm-up / keep-alive
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            if (!exchange.getRequestMethod().equals("POST")) {
+                sendJson(exchange, 405, errorJson("Only POST is supported"));
+                return;
+            }
+            requests.increment();
+
+            JsonObject request;
+            try (InputStreamReader in = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+                request = JsonParser.parseReader(in).getAsJsonObject();
+            } catch (RuntimeException e) {
+                sendJson(exchange, 400, errorJson("Invalid JSON body"));
+                return;
+            }
+            boolean streamed = request.has("stream") && request.get("stream").getAsBoolean();
+            if (streamed) streamedRequests.increment();
+
+            double roll = ThreadLocalRandom.current().nextDouble();
+            if (roll < rateLimitRate) {
+                rateLimited.increment();
+                exchange.getResponseHeaders().set("retry-after-ms", String.valueOf(retryAfterMillis));
+                sendJson(exchange, 429, errorJson("Rate limit reached for requests"));
+                return;
+            }
+            if (roll < rateLimitRate + failureRate) {
+                failed.increment();
+                sendJson(exchange, 500, errorJson("The server had an error while processing your request."));
+                return;
+            }
+
+            sleep(latencyMillis + (latencyJitterMillis > 0
+                    ? ThreadLocalRandom.current().nextLong(latencyJitterMillis + 1) : 0));
+
+            String prompt = lastMessage(request);
+            String content = answer(request, prompt);
+            String system = systemMessage(request);
+            int cachedTokens = system != null && !seenSystemMessages.add(system) ? system.length() / 4 : 0;
+            int promptTokens = (system != null ? system.length() / 4 : 0) + prompt.length() / 4 + 1;
+
+            if (streamed) {
+                stream(exchange, content, promptTokens, cachedTokens, request.has("stream_options"));
+            } else {
+                sendJson(exchange, 200, completionJson(content, promptTokens, cachedTokens));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // client went away (e.g. a cancelled request): nothing to do
+        }
+    }
+
+    // Server-sent events, one word per chunk
+    private void stream(HttpExchange exchange, String content, int promptTokens, int cachedTokens, boolean includeUsage)
+            throws IOException, InterruptedException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+
+        OutputStream out = exchange.getResponseBody();
+        JsonObject role = new JsonObject();
+        role.addProperty("role", "assistant");
+        event(out, chunkJson(role));
+
+        for (String word : content.split("(?<=\\s)")) {
+            sleep(tokenDelayMillis);
+            JsonObject delta = new JsonObject();
+            delta.addProperty("content", word);
+            event(out, chunkJson(delta));
+        }
+
+        if (includeUsage) {
+            JsonObject usage = new JsonObject();
+            usage.add("choices", new JsonArray());
+            usage.add("usage", usageJson(promptTokens, content.length() / 4, cachedTokens));
+            event(out, usage.toString());
+        }
+        event(out, "[DONE]");
+    }
+
+    private static void event(OutputStream out, String data) throws IOException {
+        out.write(("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private static void sleep(long millis) throws InterruptedException {
+        if (millis > 0) Thread.sleep(millis);
+    }
+
+    private static String lastMessage(JsonObject request) {
+        JsonElement messages = request.get("messages");
+        if (messages == null || !messages.isJsonArray() || messages.getAsJsonArray().isEmpty()) return "";
+
+        JsonArray array = messages.getAsJsonArray();
+        JsonElement content = array.get(array.size() - 1).getAsJsonObject().get("content");
+        return content == null || content.isJsonNull() ? "" : content.getAsString();
+    }
+
+    // Content of the first message if it is a system message
+    private static String systemMessage(JsonObject request) {
+        if (!(request.get("messages") instanceof JsonArray messages) || messages.isEmpty()) return null;
+
+        JsonObject first = messages.get(0).getAsJsonObject();
+        JsonElement role = first.get("role");
+        JsonElement content = first.get("content");
+        if (role == null || !role.getAsString().equals("system") || content == null || content.isJsonNull()) return null;
+        return content.getAsString();
+    }
+
+    // Prompt templates send the instruction as a system message and the text as the last one;
+    // a single message is "<instruction>:\n\n<text>". Either way, echo only the text
+    private static String answer(JsonObject request, String prompt) {
+        if (request.get("messages") instanceof JsonArray messages && messages.size() > 1) return prompt;
+        int start = prompt.indexOf("\n\n");
+        return start >= 0 ? prompt.substring(start + 2) : prompt;
+    }
+
+    // ---- Response bodies ----
+    public static String completionJson(String content, int promptTokens) {
+        return completionJson(content, promptTokens, 0);
+    }
+
+    public static String completionJson(String content, int promptTokens, int cachedTokens) {
+        JsonObject message = new JsonObject();
+        message.addProperty("role", "assistant");
+        message.addProperty("content", content);
+
+        JsonObject choice = new JsonObject();
+        choice.addProperty("index", 0);
+        choice.add("message", message);
+        choice.addProperty("finish_reason", "stop");
+
+        JsonArray choices = new JsonArray();
+        choices.add(choice);
+
+        JsonObject json = new JsonObject();
+        json.addProperty("id", "chatcmpl-stub");
+        json.addProperty("object", "chat.completion");
+        json.addProperty("model", "stub");
+        json.add("choices", choices);
+        json.add("usage", usageJson(promptTokens, content.length() / 4, cachedTokens));
+        return json.toString();
+    }
+
+    private static String chunkJson(JsonObject delta) {
+        JsonObject choice = new JsonObject();
+        choice.addProperty("index", 0);
+        choice.add("delta", delta);
+
+        JsonArray choices = new JsonArray();
+        choices.add(choice);
+
+        JsonObject json = new JsonObject();
+        json.addProperty("id", "chatcmpl-stub");
+        json.addProperty("object", "chat.completion.chunk");
+        json.add("choices", choices);
+        return json.toString();
+    }
+
+    private static JsonObject usageJson(int promptTokens, int completionTokens, int cachedTokens) {
+        JsonObject details = new JsonObject();
+        details.addProperty("cached_tokens", cachedTokens);
+
+        JsonObject usage = new JsonObject();
+        usage.addProperty("prompt_tokens", promptTokens);
+        usage.addProperty("completion_tokens", completionTokens);
+        usage.addProperty("total_tokens", promptTokens + completionTokens);
+        usage.add("prompt_tokens_details", details);
+        return usage;
+    }
+
+    private static String errorJson(String message) {
+        JsonObject error = new JsonObject();
+        error.addProperty("message", message);
+
+        JsonObject json = new JsonObject();
+        json.add("error", error);
+        return json.toString();
+    }
+}
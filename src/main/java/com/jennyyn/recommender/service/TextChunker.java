@@ -0,0 +1,88 @@
+package com.jennyyn.recommender.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/*
+ * Splits long text into pieces that fit a size budget: on paragraph boundaries where
+ * possible, then between sentences, then between words. Small paragraphs are merged
+ * up to the budget. Tokens are estimated at ~4 characters each, which is close enough
+ * for English text with the OpenAI tokenizers.
+ */
+public final class TextChunker {
+
+    public static final int CHARS_PER_TOKEN = 4;
+
+    private static final String PARAGRAPH_SEPARATOR = "\n\n";
+    private static final Pattern PARAGRAPH_BREAK = Pattern.compile("\n\\s*\n");
+    private static final Pattern SENTENCE_END = Pattern.compile("(?<=[.!?][\"')\\]]?)\\s+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    // One piece of the text, and what separated it from the next piece ("" for the last one)
+    public record Chunk(String text, String separator) {
+    }
+
+    private TextChunker() {
+    }
+
+    public static int estimateTokens(String text) {
+        return (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    public static List<Chunk> split(String text, int maxChars) {
+        List<Chunk> chunks = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+
+        boolean firstParagraph = true;
+        for (String paragraph : PARAGRAPH_BREAK.split(text.replace("\r\n", "\n"))) {
+            String p = paragraph.strip();
+            if (p.isEmpty()) continue;
+
+            List<String> pieces = pieces(p, maxChars);
+            for (int i = 0; i < pieces.size(); i++) {
+                String piece = pieces.get(i);
+                String separator = i == 0 ? (firstParagraph ? "" : PARAGRAPH_SEPARATOR) : " ";
+
+                if (current.length() > 0 && current.length() + separator.length() + piece.length() > maxChars) {
+                    chunks.add(new Chunk(current.toString(), separator));
+                    current.setLength(0);
+                } else {
+                    current.append(separator);
+                }
+                current.append(piece);
+            }
+            firstParagraph = false;
+        }
+        if (current.length() > 0) chunks.add(new Chunk(current.toString(), ""));
+        return chunks;
+    }
+
+    // A paragraph that is too long becomes sentences; a sentence that is too long becomes runs of words
+    private static List<String> pieces(String paragraph, int maxChars) {
+        List<String> pieces = new ArrayList<>();
+        if (paragraph.length() <= maxChars) {
+            pieces.add(paragraph);
+            return pieces;
+        }
+
+        for (String sentence : SENTENCE_END.split(paragraph)) {
+            if (sentence.length() <= maxChars) {
+                pieces.add(sentence);
+                continue;
+            }
+
+            StringBuilder words = new StringBuilder();
+            for (String word : WHITESPACE.split(sentence)) {
+                if (words.length() > 0 && words.length() + 1 + word.length() > maxChars) {
+                    pieces.add(words.toString());
+                    words.setLength(0);
+                }
+                if (words.length() > 0) words.append(' ');
+                words.append(word); // a single word longer than maxChars stays whole
+            }
+            if (words.length() > 0) pieces.add(words.toString());
+        }
+        return pieces;
+    }
+}
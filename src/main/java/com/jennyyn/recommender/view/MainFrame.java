@@ -17,7 +17,7 @@ public class MainFrame extends JFrame {
         // Create WritingPanel first
         writingPanel = new WritingPanel();
 
-        //Create controller and pass references
+        //Create controller and pass references (services start in the background)
         controller = new MainController(this, writingPanel);
 
         //Put controller into WritingPanel
@@ -32,9 +32,18 @@ public class MainFrame extends JFrame {
         setVisible(true);
     }
 
+    public MainController getController() {
+        return controller;
+    }
+
     /** Called by the controller to display rewritten text */
     public void displayResult(String rewrittenText) {
         writingPanel.setOutputText(rewrittenText);
     }
+
+    /** Called by the controller for every streamed piece of the rewrite */
+    public void appendResult(String delta) {
+        writingPanel.appendOutputText(delta);
+    }
 }
 
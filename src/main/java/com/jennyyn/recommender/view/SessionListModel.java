@@ -0,0 +1,97 @@
+package com.jennyyn.recommender.view;
+
+import javax.swing.*;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * List model for the session history that only knows the number of sessions up front.
+ * Rows are fetched a page at a time when the JList asks for them (i.e. when they scroll
+ * into view) and only a few pages are kept in memory.
+ * For search results the model also knows which session each row is.
+ */
+public class SessionListModel extends AbstractListModel<String> {
+
+    public static final int PAGE_SIZE = 100;
+    private static final int MAX_CACHED_PAGES = 20;
+
+    // Loads rows [offset, offset + limit) as display strings
+    public interface PageLoader {
+        List<String> loadPage(int offset, int limit);
+    }
+
+    // Loads the rows of the given session positions as display strings
+    public interface RowLoader {
+        List<String> loadRows(int[] positions);
+    }
+
+    private final PageLoader loader;
+    private int size;
+    private int[] positions; // session position of every row; null = row i is session i
+
+    private final Map<Integer, List<String>> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<String>> eldest) {
+            return size() > MAX_CACHED_PAGES;
+        }
+    };
+
+    public SessionListModel(int size, PageLoader loader) {
+        this.size = size;
+        this.loader = loader;
+    }
+
+    // Only the given sessions (e.g. search results)
+    public SessionListModel(int[] positions, RowLoader loader) {
+        this.size = positions.length;
+        this.positions = positions;
+        this.loader = (offset, limit) -> loader.loadRows(
+                Arrays.copyOfRange(this.positions, offset, Math.min(this.positions.length, offset + limit)));
+    }
+
+    // Session position shown in a row
+    public int positionAt(int index) {
+        return positions == null ? index : positions[index];
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public String getElementAt(int index) {
+        int pageNumber = index / PAGE_SIZE;
+        List<String> page = pages.get(pageNumber);
+        if (page == null) {
+            page = loader.loadPage(pageNumber * PAGE_SIZE, PAGE_SIZE);
+            pages.put(pageNumber, page);
+        }
+        int row = index % PAGE_SIZE;
+        return row < page.size() ? page.get(row) : "";
+    }
+
+    // Rows after the removed one shift up, so cached pages are no longer valid
+    public void remove(int index) {
+        if (positions != null) {
+            // Sessions after the deleted one move up by one as well
+            int removed = positions[index];
+            int[] remaining = new int[positions.length - 1];
+            for (int i = 0, j = 0; i < positions.length; i++) {
+                if (i == index) continue;
+                remaining[j++] = positions[i] > removed ? positions[i] - 1 : positions[i];
+            }
+            positions = remaining;
+        }
+        size--;
+        pages.clear();
+        fireIntervalRemoved(this, index, index);
+    }
+
+    // Number of pages currently held in memory
+    int getCachedPageCount() {
+        return pages.size();
+    }
+}
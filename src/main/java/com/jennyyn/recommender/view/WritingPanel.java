@@ -1,18 +1,40 @@
 package com.jennyyn.recommender.view;
 
 import com.jennyyn.recommender.controller.MainController;
+import com.jennyyn.recommender.model.StrategyRegistry;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class WritingPanel extends JPanel {
 
+    // Live mode waits this long after the last keystroke before asking for a preview
+    static final int LIVE_DELAY_MILLIS = 600;
+
     private final JTextArea inputArea;
     private final JTextArea outputArea;
     private final JComboBox<String> modeDropdown;
     private final JLabel spinnerLabel;
     private final JButton cancelButton;
     private final JButton rewriteButton;
+    private final JCheckBox liveCheckBox = new JCheckBox("Live");
+    private final JLabel liveStatus = new JLabel();
+    private final Timer liveTimer = new Timer(LIVE_DELAY_MILLIS, e -> requestLivePreview());
+
+    // Bottom half: the output area, or one tab per strategy after an "All modes" rewrite
+    private final JPanel outputHolder;
+    private final JScrollPane singleOutput;
+    private final JTabbedPane strategyTabs = new JTabbedPane();
+    private final Map<String, JTextArea> strategyOutputs = new LinkedHashMap<>();
+    private final Map<String, StrategyTab> strategyTabHeaders = new LinkedHashMap<>();
 
     private MainController controller;
 
@@ -25,6 +47,24 @@ public class WritingPanel extends JPanel {
         inputArea.setLineWrap(true);        // enable line wrapping
         inputArea.setWrapStyleWord(true);   // wrap at word boundaries
 
+        // Live mode: every change restarts the timer, so a preview is only asked for once typing pauses
+        liveTimer.setRepeats(false);
+        inputArea.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                if (liveCheckBox.isSelected()) liveTimer.restart();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                if (liveCheckBox.isSelected()) liveTimer.restart();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+
         // ---- Output area ----
         outputArea = new JTextArea(8, 40);
         outputArea.setEditable(false);
@@ -33,8 +73,22 @@ public class WritingPanel extends JPanel {
         outputArea.setWrapStyleWord(true);
 
         // ---- Mode dropdown ----
-        String[] modes = {"Creative", "Academic", "Professional"};
-        modeDropdown = new JComboBox<>(modes);
+        // Built-in modes for now: the config ones are added by the controller once it's loaded
+        modeDropdown = new JComboBox<>();
+        setModes(StrategyRegistry.builtInNames());
+        modeDropdown.addActionListener(e -> {
+            if (liveCheckBox.isSelected()) liveTimer.restart();
+        });
+
+        liveCheckBox.setToolTipText("Rewrite while you type");
+        liveCheckBox.addActionListener(e -> {
+            if (liveCheckBox.isSelected()) {
+                liveTimer.restart();
+            } else {
+                liveTimer.stop();
+                if (controller != null) controller.handleLivePreviewStopped();
+            }
+        });
 
         // ---- Rewrite button ----
         rewriteButton = new JButton("Rewrite");
@@ -64,6 +118,8 @@ public class WritingPanel extends JPanel {
         modePanel.add(new JLabel("Mode:"));
         modePanel.add(modeDropdown);
         modePanel.add(rewriteButton);
+        modePanel.add(liveCheckBox);
+        modePanel.add(liveStatus);
 
         JPanel loadingPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         loadingPanel.add(spinnerLabel);
@@ -91,7 +147,10 @@ public class WritingPanel extends JPanel {
         // ---- Center panel (stack input/output vertically) ----
         JPanel centerPanel = new JPanel(new GridLayout(2, 1, 10, 10));
         centerPanel.add(new JScrollPane(inputArea));
-        centerPanel.add(new JScrollPane(outputArea));
+        singleOutput = new JScrollPane(outputArea);
+        outputHolder = new JPanel(new BorderLayout());
+        outputHolder.add(singleOutput, BorderLayout.CENTER);
+        centerPanel.add(outputHolder);
 
         // ---- Add everything ----
         add(topPanel, BorderLayout.NORTH);
@@ -99,21 +158,50 @@ public class WritingPanel extends JPanel {
         add(bottomPanel, BorderLayout.SOUTH);
     }
 
-    // shows the session
-    public void showSessionListWindow(String[] options, Runnable onLoad, Runnable onDelete) {
+    // shows the session list; search gives the model for a query ("" = every session)
+    // search and onDelete run in the background; the list follows once they complete
+    public void showSessionListWindow(SessionListModel listModel,
+                                      Function<String, CompletableFuture<SessionListModel>> search,
+                                      Runnable onLoad, Supplier<CompletableFuture<?>> onDelete) {
         JDialog dialog = new JDialog((Frame) null, "Session History", true);
         dialog.setSize(400, 300);
         dialog.setLayout(new BorderLayout());
 
-        DefaultListModel<String> listModel = new DefaultListModel<>();
-        for (String s : options) listModel.addElement(s);
-
         JList<String> list = new JList<>(listModel);
         list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        // Fixed row size: otherwise JList asks for every row up front to measure it
+        list.setPrototypeCellValue("Session 100000: " + "x".repeat(30) + "...");
 
         JScrollPane scrollPane = new JScrollPane(list);
         dialog.add(scrollPane, BorderLayout.CENTER);
 
+        // Search box: the list is replaced with the matches on every keystroke (the index answers in ms);
+        // an answer for text that has been typed over since is dropped
+        JTextField searchField = new JTextField();
+        searchField.setBorder(BorderFactory.createTitledBorder("Search (\"quotes\" for a phrase)"));
+        Runnable runSearch = () -> {
+            String query = searchField.getText().trim();
+            search.apply(query).thenAccept(model -> SwingUtilities.invokeLater(() -> {
+                if (query.equals(searchField.getText().trim())) list.setModel(model);
+            }));
+        };
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                runSearch.run();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                runSearch.run();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+        dialog.add(searchField, BorderLayout.NORTH);
+
         // Buttons (hidden until selection)
         JButton loadBtn = new JButton("Load Selected");
         JButton deleteBtn = new JButton("Delete Selected");
@@ -139,7 +227,8 @@ public class WritingPanel extends JPanel {
         loadBtn.addActionListener(e -> {
             int index = list.getSelectedIndex();
             if (index >= 0) {
-                WritingPanel.this.putClientProperty("selectedIndex", index);
+                SessionListModel model = (SessionListModel) list.getModel();
+                WritingPanel.this.putClientProperty("selectedIndex", model.positionAt(index));
                 onLoad.run();
                 dialog.dispose();
             }
@@ -148,11 +237,13 @@ public class WritingPanel extends JPanel {
         deleteBtn.addActionListener(e -> {
             int index = list.getSelectedIndex();
             if (index >= 0) {
-                WritingPanel.this.putClientProperty("selectedIndex", index);
-                onDelete.run();
-                listModel.remove(index);
+                SessionListModel model = (SessionListModel) list.getModel();
+                WritingPanel.this.putClientProperty("selectedIndex", model.positionAt(index));
                 loadBtn.setVisible(false);
                 deleteBtn.setVisible(false);
+                onDelete.get().thenRun(() -> SwingUtilities.invokeLater(() -> {
+                    if (list.getModel() == model) model.remove(index);
+                }));
             }
         });
 
@@ -174,18 +265,132 @@ public class WritingPanel extends JPanel {
         inputArea.setText(text);
     }
 
+    // With strategy tabs, the text of the selected one (that's what Save stores)
     public String getRewrittenText() {
+        if (!strategyOutputs.isEmpty()) {
+            int selected = strategyTabs.getSelectedIndex();
+            if (selected >= 0) return List.copyOf(strategyOutputs.values()).get(selected).getText();
+        }
         return outputArea.getText();
     }
 
     public void setRewrittenText(String text) {
+        showSingleOutput();
         outputArea.setText(text);
     }
 
     public void setOutputText(String text) {
+        showSingleOutput();
         outputArea.setText(text);
     }
 
+    public void appendOutputText(String text) {
+        outputArea.append(text);
+    }
+
+    // ---- One tab per strategy ----
+
+    // Replaces the output area with an empty tab for each strategy
+    public void showStrategyTabs(List<String> strategies) {
+        strategyTabs.removeAll();
+        strategyOutputs.clear();
+        strategyTabHeaders.clear();
+        for (String strategy : strategies) {
+            JTextArea area = new JTextArea();
+            area.setEditable(false);
+            area.setLineWrap(true);
+            area.setWrapStyleWord(true);
+            strategyOutputs.put(strategy, area);
+
+            StrategyTab header = new StrategyTab(strategy);
+            strategyTabHeaders.put(strategy, header);
+            strategyTabs.addTab(strategy, new JScrollPane(area));
+            strategyTabs.setTabComponentAt(strategyTabs.getTabCount() - 1, header);
+        }
+        outputHolder.removeAll();
+        outputHolder.add(strategyTabs, BorderLayout.CENTER);
+        outputHolder.revalidate();
+        outputHolder.repaint();
+    }
+
+    // Back to the single output area
+    public void showSingleOutput() {
+        if (strategyOutputs.isEmpty()) return;
+        strategyTabs.removeAll();
+        strategyOutputs.clear();
+        strategyTabHeaders.clear();
+        outputHolder.removeAll();
+        outputHolder.add(singleOutput, BorderLayout.CENTER);
+        outputHolder.revalidate();
+        outputHolder.repaint();
+    }
+
+    public void appendStrategyOutput(String strategy, String text) {
+        JTextArea area = strategyOutputs.get(strategy);
+        if (area != null) area.append(text);
+    }
+
+    public void setStrategyOutput(String strategy, String text) {
+        JTextArea area = strategyOutputs.get(strategy);
+        if (area != null) area.setText(text);
+    }
+
+    // Shown next to the strategy name once it has finished ("done", "failed", ...); hides its cancel button
+    public void setStrategyStatus(String strategy, String status) {
+        StrategyTab header = strategyTabHeaders.get(strategy);
+        if (header != null) header.setStatus(status);
+    }
+
+    // Tab title with a small button that cancels just this strategy
+    private class StrategyTab extends JPanel {
+        private final String strategy;
+        private final JLabel title;
+        private final JButton cancel = new JButton("\u00D7");
+
+        StrategyTab(String strategy) {
+            super(new FlowLayout(FlowLayout.LEFT, 4, 0));
+            this.strategy = strategy;
+            this.title = new JLabel(strategy + " ...");
+            setOpaque(false);
+
+            cancel.setToolTipText("Cancel " + strategy);
+            cancel.setBorder(BorderFactory.createEmptyBorder());
+            cancel.setContentAreaFilled(false);
+            cancel.addActionListener(e -> {
+                if (controller != null) controller.handleCancelStrategyRequest(strategy);
+            });
+            add(title);
+            add(cancel);
+        }
+
+        void setStatus(String status) {
+            title.setText(strategy + " (" + status + ")");
+            cancel.setVisible(false);
+        }
+    }
+
+    // ---- Live mode ----
+
+    private void requestLivePreview() {
+        if (controller != null && liveCheckBox.isSelected()) {
+            controller.handleLivePreviewRequest(inputArea.getText(), (String) modeDropdown.getSelectedItem());
+        }
+    }
+
+    // Fills the mode dropdown ("All modes" last), keeping the selected mode if it is still there
+    public void setModes(List<String> names) {
+        Object selected = modeDropdown.getSelectedItem();
+        DefaultComboBoxModel<String> modes = new DefaultComboBoxModel<>(names.toArray(new String[0]));
+        modes.addElement(StrategyRegistry.ALL_MODES);
+        if (selected != null && modes.getIndexOf(selected) >= 0) modes.setSelectedItem(selected);
+        modeDropdown.setModel(modes);
+    }
+
+    // Next to the Live box: "updating...", an error, or "" when the preview is current
+    public void setLiveStatus(String status) {
+        liveStatus.setText(status);
+    }
+
     // ---- Loading state ----
     public void showLoadingState(boolean loading) {
         spinnerLabel.setVisible(loading);
@@ -0,0 +1,44 @@
+package com.jennyyn.recommender;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Command line parsing of --batch
+class MainTest {
+
+    @Test
+    void batchOptionsHaveDefaults() {
+        Main.BatchOptions options = Main.parseBatchOptions(new String[] {"--batch", "notes.txt"});
+
+        assertEquals(Path.of("notes.txt"), options.input());
+        assertEquals(Path.of("notes.txt.rewritten"), options.output());
+        assertEquals("Creative", options.mode());
+        assertEquals(4, options.concurrency());
+    }
+
+    @Test
+    void batchOptionsAreRead() {
+        Main.BatchOptions options = Main.parseBatchOptions(new String[] {
+                "--batch", "in", "--mode", "Academic", "--concurrency", "8", "--output", "out"});
+
+        assertEquals(Path.of("out"), options.output());
+        assertEquals("Academic", options.mode());
+        assertEquals(8, options.concurrency());
+    }
+
+    @Test
+    void badBatchOptionsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> Main.parseBatchOptions(new String[] {"--batch"}));
+        assertThrows(IllegalArgumentException.class,
+                () -> Main.parseBatchOptions(new String[] {"--batch", "in", "--mode"}));
+        assertThrows(IllegalArgumentException.class,
+                () -> Main.parseBatchOptions(new String[] {"--batch", "in", "--verbose"}));
+        assertThrows(IllegalArgumentException.class,
+                () -> Main.parseBatchOptions(new String[] {"--batch", "in", "--ouput", "out"}));
+        assertThrows(IllegalArgumentException.class,
+                () -> Main.parseBatchOptions(new String[] {"--batch", "in", "--concurrency", "many"}));
+    }
+}
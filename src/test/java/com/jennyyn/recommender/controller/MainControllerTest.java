@@ -16,8 +16,10 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import javax.swing.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -49,7 +51,7 @@ class MainControllerTest {
     void handleRewriteRequest_emptyInput_doesNothing() {
         controller.handleRewriteRequest("", "Creative");
 
-        verify(apiService, never()).rewriteTextAsync(any(), any(), any(), any(), any());
+        verify(apiService, never()).rewriteTextAsync(any(), any(), any(), any(), any(), any());
     }
 
     // --------------------------------------------------
@@ -60,9 +62,10 @@ class MainControllerTest {
         ArgumentCaptor<Consumer<RewriteResult>> successCaptor =
                 ArgumentCaptor.forClass(Consumer.class);
 
-        doNothing().when(apiService).rewriteTextAsync(
+        doReturn(null).when(apiService).rewriteTextAsync(
                 anyString(),
                 any(),
+                any(),
                 successCaptor.capture(),
                 any(),
                 any()
@@ -79,6 +82,34 @@ class MainControllerTest {
         verify(mainFrame).displayResult("Rewritten text");
     }
 
+    // --------------------------------------------------
+    // 2b. Streamed deltas are appended as they arrive
+    // --------------------------------------------------
+    @Test
+    void handleRewriteRequest_streaming_appendsDeltas() throws Exception {
+        ArgumentCaptor<Consumer<String>> deltaCaptor =
+                ArgumentCaptor.forClass(Consumer.class);
+
+        doReturn(null).when(apiService).rewriteTextAsync(
+                anyString(),
+                any(),
+                deltaCaptor.capture(),
+                any(),
+                any(),
+                any()
+        );
+
+        controller.handleRewriteRequest("Hello", "Creative");
+
+        deltaCaptor.getValue().accept("Re");
+        deltaCaptor.getValue().accept("written");
+
+        SwingUtilities.invokeAndWait(() -> { /* no-op, just flush EDT */ });
+
+        verify(mainFrame).appendResult("Re");
+        verify(mainFrame).appendResult("written");
+    }
+
     // --------------------------------------------------
     // 3. Cancel request stops API and resets UI
     // --------------------------------------------------
@@ -94,5 +125,44 @@ class MainControllerTest {
         verify(writingPanel).setRewriteEnabled(true);
     }
 
-}
+    // --------------------------------------------------
+    // 4. Clicks during startup are queued, not waited for on the EDT
+    // --------------------------------------------------
+    @Test
+    void clicksBeforeServicesAreReady_runOnceTheyAre() throws Exception {
+        CompletableFuture<APIService> starting = new CompletableFuture<>();
+        controller = new MainController(starting, CompletableFuture.completedFuture(fileService), mainFrame, writingPanel);
+        when(writingPanel.getOriginalText()).thenReturn("original");
+        when(writingPanel.getRewrittenText()).thenReturn("rewritten");
+        when(fileService.saveSessionAsync("original", "rewritten")).thenReturn(CompletableFuture.completedFuture(1L));
+
+        SwingUtilities.invokeAndWait(() -> {
+            controller.handleSaveRequest();
+            controller.handleCancelRequest();
+        });
+        verify(fileService, never()).saveSessionAsync(any(), any());
+
+        starting.complete(apiService);
+        SwingUtilities.invokeAndWait(() -> {}); // runs the queued clicks
+
+        verify(fileService).saveSessionAsync("original", "rewritten");
+        verify(apiService).cancel();
+    }
 
+    // --------------------------------------------------
+    // 5. The history is read off the EDT
+    // --------------------------------------------------
+    @Test
+    void handleLoadRequest_countsSessionsInTheBackground() throws Exception {
+        CompletableFuture<String> countedOn = new CompletableFuture<>();
+        when(fileService.getSessionCount()).thenAnswer(invocation -> {
+            countedOn.complete(Thread.currentThread().getName());
+            return 0; // no window for an empty history
+        });
+
+        SwingUtilities.invokeAndWait(controller::handleLoadRequest);
+
+        assertEquals("session-io", countedOn.get(5, java.util.concurrent.TimeUnit.SECONDS));
+    }
+
+}
@@ -0,0 +1,42 @@
+package com.jennyyn.recommender.model;
+
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JsonBufferTest {
+
+    private static String roundTrip(String text) {
+        JsonBuffer buffer = new JsonBuffer(0).ascii("\"").string(text).ascii("\"");
+        String json = new String(buffer.array(), 0, buffer.length(), StandardCharsets.UTF_8);
+        return JsonParser.parseString(json).getAsString();
+    }
+
+    @Test
+    void escapesQuotesBackslashesAndControlCharacters() {
+        String text = "say \"hi\"\\ \n\r\t\b\f\u0000\u001f end";
+        assertEquals(text, roundTrip(text));
+        assertEquals("a\\\"b\\\\c\\nd\\u0001", new String(JsonBuffer.escape("a\"b\\c\nd\u0001"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void encodesUtf8IncludingSurrogatePairs() {
+        String text = "café naïve ✓ 日本語 😀 𝄞";
+        assertEquals(text, roundTrip(text));
+        assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), JsonBuffer.escape(text));
+    }
+
+    @Test
+    void loneSurrogatesAreEscaped() {
+        assertEquals("x\\ud800y", new String(JsonBuffer.escape("x\ud800y"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void growsForLongInput() {
+        String text = "\"".repeat(10_000) + "é".repeat(10_000);
+        assertEquals(text, roundTrip(text));
+    }
+}
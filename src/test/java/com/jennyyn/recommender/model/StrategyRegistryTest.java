@@ -0,0 +1,61 @@
+package com.jennyyn.recommender.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StrategyRegistryTest {
+
+    @Test
+    void configStrategiesComeAfterTheBuiltInOnes() {
+        Properties config = new Properties();
+        config.setProperty("STRATEGY.Shorter", "Make the following text shorter:");
+        config.setProperty("STRATEGY.Pirate", "Rewrite the text like a pirate.");
+        config.setProperty("STRATEGY.Pirate.PROMPT", "Arr, this one:\n\n{text}\n\nThanks!");
+
+        StrategyRegistry registry = new StrategyRegistry(config);
+
+        assertEquals(List.of("Creative", "Academic", "Professional", "Pirate", "Shorter"), registry.names());
+        assertEquals("Rewrite the text like a pirate.\n\nArr, this one:\n\nHello\n\nThanks!",
+                registry.get("Pirate").buildPrompt("Hello"));
+        assertEquals("Make the following text shorter:\n\nHello", registry.get("Shorter").buildPrompt("Hello"));
+    }
+
+    @Test
+    void templateWithoutPlaceholderIsSkipped() {
+        Properties config = new Properties();
+        config.setProperty("STRATEGY.Broken", "Instructions");
+        config.setProperty("STRATEGY.Broken.PROMPT", "no placeholder here");
+
+        assertEquals(List.of("Creative", "Academic", "Professional"), new StrategyRegistry(config).names());
+        assertThrows(IllegalArgumentException.class, () -> new PromptTemplate("Broken", "", "text"));
+    }
+
+    @Test
+    void unknownNameFallsBackToTheFirstStrategy() {
+        StrategyRegistry registry = new StrategyRegistry(new Properties());
+
+        assertSame(registry.get("Creative"), registry.get("Nonsense"));
+        assertSame(registry.get("Creative"), registry.get(null));
+        assertSame(registry.get("Academic"), registry.get("Academic")); // compiled once, not per request
+    }
+
+    @Test
+    void builtInPromptsAreUnchanged() {
+        assertEquals("Rewrite the following text in a creative, expressive style:\n\nHello world",
+                new CreativeStrategy().buildPrompt("Hello world"));
+        assertEquals("Note\n\n", new CreativeStrategy().withContext("Note").buildPrompt("")
+                .substring("Rewrite the following text in a creative, expressive style:\n\n".length()));
+    }
+
+    @Test
+    void idChangesWithThePromptButNotTheInstance() {
+        assertEquals(new CreativeStrategy().getId(), new CreativeStrategy().getId());
+        assertNotEquals(new CreativeStrategy().getId(), new AcademicStrategy().getId());
+        assertNotEquals(new CreativeStrategy().getId(), new CreativeStrategy().withContext("Note").getId());
+        assertNotEquals(new PromptTemplate("A", "ab", "{text}").getId(), new PromptTemplate("A", "a", "b{text}").getId());
+    }
+}
@@ -9,9 +9,24 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
 
+import javax.net.ssl.SSLSession;
+import java.net.URI;
 import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -25,11 +40,48 @@ class APIServiceTest {
     HttpClient mockHttpClient;
     @Mock
     WritingStrategy mockStrategy;
-    @Mock
-    HttpResponse<String> mockResponse;
 
     APIService service;
 
+    // ---- sendAsync stand-in: runs the service's body handler over a canned response ----
+    record FakeInfo(int statusCode, HttpHeaders headers, HttpClient.Version version)
+            implements HttpResponse.ResponseInfo {
+    }
+
+    record FakeResponse<T>(int statusCode, T body) implements HttpResponse<T> {
+        public HttpRequest request() { return null; }
+        public Optional<HttpResponse<T>> previousResponse() { return Optional.empty(); }
+        public HttpHeaders headers() { return HttpHeaders.of(Map.of(), (k, v) -> true); }
+        public Optional<SSLSession> sslSession() { return Optional.empty(); }
+        public URI uri() { return null; }
+        public HttpClient.Version version() { return HttpClient.Version.HTTP_1_1; }
+    }
+
+    private static Answer<CompletableFuture<HttpResponse<Object>>> respond(int status, String body) {
+        return respondAfter(0, status, body);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Answer<CompletableFuture<HttpResponse<Object>>> respondAfter(long millis, int status, String body) {
+        return invocation -> {
+            HttpResponse.BodyHandler<Object> handler = invocation.getArgument(1);
+            return CompletableFuture.runAsync(() -> { },
+                            CompletableFuture.delayedExecutor(millis, TimeUnit.MILLISECONDS))
+                    .thenCompose(ignored -> {
+                        HttpResponse.BodySubscriber<Object> subscriber = handler.apply(new FakeInfo(status,
+                                HttpHeaders.of(Map.of(), (k, v) -> true), HttpClient.Version.HTTP_1_1));
+                        subscriber.onSubscribe(new Flow.Subscription() {
+                            public void request(long n) { }
+                            public void cancel() { }
+                        });
+                        subscriber.onNext(List.of(ByteBuffer.wrap(body.getBytes(StandardCharsets.UTF_8))));
+                        subscriber.onComplete();
+                        return subscriber.getBody().toCompletableFuture();
+                    })
+                    .thenApply(b -> new FakeResponse<>(status, b));
+        };
+    }
+
     @BeforeEach
     void setup() {
         service = new APIService(mockApiClient, mockHttpClient);
@@ -48,11 +100,7 @@ class APIServiceTest {
                   ]
                 }
                 """;
-        when(mockResponse.body()).thenReturn(json);
-        when(mockHttpClient.send(
-                any(java.net.http.HttpRequest.class),
-                any(HttpResponse.BodyHandler.class)
-        )).thenReturn(mockResponse);
+        when(mockHttpClient.sendAsync(any(), any())).thenAnswer(respond(200, json));
 
 
         RewriteResult result = service.rewriteText("Hello", mockStrategy);
@@ -69,11 +117,7 @@ class APIServiceTest {
                   "error": { "message": "Rate limit exceeded" }
                 }
                 """;
-        when(mockResponse.body()).thenReturn(json);
-        when(mockHttpClient.send(
-                any(java.net.http.HttpRequest.class),
-                any(HttpResponse.BodyHandler.class)
-        )).thenReturn(mockResponse);
+        when(mockHttpClient.sendAsync(any(), any())).thenAnswer(respond(200, json));
 
 
         RateLimitException ex = assertThrows(RateLimitException.class,
@@ -91,11 +135,7 @@ class APIServiceTest {
                   "error": { "message": "Bad API request" }
                 }
                 """;
-        when(mockResponse.body()).thenReturn(json);
-        when(mockHttpClient.send(
-                any(java.net.http.HttpRequest.class),
-                any(HttpResponse.BodyHandler.class)
-        )).thenReturn(mockResponse);
+        when(mockHttpClient.sendAsync(any(), any())).thenAnswer(respond(200, json));
 
 
         Exception ex = assertThrows(Exception.class,
@@ -104,12 +144,39 @@ class APIServiceTest {
         assertTrue(ex.getMessage().contains("Bad API request"));
     }
 
+    @Test
+    void testResponseOfUnexpectedShapeGetsAReadableMessage() throws Exception {
+        when(mockStrategy.buildPrompt(anyString())).thenReturn("Prompt");
+
+        // JsonReader.nextInt throws NumberFormatException on 1.5, past the parser's own checks
+        String json = """
+                {
+                  "choices": [ { "message": { "content": "Hello" } } ],
+                  "usage": { "prompt_tokens": 1.5 }
+                }
+                """;
+        String events = String.join("\n",
+                "data: {\"choices\":[{\"delta\":{\"content\":\"Hello\"}}],\"usage\":{\"prompt_tokens\":1.5}}",
+                "");
+        when(mockHttpClient.sendAsync(any(), any()))
+                .thenAnswer(respond(200, json))
+                .thenAnswer(respond(200, events));
+
+        Exception ex = assertThrows(Exception.class,
+                () -> service.rewriteText("Hi", mockStrategy));
+        assertEquals("Unexpected API response format.", ex.getMessage());
+
+        Exception streamed = assertThrows(Exception.class,
+                () -> service.rewriteTextStreaming("Hi", mockStrategy, d -> {}));
+        assertEquals("Unexpected API response format.", streamed.getMessage());
+    }
+
     @Test
     void testTimeoutException() throws Exception {
         when(mockStrategy.buildPrompt(anyString())).thenReturn("Prompt");
 
-        when(mockHttpClient.send(any(), any()))
-                .thenThrow(new java.net.http.HttpTimeoutException("timeout"));
+        when(mockHttpClient.sendAsync(any(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new java.net.http.HttpTimeoutException("timeout")));
 
         Exception ex = assertThrows(Exception.class,
                 () -> service.rewriteText("Hi", mockStrategy));
@@ -121,16 +188,9 @@ class APIServiceTest {
     void testRewriteTextAsyncCancel() throws Exception {
         when(mockStrategy.buildPrompt(anyString())).thenReturn("Prompt");
 
-        // Simulate a "blocking" HTTP call that respects interrupt
-        when(mockHttpClient.send(any(), any())).thenAnswer(invocation -> {
-            // Check if current thread is interrupted during sleep
-            try {
-                Thread.sleep(2000);
-            } catch (InterruptedException e) {
-                throw e; // propagate as InterruptedException
-            }
-            return mockResponse;
-        });
+        // An exchange that never answers; cancel has to abort it
+        CompletableFuture<HttpResponse<Object>> exchange = new CompletableFuture<>();
+        when(mockHttpClient.sendAsync(any(), any())).thenReturn(exchange);
 
         boolean[] successCalled = {false};
         boolean[] errorCalled = {false};
@@ -143,13 +203,186 @@ class APIServiceTest {
                 () -> {}
         );
 
-        Thread.sleep(100); // let async thread start
+        Thread.sleep(100); // let the request reach sendAsync
         service.cancel();   // request cancellation
 
-        Thread.sleep(100); // give async thread time to handle cancel
+        Thread.sleep(100); // give the pipeline time to handle cancel
 
         assertFalse(successCalled[0], "Success callback should NOT be called");
         assertTrue(errorCalled[0], "Error callback SHOULD be called with InterruptedException");
+        assertTrue(exchange.isCancelled(), "The HTTP exchange should be aborted");
+    }
+
+    @Test
+    void testRewriteTextStreamingDeliversDeltas() throws Exception {
+        when(mockStrategy.buildPrompt("Hello")).thenReturn("Prompted Text");
+
+        String events = String.join("\n",
+                "data: {\"choices\":[{\"delta\":{\"role\":\"assistant\"}}]}",
+                "",
+                "data: {\"choices\":[{\"delta\":{\"content\":\"Rewritten\"}}]}",
+                "",
+                "data: {\"choices\":[{\"delta\":{\"content\":\" OK\"}}]}",
+                "",
+                "data: [DONE]",
+                "");
+        when(mockHttpClient.sendAsync(any(), any())).thenAnswer(respond(200, events));
+
+        List<String> deltas = new ArrayList<>();
+        RewriteResult result = service.rewriteTextStreaming("Hello", mockStrategy, deltas::add);
+
+        assertEquals(List.of("Rewritten", " OK"), deltas);
+        assertEquals("Rewritten OK", result.getRewrittenText());
+        assertTrue(service.getLastTimeToFirstTokenMillis() >= 0);
+    }
+
+    @Test
+    void testRewriteTextStreamingRateLimitError() throws Exception {
+        when(mockStrategy.buildPrompt(anyString())).thenReturn("Prompt");
+
+        when(mockHttpClient.sendAsync(any(), any())).thenAnswer(respond(429,
+                "{ \"error\": { \"message\": \"Rate limit exceeded\" } }"));
+
+        assertThrows(RateLimitException.class,
+                () -> service.rewriteTextStreaming("Hi", mockStrategy, d -> {}));
+    }
+
+    @Test
+    void testCachedRewriteSkipsNetwork() throws Exception {
+        when(mockStrategy.buildPrompt("Hello")).thenReturn("Prompted Text");
+        service.setCache(new RewriteCache(10, 0, null));
+
+        String json = """
+                {
+                  "choices": [
+                    { "message": { "content": "Rewritten OK" } }
+                  ]
+                }
+                """;
+        when(mockHttpClient.sendAsync(any(), any())).thenAnswer(respond(200, json));
+
+        service.rewriteCached("Hello", mockStrategy, d -> {});
+        RewriteResult second = service.rewriteCached("Hello", mockStrategy, d -> {});
+
+        assertEquals("Rewritten OK", second.getRewrittenText());
+        verify(mockHttpClient, times(1)).sendAsync(any(), any());
+        assertEquals(1, service.getCache().getHitCount());
+    }
+
+    @Test
+    void testCancellingOneRequestLeavesOthersRunning() throws Exception {
+        when(mockStrategy.buildPrompt(anyString())).thenAnswer(inv -> inv.getArgument(0));
+        when(mockHttpClient.sendAsync(any(), any())).thenAnswer(respondAfter(300, 200, """
+                { "choices": [ { "message": { "content": "done" } } ] }
+                """));
+
+        CountDownLatch finished = new CountDownLatch(2);
+        RewriteHandle first = service.rewriteTextAsync("one", mockStrategy, r -> {}, e -> {}, finished::countDown);
+        RewriteHandle second = service.rewriteTextAsync("two", mockStrategy, r -> {}, e -> {}, finished::countDown);
+
+        assertNotEquals(first.getId(), second.getId());
+        Thread.sleep(100);
+        first.cancel();
+
+        assertTrue(finished.await(2, TimeUnit.SECONDS));
+        assertTrue(first.getFuture().isCompletedExceptionally());
+        assertEquals("done", second.getFuture().get().getRewrittenText());
+        assertEquals(0, service.getActiveRequestCount());
+    }
+
+    @Test
+    void testManyConcurrentRequestsDoNotNeedAThreadEach() throws Exception {
+        when(mockStrategy.buildPrompt(anyString())).thenAnswer(inv -> inv.getArgument(0));
+        when(mockHttpClient.sendAsync(any(), any())).thenAnswer(respondAfter(200, 200, """
+                { "choices": [ { "message": { "content": "done" } } ] }
+                """));
+
+        int requests = 500;
+        CountDownLatch finished = new CountDownLatch(requests);
+        int threadsBefore = Thread.activeCount(); // platform threads only
+        for (int i = 0; i < requests; i++) {
+            service.rewriteTextAsync("text " + i, mockStrategy, r -> {}, e -> {}, finished::countDown);
+        }
+
+        assertTrue(Thread.activeCount() - threadsBefore < 50);
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertEquals(0, service.getActiveRequestCount());
+    }
+
+    @Test
+    void testIdenticalRequestsShareOneCall() throws Exception {
+        when(mockStrategy.buildPrompt(anyString())).thenReturn("Prompt");
+        when(mockHttpClient.sendAsync(any(), any())).thenAnswer(respondAfter(300, 200, """
+                { "choices": [ { "message": { "content": "done" } } ] }
+                """));
+
+        CountDownLatch finished = new CountDownLatch(3);
+        RewriteHandle first = service.rewriteTextAsync("Hi", mockStrategy, r -> {}, e -> {}, finished::countDown);
+        RewriteHandle second = service.rewriteTextAsync("Hi", mockStrategy, r -> {}, e -> {}, finished::countDown);
+        RewriteHandle third = service.rewriteTextAsync("Hi", mockStrategy, r -> {}, e -> {}, finished::countDown);
+
+        Thread.sleep(100);
+        first.cancel(); // the others still wait for the call
+
+        assertTrue(finished.await(2, TimeUnit.SECONDS));
+        assertTrue(first.getFuture().isCompletedExceptionally());
+        assertEquals("done", second.getFuture().get().getRewrittenText());
+        assertEquals("done", third.getFuture().get().getRewrittenText());
+        verify(mockHttpClient, times(1)).sendAsync(any(), any());
+    }
+
+    @Test
+    void testSharedCallIsAbortedWhenEveryoneCancels() throws Exception {
+        when(mockStrategy.buildPrompt(anyString())).thenReturn("Prompt");
+        CompletableFuture<HttpResponse<Object>> exchange = new CompletableFuture<>();
+        when(mockHttpClient.sendAsync(any(), any())).thenReturn(exchange);
+
+        RewriteHandle first = service.rewriteTextAsync("Hi", mockStrategy, r -> {}, e -> {}, () -> {});
+        RewriteHandle second = service.rewriteTextAsync("Hi", mockStrategy, r -> {}, e -> {}, () -> {});
+
+        Thread.sleep(100);
+        first.cancel();
+        assertFalse(exchange.isCancelled());
+
+        second.cancel();
+        assertTrue(exchange.isCancelled());
+        assertTrue(second.getFuture().isCompletedExceptionally());
+        assertEquals(0, service.getActiveRequestCount());
+    }
+
+    @Test
+    void testRateLimitedRequestIsRetried() throws Exception {
+        when(mockStrategy.buildPrompt(anyString())).thenReturn("Prompt");
+        service.setRateLimiter(new RateLimiter(6000), 2);
+
+        when(mockHttpClient.sendAsync(any(), any()))
+                .thenAnswer(respond(429, "{ \"error\": { \"message\": \"Rate limit exceeded\" } }"))
+                .thenAnswer(respond(200, "{ \"choices\": [ { \"message\": { \"content\": \"Rewritten OK\" } } ] }"));
+
+        RewriteResult result = service.rewriteText("Hi", mockStrategy);
+
+        assertEquals("Rewritten OK", result.getRewrittenText());
+        verify(mockHttpClient, times(2)).sendAsync(any(), any());
+    }
+
+    @Test
+    void testRateLimitErrorAfterStreamedTextIsNotRetried() throws Exception {
+        when(mockStrategy.buildPrompt(anyString())).thenReturn("Prompt");
+        service.setRateLimiter(new RateLimiter(6000), 2);
+
+        String events = String.join("\n",
+                "data: {\"choices\":[{\"delta\":{\"content\":\"Half a\"}}]}",
+                "",
+                "data: {\"error\":{\"message\":\"Rate limit reached for requests\"}}",
+                "");
+        when(mockHttpClient.sendAsync(any(), any())).thenAnswer(respond(200, events));
+
+        List<String> deltas = new ArrayList<>();
+        assertThrows(RateLimitException.class,
+                () -> service.rewriteTextStreaming("Hi", mockStrategy, deltas::add));
+
+        assertEquals(List.of("Half a"), deltas);
+        verify(mockHttpClient, times(1)).sendAsync(any(), any());
     }
 
 
@@ -0,0 +1,44 @@
+package com.jennyyn.recommender.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncPermitsTest {
+
+    @Test
+    void waitersGetPermitsInOrder() {
+        AsyncPermits permits = new AsyncPermits(1);
+
+        CompletableFuture<Void> first = permits.acquire();
+        CompletableFuture<Void> second = permits.acquire();
+        CompletableFuture<Void> third = permits.acquire();
+        assertTrue(first.isDone());
+        assertFalse(second.isDone());
+
+        permits.release();
+        assertTrue(second.isDone());
+        assertFalse(third.isDone());
+
+        permits.release();
+        permits.release();
+        assertTrue(third.isDone());
+        assertEquals(1, permits.availablePermits());
+    }
+
+    @Test
+    void cancelledWaiterIsSkipped() {
+        AsyncPermits permits = new AsyncPermits(1);
+
+        permits.acquire();
+        CompletableFuture<Void> cancelled = permits.acquire();
+        CompletableFuture<Void> next = permits.acquire();
+        cancelled.cancel(false);
+
+        permits.release();
+        assertTrue(next.isDone() && !next.isCompletedExceptionally());
+        assertEquals(0, permits.availablePermits());
+    }
+}
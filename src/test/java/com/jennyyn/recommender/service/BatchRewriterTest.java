@@ -0,0 +1,67 @@
+package com.jennyyn.recommender.service;
+
+import com.jennyyn.recommender.model.RewriteResult;
+import com.jennyyn.recommender.model.WritingStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class BatchRewriterTest {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void resultsAreWrittenInOrderWithBoundedParallelism() throws Exception {
+        APIService apiService = mock(APIService.class);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        Random random = new Random(42);
+
+        // Fake API: uppercases the chunk after a random delay, so chunks finish out of order
+        when(apiService.rewriteTextAsync(anyString(), any(), any(), any(), any())).thenAnswer(inv -> {
+            String text = inv.getArgument(0);
+            Consumer<RewriteResult> onSuccess = inv.getArgument(2);
+            Runnable onFinally = inv.getArgument(4);
+            int delay = random.nextInt(20);
+
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.startVirtualThread(() -> {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ignored) {
+                }
+                inFlight.decrementAndGet();
+                onSuccess.accept(new RewriteResult(text.toUpperCase()));
+                onFinally.run();
+            });
+            return null;
+        });
+
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 30; i++) input.append("paragraph ").append(i).append("\n\n");
+
+        StringWriter out = new StringWriter();
+        AtomicInteger progress = new AtomicInteger();
+        BatchRewriter batch = new BatchRewriter(apiService, mock(WritingStrategy.class), 3, 20);
+
+        int chunks = batch.rewrite(Path.of("doc.txt"), input.toString(), out,
+                (file, done, total) -> progress.set(done));
+
+        assertEquals(30, chunks);
+        assertEquals(30, progress.get());
+        assertTrue(maxInFlight.get() <= 3);
+
+        String result = out.toString();
+        for (int i = 1; i < 30; i++) {
+            assertTrue(result.indexOf("PARAGRAPH " + (i - 1)) < result.indexOf("PARAGRAPH " + i));
+        }
+    }
+}
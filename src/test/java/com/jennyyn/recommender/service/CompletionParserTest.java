@@ -0,0 +1,63 @@
+package com.jennyyn.recommender.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompletionParserTest {
+
+    @Test
+    void readsContentAndUsageAndSkipsTheRest() throws Exception {
+        CompletionParser.Completion c = CompletionParser.parse("""
+                {
+                  "id": "chatcmpl-1",
+                  "choices": [
+                    { "index": 0, "logprobs": null,
+                      "message": { "role": "assistant", "content": "Hello \\"there\\"", "refusal": null },
+                      "finish_reason": "stop" },
+                    { "index": 1, "message": { "content": "second" } }
+                  ],
+                  "usage": { "prompt_tokens": 12, "completion_tokens": 3,
+                             "prompt_tokens_details": { "cached_tokens": 0 } },
+                  "system_fingerprint": "fp"
+                }
+                """);
+
+        assertTrue(c.hasChoices());
+        assertEquals("Hello \"there\"", c.content());
+        assertNull(c.errorMessage());
+        assertEquals(12, c.promptTokens());
+        assertEquals(3, c.completionTokens());
+    }
+
+    @Test
+    void readsCachedTokensOfTheLastStreamedChunk() throws Exception {
+        CompletionParser.Completion c = CompletionParser.parseChunk("""
+                {"choices":[],"usage":{"prompt_tokens":1200,"completion_tokens":40,
+                 "prompt_tokens_details":{"cached_tokens":1024,"audio_tokens":0}}}
+                """);
+
+        assertEquals(1200, c.promptTokens());
+        assertEquals(1024, c.cachedTokens());
+        assertEquals(0, CompletionParser.parseChunk("{\"usage\":{\"prompt_tokens\":5}}").cachedTokens());
+    }
+
+    @Test
+    void readsErrorMessage() throws Exception {
+        CompletionParser.Completion c = CompletionParser.parse("""
+                { "error": { "type": "invalid_request_error", "message": "Bad API request", "code": null } }
+                """);
+
+        assertFalse(c.hasChoices());
+        assertEquals("Bad API request", c.errorMessage());
+    }
+
+    @Test
+    void readsStreamedDelta() throws Exception {
+        CompletionParser.Completion c = CompletionParser.parseChunk(
+                "{\"choices\":[{\"index\":0,\"delta\":{\"content\":\"Hi\"},\"finish_reason\":null}]}");
+
+        assertEquals("Hi", c.content());
+        assertNull(CompletionParser.parseChunk("{\"choices\":[{\"delta\":{\"content\":null}}]}").content());
+    }
+}
@@ -0,0 +1,92 @@
+package com.jennyyn.recommender.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConnectionKeepAliveTest {
+
+    StubLLMServer server;
+    RewriteMetrics metrics = RewriteMetrics.getInstance();
+
+    @BeforeEach
+    void setup() throws Exception {
+        server = new StubLLMServer(0);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    private ConnectionKeepAlive keepAlive(long intervalSeconds) {
+        return new ConnectionKeepAlive(HttpClient.newHttpClient(), URI.create(server.getEndpoint()), intervalSeconds, 60);
+    }
+
+    @Test
+    void firstPingIsAWarmUpAndLaterRequestsAreWarm() throws Exception {
+        ConnectionKeepAlive keepAlive = keepAlive(30);
+        long warmUps = metrics.connectionWarmUp.getCount();
+        long pings = metrics.keepAlivePing.getCount();
+        long warm = metrics.getWarmConnectionRequests();
+
+        keepAlive.ping().get(5, TimeUnit.SECONDS);
+        keepAlive.ping().get(5, TimeUnit.SECONDS);
+        keepAlive.requestSent();
+
+        assertEquals(warmUps + 1, metrics.connectionWarmUp.getCount());
+        assertEquals(pings + 1, metrics.keepAlivePing.getCount());
+        assertEquals(warm + 1, metrics.getWarmConnectionRequests());
+        assertEquals(0, server.getRequestCount()); // pings are not rewrites
+    }
+
+    @Test
+    void requestBeforeAnyExchangeIsCold() {
+        long cold = metrics.getColdConnectionRequests();
+
+        keepAlive(30).requestSent();
+
+        assertEquals(cold + 1, metrics.getColdConnectionRequests());
+    }
+
+    @Test
+    void startWarmsUpInTheBackground() throws Exception {
+        ConnectionKeepAlive keepAlive = keepAlive(30);
+        long warmUps = metrics.connectionWarmUp.getCount();
+
+        keepAlive.start();
+        try {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (metrics.connectionWarmUp.getCount() == warmUps && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(warmUps + 1, metrics.connectionWarmUp.getCount());
+
+            long warm = metrics.getWarmConnectionRequests();
+            keepAlive.requestSent();
+            assertEquals(warm + 1, metrics.getWarmConnectionRequests());
+        } finally {
+            keepAlive.stop();
+        }
+    }
+
+    @Test
+    void failedPingMakesTheNextRequestCold() throws Exception {
+        ConnectionKeepAlive keepAlive = keepAlive(30);
+        keepAlive.ping().get(5, TimeUnit.SECONDS);
+        server.stop();
+        long cold = metrics.getColdConnectionRequests();
+
+        keepAlive.ping().get(5, TimeUnit.SECONDS); // connection refused
+        keepAlive.requestSent();
+
+        assertEquals(cold + 1, metrics.getColdConnectionRequests());
+    }
+}
@@ -1,46 +1,68 @@
 package com.jennyyn.recommender.service;
 
+import com.jennyyn.recommender.model.SessionSummary;
 import org.junit.jupiter.api.*;
+import org.junit.jupiter.api.io.TempDir;
 import java.io.*;
 import java.nio.file.*;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 class FileServiceTest {
 
+    @TempDir
+    Path tempDir;
+
     private FileService fileService;
-    private static final String SESSION_FILE = "session.txt";
 
     @BeforeEach
     void setUp() throws Exception {
-        fileService = new FileService();
+        fileService = new FileService(tempDir);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        fileService.close();
+    }
+
+    private static long writerThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(t -> t.getName().equals("session-writer") && t.isAlive()).count();
+    }
+
+    @Test
+    void testCloseWritesQueuedSavesAndStopsTheWriter() throws Exception {
+        long writersBefore = writerThreads();
+        CompletableFuture<Long> saved = fileService.saveSessionAsync("queued", "save");
+        assertEquals(writersBefore + 1, writerThreads());
+
+        fileService.close();
 
-        // Delete session file before each test
-        Files.deleteIfExists(Path.of(SESSION_FILE));
+        assertTrue(saved.isDone() && !saved.isCompletedExceptionally());
+        assertEquals(writersBefore, writerThreads());
+        assertEquals("queued", fileService.loadSession(0)[0]); // opened again
     }
 
     @Test
-    void testSaveSessionCreatesCorrectFormat() throws Exception {
+    void testSaveSessionStoresBothTexts() {
         fileService.saveSession("hello", "hi");
 
-        String content = Files.readString(Path.of(SESSION_FILE));
+        String[] session = fileService.loadSession(0);
 
-        assertTrue(content.contains("---SESSION START---"));
-        assertTrue(content.contains("hello"));
-        assertTrue(content.contains("----"));
-        assertTrue(content.contains("hi"));
-        assertTrue(content.contains("---SESSION END---"));
+        assertEquals("hello", session[0]);
+        assertEquals("hi", session[1]);
     }
 
     @Test
-    void testSaveSessionAppendsMultipleSessions() throws Exception {
+    void testSaveSessionAppendsMultipleSessions() {
         fileService.saveSession("A", "B");
         fileService.saveSession("C", "D");
 
-        String content = Files.readString(Path.of(SESSION_FILE));
-
-        assertEquals(2, content.split("---SESSION START---").length - 1);
+        assertEquals(2, fileService.getSessionCount());
+        assertEquals("C", fileService.loadSession(1)[0]);
     }
 
     @Test
@@ -50,8 +72,8 @@ class FileServiceTest {
         List<String[]> sessions = fileService.loadSession();
 
         assertEquals(1, sessions.size());
-        assertEquals("line1\nline2\n", sessions.get(0)[0]);
-        assertEquals("rewrite\n", sessions.get(0)[1]);
+        assertEquals("line1\nline2", sessions.get(0)[0]);
+        assertEquals("rewrite", sessions.get(0)[1]);
     }
 
     @Test
@@ -60,6 +82,16 @@ class FileServiceTest {
         assertTrue(sessions.isEmpty());
     }
 
+    @Test
+    void testSessionsSurviveRestart() {
+        fileService.saveSession("A", "B");
+
+        FileService reopened = new FileService(tempDir);
+
+        assertEquals(1, reopened.getSessionCount());
+        assertEquals("B", reopened.loadSession(0)[1]);
+    }
+
     @Test
     void testDeleteSessionRemovesCorrectIndex() {
         fileService.saveSession("A", "B");
@@ -71,8 +103,9 @@ class FileServiceTest {
         List<String[]> sessions = fileService.loadSession();
 
         assertEquals(2, sessions.size());
-        assertEquals("A\n", sessions.get(0)[0]);  // index 0 remains
-        assertEquals("E\n", sessions.get(1)[0]);  // original index 2 shifted
+        assertEquals("A", sessions.get(0)[0]);  // index 0 remains
+        assertEquals("E", sessions.get(1)[0]);  // original index 2 shifted
+        assertEquals(2, new FileService(tempDir).getSessionCount()); // tombstone is persisted
     }
 
     @Test
@@ -85,5 +118,165 @@ class FileServiceTest {
 
         assertEquals(1, sessions.size());
     }
-}
 
+    @Test
+    void testLegacyTextFileIsMigrated() throws Exception {
+        Files.writeString(tempDir.resolve("session.txt"), """
+                ---SESSION START---
+                line1
+                line2
+                ----
+                rewrite
+                ---SESSION END---
+
+                ---SESSION START---
+                C
+                ----
+                D
+                ---SESSION END---
+
+                """);
+
+        FileService migrated = new FileService(tempDir);
+
+        assertEquals(2, migrated.getSessionCount());
+        assertEquals("line1\nline2", migrated.loadSession(0)[0]);
+        assertEquals("rewrite", migrated.loadSession(0)[1]);
+        assertEquals("D", migrated.loadSession(1)[1]);
+    }
+
+    @Test
+    void testInterruptedMigrationStartsOver() throws Exception {
+        Files.writeString(tempDir.resolve("session.txt"), """
+                ---SESSION START---
+                A
+                ----
+                B
+                ---SESSION END---
+
+                ---SESSION START---
+                C
+                ----
+                D
+                ---SESSION END---
+
+                """);
+        // What a crash after the first batch leaves behind
+        try (SessionStore partial = new SessionStore(tempDir.resolve("sessions.dat.migrating"))) {
+            partial.append("A", "B");
+        }
+
+        FileService migrated = new FileService(tempDir);
+
+        assertEquals(2, migrated.getSessionCount());
+        assertEquals("C", migrated.loadSession(1)[0]);
+        assertFalse(Files.exists(tempDir.resolve("sessions.dat.migrating")));
+        assertFalse(Files.exists(tempDir.resolve("sessions.dat.migrating.idx")));
+    }
+
+    @Test
+    void testLoadSessionPageReturnsSnippetsOnly() {
+        fileService.saveSession("A".repeat(100), "rewrite");
+        fileService.saveSession("short", "rewrite");
+        fileService.saveSession("third", "rewrite");
+
+        List<SessionSummary> page = fileService.loadSessionPage(0, 2);
+
+        assertEquals(2, page.size());
+        assertEquals("A".repeat(30), page.get(0).getSnippet());
+        assertTrue(page.get(0).isTruncated());
+        assertEquals("short", page.get(1).getSnippet());
+        assertFalse(page.get(1).isTruncated());
+        assertEquals("Session 2: short", page.get(1).toString());
+
+        assertEquals(1, fileService.loadSessionPage(2, 2).size());
+    }
+
+    @Test
+    void testSearchFindsSessionsByEitherText() {
+        fileService.saveSession("The quick brown fox", "A fast brown fox");
+        fileService.saveSession("Meeting notes", "Summary of the meeting");
+        fileService.saveSession("Brown bread recipe", "How to bake bread");
+
+        assertArrayEquals(new int[]{0, 2}, fileService.searchSessions("brown"));
+        assertArrayEquals(new int[]{1}, fileService.searchSessions("meet"));      // prefix
+        assertArrayEquals(new int[]{0}, fileService.searchSessions("\"fast brown\""));
+        assertArrayEquals(new int[]{}, fileService.searchSessions("\"brown fast\""));
+
+        List<SessionSummary> rows = fileService.loadSessionSummaries(new int[]{2});
+        assertEquals("Session 3: Brown bread recipe", rows.get(0).toString());
+    }
+
+    @Test
+    void testSearchFollowsDeletesAndSurvivesRestart() throws Exception {
+        fileService.saveSession("alpha", "one");
+        fileService.saveSession("beta", "two");
+        fileService.saveSession("alpha beta", "three");
+
+        fileService.deleteSession(0);
+        assertArrayEquals(new int[]{1}, fileService.searchSessions("alpha")); // positions shifted
+
+        FileService reopened = new FileService(tempDir);
+        assertArrayEquals(new int[]{0, 1}, reopened.searchSessions("beta"));
+        assertArrayEquals(new int[]{1}, reopened.searchSessions("three"));
+    }
+
+    @Test
+    void testSearchIndexIsRebuiltWhenMissing() throws Exception {
+        fileService.saveSession("kept in the store", "only");
+        Files.delete(tempDir.resolve("sessions.dat.search"));
+
+        FileService reopened = new FileService(tempDir);
+
+        assertArrayEquals(new int[]{0}, reopened.searchSessions("store"));
+    }
+
+    @Test
+    void testSearchIndexOfARecreatedStoreIsRebuilt() throws Exception {
+        fileService.saveSession("apple pie", "old");
+        fileService.close();
+        // A new store starts its ids over; the old index would match its postings to them
+        Files.delete(tempDir.resolve("sessions.dat"));
+        Files.delete(tempDir.resolve("sessions.dat.idx"));
+
+        FileService reopened = new FileService(tempDir);
+        reopened.saveSession("banana bread", "new");
+
+        assertArrayEquals(new int[]{}, reopened.searchSessions("apple"));
+        assertArrayEquals(new int[]{0}, reopened.searchSessions("banana"));
+    }
+
+    @Test
+    void testRapidAsyncSavesAreGroupCommitted() {
+        RewriteMetrics metrics = RewriteMetrics.getInstance();
+        long batches = metrics.getSessionWriteBatches();
+
+        List<CompletableFuture<Long>> saves = new ArrayList<>();
+        for (int i = 0; i < 200; i++) saves.add(fileService.saveSessionAsync("original " + i, "rewritten " + i));
+
+        // Reads wait for the queue, so everything is visible right away
+        assertEquals(200, fileService.getSessionCount());
+        assertEquals("rewritten 199", fileService.loadSession(199)[1]);
+        assertArrayEquals(new int[]{42}, fileService.searchSessions("\"original 42\""));
+
+        long previous = 0;
+        for (CompletableFuture<Long> save : saves) {
+            long id = save.join();
+            assertTrue(id > previous); // ids follow the order of the saves
+            previous = id;
+        }
+        assertTrue(metrics.getSessionWriteBatches() - batches < 200);
+
+        FileService reopened = new FileService(tempDir);
+        assertEquals(200, reopened.getSessionCount());
+    }
+
+    @Test
+    void testSavesWithoutFsyncAreStillReadable() {
+        fileService.setSyncPolicy(FileService.SyncPolicy.NONE, 0);
+        fileService.saveSession("A", "B");
+
+        FileService reopened = new FileService(tempDir);
+        assertEquals("B", reopened.loadSession(0)[1]);
+    }
+}
@@ -0,0 +1,56 @@
+package com.jennyyn.recommender.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void percentilesAreWithinAFactorOfTwo() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int ms = 1; ms <= 100; ms++) {
+            histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(ms));
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(50.5, histogram.getMeanMillis(), 0.01);
+        assertEquals(100.0, histogram.getMaxMillis(), 0.01);
+
+        double p50 = histogram.getPercentileMillis(50);
+        assertTrue(p50 >= 50 && p50 <= 100, "p50 was " + p50);
+        assertEquals(100.0, histogram.getPercentileMillis(99), 0.01); // capped at the max
+    }
+
+    @Test
+    void resetClearsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.recordNanos(5_000_000);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileMillis(50));
+        assertEquals(0, histogram.getMaxMillis());
+    }
+
+    @Test
+    void metricsCountRequestsByOutcome() {
+        RewriteMetrics metrics = RewriteMetrics.getInstance();
+        metrics.reset();
+
+        metrics.requestStarted();
+        metrics.requestSucceeded("AcademicStrategy", TimeUnit.MILLISECONDS.toNanos(20));
+        metrics.requestStarted();
+        metrics.requestFailed(new InterruptedException("Request cancelled."));
+        metrics.recordUsage(12, 34, 8);
+
+        assertEquals(2, metrics.getRequestCount());
+        assertEquals(1, metrics.getSuccessCount());
+        assertEquals(1, metrics.getCancelledCount());
+        assertEquals(34, metrics.getCompletionTokens());
+        assertEquals(8, metrics.getCachedPromptTokens());
+        assertEquals(1, metrics.getRequestLatency("AcademicStrategy").getCount());
+    }
+}
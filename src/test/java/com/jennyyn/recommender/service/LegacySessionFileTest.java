@@ -0,0 +1,63 @@
+package com.jennyyn.recommender.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LegacySessionFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    private LegacySessionFile open(String content) throws Exception {
+        Path file = tempDir.resolve("session.txt");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return new LegacySessionFile(file);
+    }
+
+    @Test
+    void readsSessionsLikeTheOldLineParser() throws Exception {
+        try (LegacySessionFile file = open("""
+                stray line
+                ---SESSION START---
+
+                first line
+                ----
+                rewrite
+                ---SESSION END---
+                ---SESSION START---
+                no split line
+                ---SESSION END---
+                ---SESSION START---
+                ----
+                ---SESSION END---
+                """)) {
+            assertEquals(3, file.size());
+            assertArrayEquals(new String[]{"\nfirst line", "rewrite"}, file.read(0));
+            assertArrayEquals(new String[]{"no split line", ""}, file.read(1));
+            assertArrayEquals(new String[]{"", ""}, file.read(2));
+        }
+    }
+
+    @Test
+    void windowsLineBreaksAndUnicodeAreDecoded() throws Exception {
+        try (LegacySessionFile file = open(
+                "---SESSION START---\r\ncafé\r\nnaïve ✓\r\n----\r\n日本語\r\n---SESSION END---\r\n")) {
+            assertEquals(1, file.size());
+            assertArrayEquals(new String[]{"café\nnaïve ✓", "日本語"}, file.read(0));
+        }
+    }
+
+    @Test
+    void unfinishedSessionAtTheEndIsIgnored() throws Exception {
+        try (LegacySessionFile file = open("---SESSION START---\na\n----\nb\n---SESSION END---\n---SESSION START---\nc")) {
+            assertEquals(1, file.size());
+            assertArrayEquals(new String[]{"a", "b"}, file.read(0));
+        }
+    }
+}
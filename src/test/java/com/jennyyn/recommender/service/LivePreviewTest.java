@@ -0,0 +1,118 @@
+package com.jennyyn.recommender.service;
+
+import com.jennyyn.recommender.model.APIClient;
+import com.jennyyn.recommender.model.AcademicStrategy;
+import com.jennyyn.recommender.model.CreativeStrategy;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// LivePreview on the real APIService against the stub API, which echoes each paragraph back
+class LivePreviewTest {
+
+    StubLLMServer server;
+    LivePreview preview;
+
+    @BeforeEach
+    void setup() throws Exception {
+        server = new StubLLMServer(0);
+        server.start();
+
+        Properties props = new Properties();
+        props.setProperty("STREAM", "false");
+        props.setProperty("ENDPOINT", server.getEndpoint());
+        APIClient client = new APIClient(props);
+        preview = new LivePreview(new APIService(client, client.getHttpClient()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    private static class Recorder implements LivePreview.Listener {
+        final CompletableFuture<String> preview = new CompletableFuture<>();
+
+        @Override
+        public void onPreview(String rewrittenText) {
+            preview.complete(rewrittenText);
+        }
+
+        @Override
+        public void onError(Exception error) {
+            preview.completeExceptionally(error);
+        }
+
+        String await() throws Exception {
+            return preview.get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private String update(String text, CreativeStrategy strategy) throws Exception {
+        Recorder recorder = new Recorder();
+        preview.update(text, strategy, recorder);
+        return recorder.await();
+    }
+
+    @Test
+    void onlyChangedParagraphsAreSent() throws Exception {
+        CreativeStrategy strategy = new CreativeStrategy();
+
+        assertEquals("One.\n\nTwo.\n\nThree.", update("One.\n\nTwo.\n\nThree.", strategy));
+        assertEquals(3, server.getRequestCount());
+
+        assertEquals("One.\n\nTwo, edited.\n\nThree.", update("One.\n\nTwo, edited.\n\nThree.", strategy));
+        assertEquals(4, server.getRequestCount());
+
+        // Back to an earlier version, and a new blank paragraph being typed: nothing to send
+        assertEquals("One.\n\nTwo.\n\nThree.\n\n", update("One.\n\nTwo.\n\nThree.\n\n", strategy));
+        assertEquals(4, server.getRequestCount());
+    }
+
+    @Test
+    void otherStrategyDoesNotReuseRewrites() throws Exception {
+        update("Same text.", new CreativeStrategy());
+
+        Recorder recorder = new Recorder();
+        preview.update("Same text.", new AcademicStrategy(), recorder);
+        recorder.await();
+
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    void newerTextCancelsStaleParagraphs() throws Exception {
+        server.setLatency(500, 0);
+        CreativeStrategy strategy = new CreativeStrategy();
+        List<String> stale = new CopyOnWriteArrayList<>();
+
+        preview.update("Kept.\n\nTypo heer.", strategy, new LivePreview.Listener() {
+            @Override
+            public void onPreview(String rewrittenText) {
+                stale.add(rewrittenText);
+            }
+
+            @Override
+            public void onError(Exception error) {
+                stale.add(error.getMessage());
+            }
+        });
+        assertEquals(2, preview.getPendingCount());
+
+        Recorder recorder = new Recorder();
+        preview.update("Kept.\n\nTypo here.", strategy, recorder);
+        assertEquals(2, preview.getPendingCount()); // "Kept." still in flight, "Typo heer." cancelled
+
+        assertEquals("Kept.\n\nTypo here.", recorder.await());
+        assertTrue(stale.isEmpty());
+        assertEquals(0, preview.getPendingCount());
+    }
+}
@@ -0,0 +1,116 @@
+package com.jennyyn.recommender.service;
+
+import com.jennyyn.recommender.model.APIClient;
+import com.jennyyn.recommender.model.RewriteResult;
+import com.jennyyn.recommender.model.StrategyRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultiRewriteTest {
+
+    StubLLMServer server;
+
+    @BeforeEach
+    void setup() throws Exception {
+        server = new StubLLMServer(0);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    private APIService service() {
+        Properties props = new Properties();
+        props.setProperty("STREAM", "true");
+        props.setProperty("ENDPOINT", server.getEndpoint());
+        props.setProperty("CACHE_SIZE", "0");
+        APIClient client = new APIClient(props);
+        return new APIService(client, client.getHttpClient());
+    }
+
+    // Records what the listener sees
+    static class Recorder implements MultiRewrite.Listener {
+        final Map<String, StringBuilder> streamed = new ConcurrentHashMap<>();
+        final List<String> succeeded = new CopyOnWriteArrayList<>();
+        final Map<String, Exception> failed = new ConcurrentHashMap<>();
+        final AtomicInteger allDone = new AtomicInteger();
+
+        @Override
+        public void onDelta(String strategy, String delta) {
+            streamed.computeIfAbsent(strategy, s -> new StringBuilder()).append(delta);
+        }
+
+        @Override
+        public void onSuccess(String strategy, RewriteResult result) {
+            succeeded.add(strategy);
+        }
+
+        @Override
+        public void onError(String strategy, Exception error) {
+            failed.put(strategy, error);
+        }
+
+        @Override
+        public void onAllDone() {
+            allDone.incrementAndGet();
+        }
+    }
+
+    @Test
+    void everyStrategyRunsInParallel() throws Exception {
+        server.setLatency(400, 0);
+        Recorder recorder = new Recorder();
+
+        long start = System.nanoTime();
+        MultiRewrite multi = service().rewriteAllAsync("Hello there", new StrategyRegistry(new Properties()).all(), recorder);
+        multi.getFuture().get(5, TimeUnit.SECONDS);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(3, server.getRequestCount());
+        assertEquals(Map.of(), multi.getErrors());
+        assertEquals(Set.of("Creative", "Academic", "Professional"), multi.getResults().keySet());
+        assertEquals("Hello there", recorder.streamed.get("Academic").toString());
+        assertEquals(1, recorder.allDone.get());
+        assertTrue(millis < 1100, "strategies should run in parallel, took " + millis + " ms");
+    }
+
+    @Test
+    void cancellingOneStrategyLeavesTheOthers() throws Exception {
+        server.setLatency(300, 0);
+        Recorder recorder = new Recorder();
+
+        MultiRewrite multi = service().rewriteAllAsync("Hello there", new StrategyRegistry(new Properties()).all(), recorder);
+        multi.cancel("Academic");
+        multi.getFuture().get(5, TimeUnit.SECONDS);
+
+        assertInstanceOf(InterruptedException.class, multi.getErrors().get("Academic"));
+        assertInstanceOf(InterruptedException.class, recorder.failed.get("Academic"));
+        assertEquals(Set.of("Creative", "Professional"), multi.getResults().keySet());
+        assertEquals("Hello there", multi.getResults().get("Professional").getRewrittenText());
+        assertEquals(1, recorder.allDone.get());
+    }
+
+    @Test
+    void noStrategiesIsDoneRightAway() {
+        Recorder recorder = new Recorder();
+
+        MultiRewrite multi = service().rewriteAllAsync("Hello", Map.of(), recorder);
+
+        assertTrue(multi.isDone());
+        assertEquals(1, recorder.allDone.get());
+    }
+}
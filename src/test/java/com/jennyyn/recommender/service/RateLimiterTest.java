@@ -0,0 +1,78 @@
+package com.jennyyn.recommender.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpHeaders;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateLimiterTest {
+
+    private static HttpHeaders headers(Map<String, String> values) {
+        return HttpHeaders.of(
+                values.entrySet().stream().collect(java.util.stream.Collectors.toMap(
+                        Map.Entry::getKey, e -> List.of(e.getValue()))),
+                (k, v) -> true);
+    }
+
+    @Test
+    void burstIsAllowedThenRequestsArePaced() {
+        long[] now = {0};
+        RateLimiter limiter = new RateLimiter(60, () -> now[0]); // 1 per second
+
+        for (int i = 0; i < 60; i++) assertEquals(0, limiter.reserve());
+
+        assertEquals(1000, limiter.reserve());
+        assertEquals(2000, limiter.reserve());
+
+        now[0] += 3000; // tokens refill over time
+        assertEquals(0, limiter.reserve());
+    }
+
+    @Test
+    void retryAfterPausesEveryone() {
+        long[] now = {0};
+        RateLimiter limiter = new RateLimiter(600, () -> now[0]);
+
+        limiter.onRateLimited(headers(Map.of("retry-after", "2")));
+
+        assertTrue(limiter.reserve() >= 2000);
+        now[0] += 2500;
+        assertEquals(0, limiter.reserve());
+    }
+
+    @Test
+    void adaptsToResponseHeaders() {
+        long[] now = {0};
+        RateLimiter limiter = new RateLimiter(60, () -> now[0]);
+
+        limiter.onResponse(headers(Map.of(
+                "x-ratelimit-limit-requests", "500",
+                "x-ratelimit-remaining-requests", "0",
+                "x-ratelimit-reset-requests", "1.5s")));
+
+        assertEquals(500, limiter.getRequestsPerMinute());
+        assertTrue(limiter.reserve() >= 1500);
+    }
+
+    @Test
+    void parsesResetDurations() {
+        assertEquals(20, RateLimiter.parseDuration("20ms"));
+        assertEquals(1500, RateLimiter.parseDuration("1.5s"));
+        assertEquals(360_000, RateLimiter.parseDuration("6m0s"));
+    }
+
+    @Test
+    void backoffGrowsAndStaysBounded() {
+        RateLimiter limiter = new RateLimiter(60);
+
+        long first = limiter.backoffMillis(0);
+        long later = limiter.backoffMillis(5);
+
+        assertTrue(first >= 250 && first <= 500);
+        assertTrue(later >= 8000 && later <= 16000);
+        assertTrue(limiter.backoffMillis(30) <= 30_000);
+    }
+}
@@ -0,0 +1,166 @@
+package com.jennyyn.recommender.service;
+
+import com.jennyyn.recommender.model.RewriteResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RewriteCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final String OPENAI = "openai";
+    private static final String ENDPOINT = "https://api.openai.com/v1/chat/completions";
+
+    @Test
+    void keyDependsOnServerModelAndPrompt() {
+        String key = RewriteCache.key(OPENAI, ENDPOINT, "gpt-4o-mini", "Rewrite: hello");
+
+        assertEquals(key, RewriteCache.key(OPENAI, ENDPOINT, "gpt-4o-mini", "Rewrite: hello"));
+        assertNotEquals(key, RewriteCache.key("other", ENDPOINT, "gpt-4o-mini", "Rewrite: hello"));
+        assertNotEquals(key, RewriteCache.key(OPENAI, "http://localhost:8080/v1", "gpt-4o-mini", "Rewrite: hello"));
+        assertNotEquals(key, RewriteCache.key(OPENAI, ENDPOINT, "gpt-4o", "Rewrite: hello"));
+        assertNotEquals(key, RewriteCache.key(OPENAI, ENDPOINT, "gpt-4o-mini", "Rewrite: hello!"));
+    }
+
+    @Test
+    void templateKeyDependsOnServerModelTemplateAndText() {
+        String key = RewriteCache.key(OPENAI, ENDPOINT, "gpt-4o-mini", "template", "hello");
+
+        assertEquals(key, RewriteCache.key(OPENAI, ENDPOINT, "gpt-4o-mini", "template", "hello"));
+        assertNotEquals(key, RewriteCache.key(OPENAI, "http://localhost:8080/v1", "gpt-4o-mini", "template", "hello"));
+        assertNotEquals(key, RewriteCache.key(OPENAI, ENDPOINT, "gpt-4o", "template", "hello"));
+        assertNotEquals(key, RewriteCache.key(OPENAI, ENDPOINT, "gpt-4o-mini", "other", "hello"));
+        assertNotEquals(key, RewriteCache.key(OPENAI, ENDPOINT, "gpt-4o-mini", "template", "hello!"));
+    }
+
+    @Test
+    void hitAndMissAreCounted() {
+        RewriteCache cache = new RewriteCache(10, 0, null);
+
+        assertNull(cache.get("a"));
+        cache.put("a", new RewriteResult("A"));
+
+        assertEquals("A", cache.get("a").getRewrittenText());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() {
+        RewriteCache cache = new RewriteCache(2, 0, null);
+        cache.put("a", new RewriteResult("A"));
+        cache.put("b", new RewriteResult("B"));
+
+        cache.get("a");                          // "b" is now the oldest
+        cache.put("c", new RewriteResult("C"));
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    void expiredEntriesAreMisses() {
+        long[] now = {1_000};
+        RewriteCache cache = new RewriteCache(10, 500, null, () -> now[0]);
+        cache.put("a", new RewriteResult("A"));
+
+        now[0] += 400;
+        assertNotNull(cache.get("a"));
+
+        now[0] += 200;
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    void diskTierSurvivesNewInstance() {
+        new RewriteCache(10, 0, tempDir).put("a", new RewriteResult("line1\nline2"));
+
+        RewriteCache restarted = new RewriteCache(10, 0, tempDir);
+
+        assertEquals("line1\nline2", restarted.get("a").getRewrittenText());
+        assertEquals(1, restarted.getDiskHitCount());
+    }
+
+    @Test
+    void concurrentWritesOfOneKeyLeaveOneWholeFile() throws Exception {
+        RewriteCache cache = new RewriteCache(10, 0, tempDir);
+        String text = "x".repeat(100_000);
+        Thread[] writers = new Thread[8];
+        CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < writers.length; i++) {
+            String mine = text + i;
+            writers[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int n = 0; n < 50; n++) cache.put("a", new RewriteResult(mine));
+            });
+            writers[i].start();
+        }
+        // A failed write is only printed, so that is where to look for one
+        PrintStream err = System.err;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(printed, true));
+        try {
+            start.countDown();
+            for (Thread writer : writers) writer.join();
+        } finally {
+            System.setErr(err);
+        }
+        assertEquals("", printed.toString(), "a write failed");
+
+        try (var files = Files.list(tempDir)) {
+            assertEquals(List.of("a.txt"), files.map(f -> f.getFileName().toString()).toList());
+        }
+        String read = new RewriteCache(10, 0, tempDir).get("a").getRewrittenText();
+        assertTrue(read.matches("x{100000}[0-7]"), "a write mixed with another one");
+    }
+
+    @Test
+    void diskTierKeepsOnlyTheMostRecentlyUsedFiles() {
+        RewriteCache cache = new RewriteCache(10, 0, tempDir, 3);
+        for (String key : new String[] {"a", "b", "c", "d", "e"}) {
+            cache.put(key, new RewriteResult(key.toUpperCase()));
+        }
+
+        assertEquals(3, cache.diskSize());
+        assertFalse(Files.exists(tempDir.resolve("a.txt")));
+        assertFalse(Files.exists(tempDir.resolve("b.txt")));
+        assertTrue(Files.exists(tempDir.resolve("e.txt")));
+    }
+
+    @Test
+    void diskTierIsPrunedOnStartup() throws Exception {
+        RewriteCache cache = new RewriteCache(10, 0, tempDir);
+        for (String key : new String[] {"a", "b", "c", "d"}) {
+            cache.put(key, new RewriteResult(key.toUpperCase()));
+        }
+        long time = 1_000_000;
+        for (String key : new String[] {"c", "a", "d", "b"}) { // oldest first
+            Files.setLastModifiedTime(tempDir.resolve(key + ".txt"), FileTime.fromMillis(time += 1000));
+        }
+        Files.writeString(tempDir.resolve("x.tmp"), "interrupted write");
+
+        RewriteCache restarted = new RewriteCache(10, 0, tempDir, 2);
+
+        assertEquals(2, restarted.diskSize());
+        assertNull(restarted.get("c"));
+        assertNull(restarted.get("a"));
+        assertEquals("D", restarted.get("d").getRewrittenText());
+        assertFalse(Files.exists(tempDir.resolve("x.tmp")));
+    }
+}
@@ -0,0 +1,166 @@
+package com.jennyyn.recommender.service;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.jennyyn.recommender.model.APIClient;
+import com.jennyyn.recommender.model.StrategyRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// RewriteServer in front of the real APIService, which talks to the stub API
+class RewriteServerTest {
+
+    @TempDir
+    Path tempDir;
+
+    StubLLMServer api;
+    APIService apiService;
+    RewriteServer server;
+    FileService fileService;
+    final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeEach
+    void setup() throws Exception {
+        api = new StubLLMServer(0);
+        api.start();
+
+        Properties props = new Properties();
+        props.setProperty("STREAM", "true");
+        props.setProperty("ENDPOINT", api.getEndpoint());
+        APIClient apiClient = new APIClient(props);
+        apiService = new APIService(apiClient, apiClient.getHttpClient());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (server != null) server.stop(0);
+        api.stop();
+        if (fileService != null) fileService.close();
+    }
+
+    private void startServer(int maxInFlight) throws Exception {
+        fileService = new FileService(tempDir);
+        server = new RewriteServer(0, apiService, fileService, new StrategyRegistry(new Properties()), maxInFlight);
+        server.start();
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path));
+    }
+
+    private HttpResponse<String> post(String path, String json) throws Exception {
+        return client.send(request(path).POST(HttpRequest.BodyPublishers.ofString(json)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        return client.send(request(path).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static JsonObject json(HttpResponse<String> response) {
+        return JsonParser.parseString(response.body()).getAsJsonObject();
+    }
+
+    @Test
+    void rewritesInTheGivenMode() throws Exception {
+        startServer(8);
+
+        HttpResponse<String> response = post(RewriteServer.REWRITE_PATH, "{\"text\":\"Hello there\",\"mode\":\"Academic\"}");
+
+        assertEquals(200, response.statusCode());
+        assertEquals("Hello there", json(response).get("text").getAsString());
+        assertEquals("Academic", json(response).get("mode").getAsString());
+        assertEquals("[\"Creative\",\"Academic\",\"Professional\"]", get(RewriteServer.MODES_PATH).body());
+    }
+
+    @Test
+    void listensOnLoopbackOnly() throws Exception {
+        startServer(8);
+
+        assertTrue(server.getAddress().getAddress().isLoopbackAddress());
+    }
+
+    @Test
+    void badRequestsAreRejected() throws Exception {
+        startServer(8);
+
+        assertEquals(400, post(RewriteServer.REWRITE_PATH, "{\"text\":\"Hi\",\"mode\":\"Nope\"}").statusCode());
+        assertEquals(400, post(RewriteServer.REWRITE_PATH, "{\"mode\":\"Creative\"}").statusCode());
+        assertEquals(400, post(RewriteServer.REWRITE_PATH, "not json").statusCode());
+        assertEquals(405, get(RewriteServer.REWRITE_PATH).statusCode());
+        assertEquals(0, api.getRequestCount());
+    }
+
+    @Test
+    void streamsDeltasThenTheWholeText() throws Exception {
+        startServer(8);
+
+        String events = post(RewriteServer.STREAM_PATH, "{\"text\":\"one two\"}").body();
+
+        assertEquals("""
+                event: delta
+                data: {"text":"one "}
+
+                event: delta
+                data: {"text":"two"}
+
+                event: done
+                data: {"text":"one two"}
+
+                """, events);
+    }
+
+    @Test
+    void answers503WhenTooManyRewritesAreInFlight() throws Exception {
+        api.setLatency(2000, 0);
+        apiService.setMaxConcurrentRequests(1); // one at the API, one waiting
+        startServer(2);
+
+        CompletableFuture<HttpResponse<String>> first = client.sendAsync(request(RewriteServer.REWRITE_PATH)
+                .POST(HttpRequest.BodyPublishers.ofString("{\"text\":\"first\"}")).build(), HttpResponse.BodyHandlers.ofString());
+        CompletableFuture<HttpResponse<String>> second = client.sendAsync(request(RewriteServer.REWRITE_PATH)
+                .POST(HttpRequest.BodyPublishers.ofString("{\"text\":\"second\"}")).build(), HttpResponse.BodyHandlers.ofString());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (server.getInFlightCount() < 2 && System.nanoTime() < deadline) Thread.sleep(10);
+
+        HttpResponse<String> third = post(RewriteServer.REWRITE_PATH, "{\"text\":\"third\"}");
+
+        assertEquals(503, third.statusCode());
+        assertTrue(third.headers().firstValue("Retry-After").isPresent());
+        assertEquals(1, server.getRejectedCount());
+        assertEquals(200, first.get(10, TimeUnit.SECONDS).statusCode());
+        assertEquals(200, second.get(10, TimeUnit.SECONDS).statusCode());
+    }
+
+    @Test
+    void savesListsReadsAndDeletesSessions() throws Exception {
+        startServer(8);
+
+        assertEquals(201, post(RewriteServer.SESSIONS_PATH, "{\"original\":\"first text\",\"rewritten\":\"one\"}").statusCode());
+        assertEquals(201, post(RewriteServer.SESSIONS_PATH, "{\"original\":\"second text\",\"rewritten\":\"two\"}").statusCode());
+
+        JsonObject list = json(get(RewriteServer.SESSIONS_PATH + "?limit=1"));
+        assertEquals(2, list.get("count").getAsInt());
+        assertEquals(1, list.getAsJsonArray("sessions").size());
+        assertEquals(1, json(get(RewriteServer.SESSIONS_PATH + "?q=second")).get("count").getAsInt());
+
+        assertEquals("two", json(get(RewriteServer.SESSIONS_PATH + "/1")).get("rewritten").getAsString());
+        assertEquals(204, client.send(request(RewriteServer.SESSIONS_PATH + "/0").DELETE().build(),
+                HttpResponse.BodyHandlers.ofString()).statusCode());
+        assertEquals("second text", json(get(RewriteServer.SESSIONS_PATH + "/0")).get("original").getAsString());
+        assertEquals(404, get(RewriteServer.SESSIONS_PATH + "/1").statusCode());
+    }
+}
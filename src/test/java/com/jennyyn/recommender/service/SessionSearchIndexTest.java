@@ -0,0 +1,140 @@
+package com.jennyyn.recommender.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionSearchIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    private SessionSearchIndex open() throws Exception {
+        return new SessionSearchIndex(tempDir.resolve("sessions.dat.search"), 1);
+    }
+
+    @Test
+    void tokenizesOnLettersAndDigitsInLowerCase() {
+        assertEquals(List.of("don", "t", "stop", "2024"), SessionSearchIndex.tokenize("Don't STOP -- 2024!"));
+    }
+
+    @Test
+    void wordsArePrefixesAndQuotesArePhrases() throws Exception {
+        try (SessionSearchIndex index = open()) {
+            index.add(1, "Please rewrite this email", "Kindly rephrase this message");
+            index.add(2, "Rewriting is fun", "Editing is enjoyable");
+            index.add(3, "email me later", "message me afterwards");
+
+            assertArrayEquals(new long[]{1, 2}, index.search("rewrit"));
+            assertArrayEquals(new long[]{1}, index.search("rewrite email"));
+            assertArrayEquals(new long[]{1}, index.search("\"this email\""));
+            assertArrayEquals(new long[]{}, index.search("\"email this\""));
+            assertArrayEquals(new long[]{3}, index.search("\"message me\""));
+            assertArrayEquals(new long[]{}, index.search("\"rewrit\"")); // quoted = whole word
+            assertArrayEquals(new long[]{}, index.search("   "));
+        }
+    }
+
+    @Test
+    void phraseDoesNotSpanOriginalAndRewritten() throws Exception {
+        try (SessionSearchIndex index = open()) {
+            index.add(1, "ends with hello", "world starts here");
+
+            assertArrayEquals(new long[]{}, index.search("\"hello world\""));
+        }
+    }
+
+    @Test
+    void singleLettersMatchWholeWordsOnly() throws Exception {
+        try (SessionSearchIndex index = open()) {
+            index.add(1, "a cat", "");
+            index.add(2, "apple", "");
+
+            assertArrayEquals(new long[]{1}, index.search("a"));
+            assertArrayEquals(new long[]{2}, index.search("ap"));
+        }
+    }
+
+    @Test
+    void survivesReopenWithDeletes() throws Exception {
+        try (SessionSearchIndex index = open()) {
+            index.add(1, "red apple", "");
+            index.add(2, "green apple", "");
+            index.remove(1);
+        }
+
+        try (SessionSearchIndex index = open()) {
+            assertArrayEquals(new long[]{2}, index.search("apple"));
+            assertArrayEquals(new long[]{}, index.search("red"));
+            assertArrayEquals(new long[]{2}, index.ids());
+        }
+    }
+
+    @Test
+    void logOfAnotherGenerationIsDropped() throws Exception {
+        Path file = tempDir.resolve("sessions.dat.search");
+        try (SessionSearchIndex index = open()) {
+            index.add(1, "red apple", "");
+        }
+
+        try (SessionSearchIndex index = new SessionSearchIndex(file, 2)) {
+            assertArrayEquals(new long[]{}, index.ids());
+            index.add(1, "green pear", "");
+        }
+        try (SessionSearchIndex index = new SessionSearchIndex(file, 2)) {
+            assertArrayEquals(new long[]{1}, index.search("pear"));
+            assertArrayEquals(new long[]{}, index.search("apple"));
+        }
+    }
+
+    @Test
+    void tornLastEntryIsDropped() throws Exception {
+        Path file = tempDir.resolve("sessions.dat.search");
+        try (SessionSearchIndex index = open()) {
+            index.add(1, "first", "");
+            index.add(2, "second", "");
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        try (SessionSearchIndex index = open()) {
+            assertArrayEquals(new long[]{1}, index.ids());
+            index.add(2, "second", ""); // what FileService does for sessions missing from the index
+            assertArrayEquals(new long[]{2}, index.search("second"));
+        }
+    }
+
+    @Test
+    void compactionKeepsLiveSessions() throws Exception {
+        try (SessionSearchIndex index = open()) {
+            for (int id = 1; id <= 100; id++) index.add(id, "word" + id + " common", "");
+            for (int id = 1; id <= 80; id++) index.remove(id);
+
+            index.compact();
+
+            assertEquals(20, index.search("common").length);
+            assertArrayEquals(new long[]{90}, index.search("word90"));
+        }
+        try (SessionSearchIndex index = open()) {
+            assertEquals(20, index.search("common").length);
+        }
+    }
+
+    @Test
+    void outOfOrderAddIsFound() throws Exception {
+        try (SessionSearchIndex index = open()) {
+            index.add(5, "late shared", "");
+            index.add(3, "early shared", "");
+
+            assertArrayEquals(new long[]{3, 5}, index.search("shared"));
+            assertArrayEquals(new long[]{3}, index.search("\"early shared\""));
+        }
+    }
+}
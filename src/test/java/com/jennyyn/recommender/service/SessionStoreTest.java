@@ -0,0 +1,189 @@
+package com.jennyyn.recommender.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void compactionDropsDeletedRecordsAndKeepsIds() throws Exception {
+        Path file = tempDir.resolve("sessions.dat");
+        try (SessionStore store = new SessionStore(file)) {
+            for (int i = 0; i < 10; i++) store.append("o" + i, "r" + i);
+            long sizeBefore = Files.size(file);
+            long idOfLast = store.idAt(9);
+
+            for (int i = 0; i < 8; i++) store.delete(0);
+            store.compact();
+
+            assertTrue(Files.size(file) < sizeBefore);
+            assertEquals(2, store.size());
+            assertEquals("o8", store.read(0)[0]);
+            assertEquals(idOfLast, store.idAt(1));
+        }
+
+        try (SessionStore reopened = new SessionStore(file)) {
+            assertEquals(2, reopened.size());
+            assertEquals("r9", reopened.read(1)[1]);
+        }
+    }
+
+    // Reads map the file; compaction has to swap it underneath and map the new one
+    @Test
+    void compactionAfterReadsServesTheNewFile() throws Exception {
+        Path file = tempDir.resolve("sessions.dat");
+        try (SessionStore store = new SessionStore(file)) {
+            for (int i = 0; i < 10; i++) store.append("o" + i, "r" + i);
+            assertEquals(10, store.readAll().size());
+
+            for (int i = 0; i < 5; i++) store.delete(0);
+            store.compact();
+
+            assertEquals("o5", store.read(0)[0]);
+            assertEquals("o9", store.readSnippet(4, 10));
+            assertEquals("r9", store.read(4)[1]);
+            store.append("o10", "r10"); // grows the new file past its mapping
+            assertEquals("r10", store.read(5)[1]);
+            assertFalse(Files.exists(tempDir.resolve("sessions.dat.compact")));
+        }
+
+        try (SessionStore reopened = new SessionStore(file)) {
+            assertEquals(6, reopened.size());
+            assertEquals("o10", reopened.read(5)[0]);
+        }
+    }
+
+    // Crash after the index flag of a delete was written but before the data flag was
+    @Test
+    void deleteInterruptedBeforeTheDataFlagStaysDeleted() throws Exception {
+        Path file = tempDir.resolve("sessions.dat");
+        try (SessionStore store = new SessionStore(file)) {
+            store.append("A", "B");
+            store.append("C", "D");
+            store.delete(0);
+        }
+        try (FileChannel data = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            data.write(ByteBuffer.wrap(new byte[]{0}), 4); // first record's flags: live again
+        }
+
+        try (SessionStore reopened = new SessionStore(file)) {
+            assertEquals(1, reopened.size());
+            assertEquals("C", reopened.read(0)[0]);
+        }
+
+        // Same, with a torn append as well, so the index is rebuilt from the data file
+        try (FileChannel data = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            data.write(ByteBuffer.wrap(new byte[]{0}), 4);
+            data.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 100, 0}), data.size());
+        }
+        try (SessionStore reopened = new SessionStore(file)) {
+            assertEquals(1, reopened.size());
+            assertEquals("C", reopened.read(0)[0]);
+        }
+    }
+
+    @Test
+    void missingIndexIsRebuiltFromDataFile() throws Exception {
+        Path file = tempDir.resolve("sessions.dat");
+        try (SessionStore store = new SessionStore(file)) {
+            store.append("A", "B");
+            store.append("C", "D");
+            store.delete(0);
+        }
+
+        Files.delete(tempDir.resolve("sessions.dat.idx"));
+
+        try (SessionStore reopened = new SessionStore(file)) {
+            assertEquals(1, reopened.size());
+            assertEquals("C", reopened.read(0)[0]);
+            assertEquals(3, reopened.append("E", "F")); // ids keep counting
+        }
+    }
+
+    @Test
+    void positionsOfSkipsDeletedIds() throws Exception {
+        try (SessionStore store = new SessionStore(tempDir.resolve("sessions.dat"))) {
+            for (int i = 0; i < 100; i++) store.append("o" + i, "r" + i); // ids 1..100
+            store.delete(4);  // id 5
+            store.delete(49); // id 51
+
+            assertArrayEquals(new int[]{0, 4, 48, 97}, store.positionsOf(new long[]{1, 5, 6, 50, 51, 100}));
+            assertEquals(-1, store.positionOf(51));
+            assertEquals(49, store.positionOf(52));
+        }
+    }
+
+    @Test
+    void appendAllWritesABatchInOrder() throws Exception {
+        Path file = tempDir.resolve("sessions.dat");
+        try (SessionStore store = new SessionStore(file)) {
+            store.append("first", "1");
+            long[] ids = store.appendAll(List.of(new String[]{"a", "x"}, new String[]{"b", "y"}, new String[]{"c", "z"}));
+            store.force();
+
+            assertArrayEquals(new long[]{2, 3, 4}, ids);
+            assertEquals(4, store.size());
+        }
+        try (SessionStore reopened = new SessionStore(file)) {
+            assertEquals(4, reopened.size());
+            assertArrayEquals(new String[]{"b", "y"}, reopened.read(2));
+            assertEquals(4, reopened.idAt(3));
+        }
+    }
+
+    @Test
+    void compressedRecordsAreSmallerAndReadBack() throws Exception {
+        Path file = tempDir.resolve("sessions.dat");
+        String original = "The quick brown fox jumps over the lazy dog. ".repeat(4);
+        try (SessionStore store = new SessionStore(file)) {
+            store.append("plain " + original, "plain rewrite");
+            store.setCompression(true);
+            store.append(original, original.replace("quick", "swift"));
+            store.append("", "");
+
+            assertArrayEquals(new String[]{"plain " + original, "plain rewrite"}, store.read(0));
+            assertArrayEquals(new String[]{original, original.replace("quick", "swift")}, store.read(1));
+            assertArrayEquals(new String[]{"", ""}, store.read(2));
+            assertEquals("The quick brown fox jumps over t", store.readSnippet(1, 31));
+        }
+        assertTrue(Files.size(file) < 2 * original.length() + 200); // plain: 4x the original
+
+        try (SessionStore reopened = new SessionStore(file)) {
+            assertEquals(original.replace("quick", "swift"), reopened.read(1)[1]);
+        }
+    }
+
+    @Test
+    void trainedDictionaryRecompressesTheHistory() throws Exception {
+        Path file = tempDir.resolve("sessions.dat");
+        try (SessionStore store = new SessionStore(file)) {
+            for (int i = 0; i < 150; i++) {
+                store.append("Please rewrite this sentence number " + i + " in a more professional tone.",
+                        "Kindly rephrase sentence number " + i + " using a more professional tone.");
+            }
+            long plainSize = Files.size(file);
+
+            store.setCompression(true);
+            store.trainDictionary(); // also runs in the background; calling it again just adds a dictionary
+
+            assertTrue(Files.size(file) < plainSize / 2, Files.size(file) + " vs " + plainSize);
+            assertEquals("Kindly rephrase sentence number 42 using a more professional tone.", store.read(42)[1]);
+        }
+        try (SessionStore reopened = new SessionStore(file)) {
+            assertEquals(150, reopened.size());
+            assertEquals("Please rewrite this sentence number 149 in a more professional tone.", reopened.read(149)[0]);
+        }
+    }
+}
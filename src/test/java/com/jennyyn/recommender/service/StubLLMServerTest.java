@@ -0,0 +1,129 @@
+package com.jennyyn.recommender.service;
+
+import com.jennyyn.recommender.model.APIClient;
+import com.jennyyn.recommender.model.AcademicStrategy;
+import com.jennyyn.recommender.model.CreativeStrategy;
+import com.jennyyn.recommender.model.RewriteResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The real APIService + HttpClient against the stub over loopback
+class StubLLMServerTest {
+
+    StubLLMServer server;
+
+    @BeforeEach
+    void setup() throws Exception {
+        server = new StubLLMServer(0);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    private APIService service(boolean stream) {
+        Properties props = new Properties();
+        props.setProperty("STREAM", String.valueOf(stream));
+        props.setProperty("ENDPOINT", server.getEndpoint()); // no key: local servers don't need one
+        APIClient client = new APIClient(props);
+        return new APIService(client, client.getHttpClient());
+    }
+
+    @Test
+    void answersACompleteRequest() throws Exception {
+        RewriteResult result = service(false).rewriteText("Hello there", new CreativeStrategy());
+
+        assertEquals("Hello there", result.getRewrittenText());
+        assertEquals(1, server.getRequestCount());
+        assertEquals(0, server.getStreamedRequestCount());
+    }
+
+    // Same strategy, different texts: the system message is the same bytes, so the second is cached
+    @Test
+    void repeatedStrategyReportsCachedPromptTokens() throws Exception {
+        RewriteMetrics metrics = RewriteMetrics.getInstance();
+        APIService service = service(true);
+
+        service.rewriteTextStreaming("First text", new AcademicStrategy(), d -> {});
+        long cached = metrics.getCachedPromptTokens();
+        service.rewriteTextStreaming("Another text entirely", new AcademicStrategy(), d -> {});
+
+        assertTrue(metrics.getCachedPromptTokens() > cached);
+    }
+
+    @Test
+    void streamsWordByWord() throws Exception {
+        List<String> deltas = new ArrayList<>();
+        RewriteResult result = service(true).rewriteTextStreaming("one two three", new CreativeStrategy(), deltas::add);
+
+        assertEquals(List.of("one ", "two ", "three"), deltas);
+        assertEquals("one two three", result.getRewrittenText());
+        assertEquals(1, server.getStreamedRequestCount());
+    }
+
+    @Test
+    void simulatedRateLimitIsRetried() throws Exception {
+        server.setRateLimitRate(1.0, 10);
+        APIService service = service(true);
+        service.setRateLimiter(new RateLimiter(6000), 2);
+
+        Thread flip = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignored) {
+            }
+            server.setRateLimitRate(0, 10); // the retry gets through
+        });
+        flip.start();
+
+        assertEquals("ok", service.rewriteTextStreaming("ok", new CreativeStrategy(), d -> {}).getRewrittenText());
+        assertTrue(server.getRateLimitedCount() >= 1);
+        flip.join();
+    }
+
+    @Test
+    void simulatedFailureIsReported() {
+        server.setFailureRate(1.0);
+
+        Exception e = assertThrows(Exception.class, () -> service(false).rewriteText("x", new CreativeStrategy()));
+        assertTrue(e.getMessage().contains("server had an error"));
+    }
+
+    @Test
+    void longTextIsRewrittenInParallelChunks() throws Exception {
+        server.setLatency(300, 0);
+        APIService service = service(true);
+        service.setChunkTokens(12); // ~48 characters per request: one paragraph each
+
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 6; i++) {
+            if (i > 0) input.append("\n\n");
+            input.append("Paragraph number ").append(i).append(" has a few words in it.");
+        }
+        List<String> deltas = new CopyOnWriteArrayList<>();
+        CompletableFuture<RewriteResult> done = new CompletableFuture<>();
+
+        long start = System.nanoTime();
+        service.rewriteTextAsync(input.toString(), new CreativeStrategy(), deltas::add,
+                done::complete, done::completeExceptionally, () -> { });
+        RewriteResult result = done.get(5, TimeUnit.SECONDS);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(input.toString(), result.getRewrittenText());
+        assertEquals(result.getRewrittenText(), String.join("", deltas)); // streamed in order
+        assertEquals(6, server.getRequestCount());
+        assertTrue(millis < 1500, "chunks should run in parallel, took " + millis + " ms");
+    }
+}
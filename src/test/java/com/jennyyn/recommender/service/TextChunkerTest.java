@@ -0,0 +1,54 @@
+package com.jennyyn.recommender.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TextChunkerTest {
+
+    private static List<String> texts(List<TextChunker.Chunk> chunks) {
+        return chunks.stream().map(TextChunker.Chunk::text).toList();
+    }
+
+    @Test
+    void smallParagraphsAreMerged() {
+        List<TextChunker.Chunk> chunks = TextChunker.split("a\n\nb\n\n\n" + "c".repeat(10), 8);
+
+        assertEquals(List.of("a\n\nb", "c".repeat(10)), texts(chunks));
+        assertEquals("\n\n", chunks.get(0).separator());
+        assertEquals("", chunks.get(1).separator());
+    }
+
+    @Test
+    void longParagraphIsSplitBetweenSentences() {
+        List<TextChunker.Chunk> chunks = TextChunker.split("One two three. Four five six! Seven?", 16);
+
+        assertEquals(List.of("One two three.", "Four five six!", "Seven?"), texts(chunks));
+        assertEquals(" ", chunks.get(0).separator());
+    }
+
+    @Test
+    void longSentenceIsSplitBetweenWords() {
+        List<TextChunker.Chunk> chunks = TextChunker.split("aaa bbb ccc ddd eee", 8);
+
+        assertEquals(List.of("aaa bbb", "ccc ddd", "eee"), texts(chunks));
+    }
+
+    @Test
+    void joiningWithSeparatorsRestoresTheText() {
+        String text = "First paragraph. It has two sentences.\n\nSecond one is here and is a bit longer than that.";
+        StringBuilder joined = new StringBuilder();
+        for (TextChunker.Chunk chunk : TextChunker.split(text, 30)) joined.append(chunk.text()).append(chunk.separator());
+
+        assertEquals(text, joined.toString());
+    }
+
+    @Test
+    void estimatesFourCharactersPerToken() {
+        assertEquals(0, TextChunker.estimateTokens(""));
+        assertEquals(1, TextChunker.estimateTokens("abcd"));
+        assertEquals(2, TextChunker.estimateTokens("abcde"));
+    }
+}
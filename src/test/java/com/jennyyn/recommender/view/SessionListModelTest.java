@@ -0,0 +1,68 @@
+package com.jennyyn.recommender.view;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SessionListModelTest {
+
+    private final List<Integer> loadedOffsets = new ArrayList<>();
+
+    private SessionListModel model(int size) {
+        return new SessionListModel(size, (offset, limit) -> {
+            loadedOffsets.add(offset);
+            List<String> rows = new ArrayList<>();
+            for (int i = offset; i < Math.min(size, offset + limit); i++) rows.add("row " + i);
+            return rows;
+        });
+    }
+
+    @Test
+    void onlyRequestedPagesAreLoaded() {
+        SessionListModel model = model(100_000);
+
+        assertEquals(100_000, model.getSize());
+        assertTrue(loadedOffsets.isEmpty());
+
+        assertEquals("row 5", model.getElementAt(5));
+        assertEquals("row 99", model.getElementAt(99));
+        assertEquals("row 50123", model.getElementAt(50123));
+
+        assertEquals(List.of(0, 50100), loadedOffsets);
+    }
+
+    @Test
+    void removeShrinksModelAndReloads() {
+        SessionListModel model = model(10);
+        model.getElementAt(0);
+
+        model.remove(3);
+
+        assertEquals(9, model.getSize());
+        assertEquals(0, model.getCachedPageCount());
+    }
+
+    @Test
+    void searchResultRowsMapToSessionsAndShiftOnRemove() {
+        List<int[]> requested = new ArrayList<>();
+        SessionListModel model = new SessionListModel(new int[]{2, 5, 9}, positions -> {
+            requested.add(positions);
+            List<String> rows = new ArrayList<>();
+            for (int p : positions) rows.add("session " + p);
+            return rows;
+        });
+
+        assertEquals("session 5", model.getElementAt(1));
+        assertArrayEquals(new int[]{2, 5, 9}, requested.get(0));
+
+        model.remove(1); // session 5 deleted: session 9 is now at position 8
+
+        assertEquals(2, model.getSize());
+        assertEquals(2, model.positionAt(0));
+        assertEquals(8, model.positionAt(1));
+        assertEquals("session 8", model.getElementAt(1));
+    }
+}
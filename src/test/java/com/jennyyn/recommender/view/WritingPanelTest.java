@@ -50,6 +50,22 @@ class WritingPanelTest {
         assertEquals("Hello", panel.getOriginalText());
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    void configModesAreAddedKeepingTheSelection() {
+        WritingPanel panel = new WritingPanel();
+        JComboBox<String> modes = getPrivateField(panel, "modeDropdown", JComboBox.class);
+        assertEquals(4, modes.getItemCount()); // the built-in ones and "All modes"
+        modes.setSelectedItem("Academic");
+
+        panel.setModes(java.util.List.of("Creative", "Academic", "Professional", "Shorter"));
+
+        assertEquals(5, modes.getItemCount());
+        assertEquals("Shorter", modes.getItemAt(3));
+        assertEquals("All modes", modes.getItemAt(4));
+        assertEquals("Academic", modes.getSelectedItem());
+    }
+
     @Test
     void setAndGetRewrittenText() {
         WritingPanel panel = new WritingPanel();
@@ -85,6 +101,25 @@ class WritingPanelTest {
         assertTrue(rewrite.isEnabled());
     }
 
+    @Test
+    void strategyTabsStreamSeparatelyAndSaveTheSelectedOne() {
+        WritingPanel panel = new WritingPanel();
+        panel.showStrategyTabs(java.util.List.of("Creative", "Academic"));
+
+        panel.appendStrategyOutput("Creative", "Once upon ");
+        panel.appendStrategyOutput("Academic", "It is argued");
+        panel.appendStrategyOutput("Creative", "a time");
+        assertEquals("Once upon a time", panel.getRewrittenText()); // first tab is selected
+
+        JTabbedPane tabs = getPrivateField(panel, "strategyTabs", JTabbedPane.class);
+        tabs.setSelectedIndex(1);
+        assertEquals("It is argued", panel.getRewrittenText());
+
+        panel.setRewrittenText("loaded session");
+        assertEquals(0, tabs.getTabCount()); // back to the single output
+        assertEquals("loaded session", panel.getRewrittenText());
+    }
+
     // -------------------------------
     // Controller interaction tests (Mockito)
     // -------------------------------
@@ -103,6 +138,25 @@ class WritingPanelTest {
         verify(controller).handleRewriteRequest("Test text", "Creative");
     }
 
+    @Test
+    void liveModeAsksOnceTypingPauses() {
+        WritingPanel panel = new WritingPanel();
+        MainController controller = mock(MainController.class);
+        panel.setController(controller);
+
+        panel.setOriginalText("ignored: live mode is off");
+        getPrivateField(panel, "liveCheckBox", JCheckBox.class).doClick();
+        panel.setOriginalText("H");
+        panel.setOriginalText("He");
+        panel.setOriginalText("Hello");
+
+        verify(controller, timeout(5 * WritingPanel.LIVE_DELAY_MILLIS)).handleLivePreviewRequest("Hello", "Creative");
+        verify(controller, times(1)).handleLivePreviewRequest(anyString(), anyString());
+
+        getPrivateField(panel, "liveCheckBox", JCheckBox.class).doClick();
+        verify(controller).handleLivePreviewStopped();
+    }
+
     @Test
     void cancelButtonCallsController() {
         WritingPanel panel = new WritingPanel();